@@ -0,0 +1,240 @@
+package sg.nus.iss.final_project.Util;
+
+import java.time.LocalDateTime;
+
+/**
+ * Single-pass date recognizer shared by receipt submission and OCR.
+ *
+ * The input shape is classified by a hand-written scanner (digit group
+ * lengths, separator, optional time part) instead of trying formatters one by
+ * one, so recognizing a date allocates nothing besides the result and never
+ * relies on exceptions. Unrecognized or out-of-range input returns null.
+ *
+ * Supported shapes:
+ * yyyy-MM-dd, yyyy/MM/dd, yyyy.MM.dd,
+ * dd/MM/yyyy, MM/dd/yyyy, dd-MM-yyyy, dd.MM.yyyy (2 or 4 digit years),
+ * each optionally followed by 'T' or spaces and HH:mm[:ss[.fraction]] with an
+ * optional trailing Z or offset, which is ignored.
+ * Slash-style dates where both fields could be a month are read day-first.
+ * Date-only input resolves to noon so that time zone shifts keep the day.
+ */
+public final class DateRecognizer {
+
+    private static final int NOT_A_NUMBER = -1;
+
+    private DateRecognizer() {
+    }
+
+    public static LocalDateTime recognize(CharSequence text) {
+        if (text == null) {
+            return null;
+        }
+        return recognize(text, 0, text.length());
+    }
+
+    public static boolean isDate(CharSequence text) {
+        return recognize(text) != null;
+    }
+
+    public static LocalDateTime recognize(CharSequence text, int from, int to) {
+        int start = from;
+        int end = to;
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+
+        // First digit group
+        int pos = start;
+        int first = 0;
+        while (pos < end && isDigit(text.charAt(pos)) && pos - start < 4) {
+            first = first * 10 + (text.charAt(pos) - '0');
+            pos++;
+        }
+        int firstLength = pos - start;
+        if (firstLength == 0 || firstLength == 3 || pos >= end) {
+            return null;
+        }
+
+        char separator = text.charAt(pos);
+        if (separator != '-' && separator != '/' && separator != '.') {
+            return null;
+        }
+        pos++;
+
+        // Second digit group
+        int groupStart = pos;
+        int second = 0;
+        while (pos < end && isDigit(text.charAt(pos)) && pos - groupStart < 2) {
+            second = second * 10 + (text.charAt(pos) - '0');
+            pos++;
+        }
+        if (pos == groupStart || pos >= end || text.charAt(pos) != separator) {
+            return null;
+        }
+        pos++;
+
+        // Third digit group
+        groupStart = pos;
+        int third = 0;
+        int thirdLimit = firstLength == 4 ? 2 : 4;
+        while (pos < end && isDigit(text.charAt(pos)) && pos - groupStart < thirdLimit) {
+            third = third * 10 + (text.charAt(pos) - '0');
+            pos++;
+        }
+        int thirdLength = pos - groupStart;
+        if (thirdLength == 0 || (firstLength != 4 && thirdLength != 2 && thirdLength != 4)) {
+            return null;
+        }
+        if (pos < end && isDigit(text.charAt(pos))) {
+            return null;
+        }
+
+        int year;
+        int month;
+        int day;
+        if (firstLength == 4) {
+            year = first;
+            month = second;
+            day = third;
+        } else {
+            if (firstLength > 2) {
+                return null;
+            }
+            year = thirdLength == 2 ? 2000 + third : third;
+            if (first <= 12 && second > 12) {
+                month = first;
+                day = second;
+            } else {
+                day = first;
+                month = second;
+            }
+        }
+
+        if (!isValidDate(year, month, day)) {
+            return null;
+        }
+        if (pos == end) {
+            return LocalDateTime.of(year, month, day, 12, 0);
+        }
+
+        // Optional time part
+        char timeSeparator = text.charAt(pos);
+        if (timeSeparator != 'T' && timeSeparator != ' ') {
+            return null;
+        }
+        pos++;
+        while (pos < end && text.charAt(pos) == ' ') {
+            pos++;
+        }
+
+        int hour = readTwoDigits(text, pos, end);
+        if (hour == NOT_A_NUMBER || hour > 23 || pos + 2 >= end || text.charAt(pos + 2) != ':') {
+            return null;
+        }
+        pos += 3;
+        int minute = readTwoDigits(text, pos, end);
+        if (minute == NOT_A_NUMBER || minute > 59) {
+            return null;
+        }
+        pos += 2;
+
+        int seconds = 0;
+        int nanos = 0;
+        if (pos < end && text.charAt(pos) == ':') {
+            seconds = readTwoDigits(text, pos + 1, end);
+            if (seconds == NOT_A_NUMBER || seconds > 59) {
+                return null;
+            }
+            pos += 3;
+            if (pos < end && text.charAt(pos) == '.') {
+                pos++;
+                int digits = 0;
+                while (pos < end && isDigit(text.charAt(pos))) {
+                    if (digits < 9) {
+                        nanos = nanos * 10 + (text.charAt(pos) - '0');
+                        digits++;
+                    }
+                    pos++;
+                }
+                if (digits == 0) {
+                    return null;
+                }
+                for (int i = digits; i < 9; i++) {
+                    nanos *= 10;
+                }
+            }
+        }
+
+        if (!isZoneSuffix(text, pos, end)) {
+            return null;
+        }
+        return LocalDateTime.of(year, month, day, hour, minute, seconds, nanos);
+    }
+
+    private static boolean isZoneSuffix(CharSequence text, int pos, int end) {
+        if (pos == end) {
+            return true;
+        }
+        char c = text.charAt(pos);
+        if (c == 'Z' || c == 'z') {
+            return pos + 1 == end;
+        }
+        if (c != '+' && c != '-') {
+            return false;
+        }
+        // +HH, +HHMM or +HH:MM
+        pos++;
+        if (readTwoDigits(text, pos, end) == NOT_A_NUMBER) {
+            return false;
+        }
+        pos += 2;
+        if (pos == end) {
+            return true;
+        }
+        if (text.charAt(pos) == ':') {
+            pos++;
+        }
+        return readTwoDigits(text, pos, end) != NOT_A_NUMBER && pos + 2 == end;
+    }
+
+    private static int readTwoDigits(CharSequence text, int pos, int end) {
+        if (pos + 1 >= end) {
+            return NOT_A_NUMBER;
+        }
+        char tens = text.charAt(pos);
+        char units = text.charAt(pos + 1);
+        if (!isDigit(tens) || !isDigit(units)) {
+            return NOT_A_NUMBER;
+        }
+        return (tens - '0') * 10 + (units - '0');
+    }
+
+    private static boolean isValidDate(int year, int month, int day) {
+        if (year < 1900 || year > 2999 || month < 1 || month > 12 || day < 1) {
+            return false;
+        }
+        return day <= daysInMonth(year, month);
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
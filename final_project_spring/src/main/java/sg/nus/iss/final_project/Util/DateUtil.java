@@ -3,9 +3,6 @@ package sg.nus.iss.final_project.Util;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.util.Arrays;
-import java.util.List;
 
 /**
  * Utility class to handle date conversions between frontend and backend
@@ -13,14 +10,7 @@ import java.util.List;
 public class DateUtil {
 
     private static final DateTimeFormatter ISO_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-
-    private static final List<DateTimeFormatter> COMMON_FORMATS = Arrays.asList(
-            ISO_FORMAT,
-            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'"),
-            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
-            DateTimeFormatter.ofPattern("yyyy-MM-dd"),
-            DateTimeFormatter.ofPattern("MM/dd/yyyy"),
-            DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+    private static final DateTimeFormatter MONTH_YEAR_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
 
     public static String toIsoString(LocalDateTime dateTime) {
         if (dateTime == null)
@@ -28,22 +18,16 @@ public class DateUtil {
         return dateTime.atOffset(ZoneOffset.UTC).format(ISO_FORMAT);
     }
 
+    public static String toMonthYear(LocalDateTime dateTime) {
+        return dateTime.format(MONTH_YEAR_FORMAT);
+    }
 
     public static LocalDateTime parseDate(String dateStr) {
         if (dateStr == null || dateStr.trim().isEmpty()) {
             return null;
         }
 
-        for (DateTimeFormatter formatter : COMMON_FORMATS) {
-            try {
-                return LocalDateTime.parse(dateStr, formatter);
-            } catch (DateTimeParseException e) {}
-        }
-
-        try {
-            return LocalDateTime.parse(dateStr);
-        } catch (DateTimeParseException e) {
-            return LocalDateTime.now();
-        }
+        LocalDateTime recognized = DateRecognizer.recognize(dateStr);
+        return recognized != null ? recognized : LocalDateTime.now();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,169 @@
+package sg.nus.iss.final_project.Util;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Scores per key, ordered from highest to lowest score with ties broken by
+ * key, that can report the rank of any key. It is the skip list behind Redis
+ * sorted sets: every link also stores how many entries it skips, so summing
+ * the spans along a search path gives the rank in O(log n). Updates are
+ * O(log n) as well; top(n) is O(log n + n).
+ *
+ * All methods are synchronized; callers that need higher write rates should
+ * batch their updates.
+ */
+public class RankedSkipList {
+
+    private static final int MAX_LEVEL = 32;
+    private static final double LEVEL_PROBABILITY = 0.25;
+
+    private final Node head = new Node(null, 0, MAX_LEVEL);
+    private final Map<String, Node> nodes = new HashMap<>();
+    private int level = 1;
+
+    private static final class Node {
+        final String key;
+        final long score;
+        final Node[] next;
+        final int[] span; // entries passed when following next[i]; to the end of the list when it is null
+
+        Node(String key, long score, int level) {
+            this.key = key;
+            this.score = score;
+            this.next = new Node[level];
+            this.span = new int[level];
+        }
+    }
+
+    // Adds delta to the key's score, starting from zero for a new key, and returns the new score
+    public synchronized long increment(String key, long delta) {
+        Node existing = nodes.get(key);
+        long score = existing != null ? existing.score + delta : delta;
+        if (existing != null) {
+            delete(existing);
+        }
+        insert(key, score);
+        return score;
+    }
+
+    public synchronized void set(String key, long score) {
+        Node existing = nodes.get(key);
+        if (existing != null) {
+            if (existing.score == score) {
+                return;
+            }
+            delete(existing);
+        }
+        insert(key, score);
+    }
+
+    public synchronized Long score(String key) {
+        Node node = nodes.get(key);
+        return node != null ? node.score : null;
+    }
+
+    // 1 for the highest score, 0 if the key is not in the list
+    public synchronized int rank(String key) {
+        Node target = nodes.get(key);
+        if (target == null) {
+            return 0;
+        }
+        int rank = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && (x.next[i] == target || precedes(x.next[i], target.score, key))) {
+                rank += x.span[i];
+                x = x.next[i];
+            }
+            if (x == target) {
+                return rank;
+            }
+        }
+        return 0;
+    }
+
+    public synchronized List<Map.Entry<String, Long>> top(int n) {
+        List<Map.Entry<String, Long>> result = new ArrayList<>(Math.min(n, nodes.size()));
+        for (Node x = head.next[0]; x != null && result.size() < n; x = x.next[0]) {
+            result.add(new AbstractMap.SimpleImmutableEntry<>(x.key, x.score));
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    private void insert(String key, long score) {
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (x.next[i] != null && precedes(x.next[i], score, key)) {
+                rank[i] += x.span[i];
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+
+        int nodeLevel = randomLevel();
+        if (nodeLevel > level) {
+            for (int i = level; i < nodeLevel; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                head.span[i] = nodes.size();
+            }
+            level = nodeLevel;
+        }
+
+        Node node = new Node(key, score, nodeLevel);
+        for (int i = 0; i < nodeLevel; i++) {
+            node.next[i] = update[i].next[i];
+            update[i].next[i] = node;
+            node.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = rank[0] - rank[i] + 1;
+        }
+        for (int i = nodeLevel; i < level; i++) {
+            update[i].span[i]++;
+        }
+        nodes.put(key, node);
+    }
+
+    private void delete(Node node) {
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && precedes(x.next[i], node.score, node.key)) {
+                x = x.next[i];
+            }
+            if (x.next[i] == node) {
+                x.span[i] += node.span[i] - 1;
+                x.next[i] = node.next[i];
+            } else {
+                x.span[i]--;
+            }
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--;
+        }
+        nodes.remove(node.key);
+    }
+
+    // Higher scores first, then keys in ascending order
+    private static boolean precedes(Node node, long score, String key) {
+        return node.score > score || (node.score == score && node.key.compareTo(key) < 0);
+    }
+
+    private static int randomLevel() {
+        int nodeLevel = 1;
+        while (nodeLevel < MAX_LEVEL && ThreadLocalRandom.current().nextDouble() < LEVEL_PROBABILITY) {
+            nodeLevel++;
+        }
+        return nodeLevel;
+    }
+}
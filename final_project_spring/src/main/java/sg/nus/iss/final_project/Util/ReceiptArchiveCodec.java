@@ -0,0 +1,216 @@
+package sg.nus.iss.final_project.Util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import sg.nus.iss.final_project.model.Receipt;
+
+/**
+ * Compact columnar encoding for archived receipts of a single user-month.
+ * Each field is written as its own column so that similar values sit next to
+ * each other: merchants and categories are dictionary encoded, purchase dates
+ * are delta encoded, and the whole file is gzip compressed.
+ */
+public class ReceiptArchiveCodec {
+
+    private static final int MAGIC = 0x52434F4C; // "RCOL"
+    private static final byte VERSION = 1;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    public static void write(String userId, List<Receipt> receipts, OutputStream target) throws IOException {
+        List<Receipt> sorted = new ArrayList<>(receipts);
+        sorted.sort((a, b) -> a.getDateOfPurchase().compareTo(b.getDateOfPurchase()));
+
+        GZIPOutputStream gzip = new GZIPOutputStream(target);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeString(out, userId);
+        out.writeInt(sorted.size());
+
+        for (Receipt r : sorted) {
+            writeString(out, r.getId());
+        }
+
+        writeDictionaryColumn(out, sorted.stream().map(Receipt::getMerchantName).toList());
+
+        long previous = 0;
+        for (Receipt r : sorted) {
+            long millis = toMillis(r.getDateOfPurchase());
+            out.writeLong(millis - previous);
+            previous = millis;
+        }
+
+        for (Receipt r : sorted) {
+            out.writeDouble(r.getTotalExpense());
+        }
+
+        writeDictionaryColumn(out, sorted.stream().map(Receipt::getCategory).toList());
+
+        for (Receipt r : sorted) {
+            writeString(out, r.getImageUrl());
+        }
+
+        for (Receipt r : sorted) {
+            String[] items = r.getItems();
+            out.writeInt(items != null ? items.length : -1);
+            if (items != null) {
+                for (String item : items) {
+                    writeString(out, item);
+                }
+            }
+        }
+
+        for (Receipt r : sorted) {
+            out.writeLong(r.getScanDate() != null ? toMillis(r.getScanDate()) : NO_DATE);
+        }
+
+        out.flush();
+        gzip.finish();
+    }
+
+    public static List<Receipt> read(InputStream source) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(source)));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a receipt archive file");
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported receipt archive version: " + version);
+        }
+        String userId = readString(in);
+        int count = in.readInt();
+
+        List<Receipt> receipts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Receipt receipt = new Receipt();
+            receipt.setUserId(userId);
+            receipt.setId(readString(in));
+            receipts.add(receipt);
+        }
+
+        String[] merchants = readDictionaryColumn(in, count);
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            receipts.get(i).setMerchantName(merchants[i]);
+            previous += in.readLong();
+            receipts.get(i).setDateOfPurchase(fromMillis(previous));
+        }
+
+        for (int i = 0; i < count; i++) {
+            receipts.get(i).setTotalExpense(in.readDouble());
+        }
+
+        String[] categories = readDictionaryColumn(in, count);
+        for (int i = 0; i < count; i++) {
+            receipts.get(i).setCategory(categories[i]);
+        }
+
+        for (int i = 0; i < count; i++) {
+            receipts.get(i).setImageUrl(readString(in));
+        }
+
+        for (int i = 0; i < count; i++) {
+            int itemCount = in.readInt();
+            if (itemCount >= 0) {
+                String[] items = new String[itemCount];
+                for (int j = 0; j < itemCount; j++) {
+                    items[j] = readString(in);
+                }
+                receipts.get(i).setItems(items);
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            long scanMillis = in.readLong();
+            receipts.get(i).setScanDate(scanMillis != NO_DATE ? fromMillis(scanMillis) : null);
+        }
+
+        return receipts;
+    }
+
+    private static void writeDictionaryColumn(DataOutputStream out, List<String> values) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> entries = new ArrayList<>();
+        int[] codes = new int[values.size()];
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i);
+            if (value == null) {
+                codes[i] = -1;
+                continue;
+            }
+            Integer code = dictionary.get(value);
+            if (code == null) {
+                code = entries.size();
+                dictionary.put(value, code);
+                entries.add(value);
+            }
+            codes[i] = code;
+        }
+
+        out.writeInt(entries.size());
+        for (String entry : entries) {
+            writeString(out, entry);
+        }
+        for (int code : codes) {
+            out.writeInt(code);
+        }
+    }
+
+    private static String[] readDictionaryColumn(DataInputStream in, int count) throws IOException {
+        String[] entries = new String[in.readInt()];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = readString(in);
+        }
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            int code = in.readInt();
+            values[i] = code >= 0 ? entries[code] : null;
+        }
+        return values;
+    }
+
+    // writeUTF is capped at 64KB, which inline image URLs can exceed
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+}
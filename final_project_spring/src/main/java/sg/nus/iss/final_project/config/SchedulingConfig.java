@@ -0,0 +1,10 @@
+package sg.nus.iss.final_project.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// The scheduler's pool is sized by spring.task.scheduling.pool.size; Spring's default is a single thread
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,86 @@
+package sg.nus.iss.final_project.controller;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import sg.nus.iss.final_project.model.SpendingRollup;
+import sg.nus.iss.final_project.service.AnalyticsService;
+
+@RestController
+@RequestMapping("/api/analytics")
+public class AnalyticsController {
+
+    @Autowired
+    private AnalyticsService analyticsService;
+
+    @GetMapping("/user/{userId}/daily")
+    public ResponseEntity<?> getDailyRollups(
+            @PathVariable String userId,
+            @RequestParam String from,
+            @RequestParam String to) {
+        try {
+            List<SpendingRollup> rollups = analyticsService.getDailyRollups(userId,
+                    LocalDate.parse(from), LocalDate.parse(to));
+            return ResponseEntity.ok(rollups);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("Dates must be in YYYY-MM-DD format");
+        }
+    }
+
+    @GetMapping("/user/{userId}/monthly")
+    public ResponseEntity<?> getMonthlyRollups(
+            @PathVariable String userId,
+            @RequestParam String from,
+            @RequestParam String to) {
+        try {
+            List<SpendingRollup> rollups = analyticsService.getMonthlyRollups(userId,
+                    YearMonth.parse(from), YearMonth.parse(to));
+            return ResponseEntity.ok(rollups);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("Months must be in YYYY-MM format");
+        }
+    }
+
+    @GetMapping("/user/{userId}/summary")
+    public ResponseEntity<?> getSummary(
+            @PathVariable String userId,
+            @RequestParam String from,
+            @RequestParam String to) {
+        try {
+            Map<String, Object> summary = analyticsService.getSummary(userId,
+                    YearMonth.parse(from), YearMonth.parse(to));
+            return ResponseEntity.ok(summary);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("Months must be in YYYY-MM format");
+        }
+    }
+
+    @PostMapping("/admin/rebuild")
+    public ResponseEntity<?> rebuildRollups() {
+        try {
+            return ResponseEntity.ok(analyticsService.rebuildAll());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Rebuild was interrupted");
+        }
+    }
+
+    @PostMapping("/admin/rebuild/{userId}")
+    public ResponseEntity<Void> rebuildUserRollups(@PathVariable String userId) {
+        analyticsService.rebuildUser(userId);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -1,9 +1,12 @@
 package sg.nus.iss.final_project.controller;
 
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -12,9 +15,15 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import sg.nus.iss.final_project.model.Budget;
+import sg.nus.iss.final_project.model.BudgetAlert;
+import sg.nus.iss.final_project.service.BudgetAlertService;
+import sg.nus.iss.final_project.service.BudgetCacheService;
+import sg.nus.iss.final_project.service.BudgetReconciliationService;
+import sg.nus.iss.final_project.service.BudgetRolloverService;
 import sg.nus.iss.final_project.service.BudgetService;
 
 @RestController
@@ -24,18 +33,56 @@ public class BudgetController {
     @Autowired
     private BudgetService budgetService;
 
+    @Autowired
+    private BudgetReconciliationService budgetReconciliationService;
+
+    @Autowired
+    private BudgetCacheService budgetCacheService;
+
+    @Autowired
+    private BudgetRolloverService budgetRolloverService;
+
+    @Autowired
+    private BudgetAlertService budgetAlertService;
+
     @GetMapping("/user/{userId}/month/{monthYear}")
     public ResponseEntity<Budget> getUserBudget(@PathVariable String userId, @PathVariable String monthYear) {
         Budget budget = budgetService.getUserBudget(userId, monthYear);
         return ResponseEntity.ok(budget);
     }
 
+    @GetMapping("/user/{userId}/month/{monthYear}/alerts")
+    public ResponseEntity<List<BudgetAlert>> getBudgetAlerts(@PathVariable String userId,
+            @PathVariable String monthYear) {
+        return ResponseEntity.ok(budgetAlertService.getAlerts(userId, monthYear));
+    }
+
+    @GetMapping("/user/{userId}/range")
+    public ResponseEntity<?> getBudgetRange(
+            @PathVariable String userId,
+            @RequestParam String from,
+            @RequestParam String to) {
+        try {
+            return ResponseEntity.ok(budgetService.getBudgetRange(userId, from, to));
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("Months must be in yyyy-MM format");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @GetMapping("/user/{userId}")
     public ResponseEntity<List<Budget>> getAllUserBudgets(@PathVariable String userId) {
         List<Budget> budgets = budgetService.getAllUserBudgets(userId);
         return ResponseEntity.ok(budgets);
     }
 
+    @GetMapping("/overspent/{monthYear}")
+    public ResponseEntity<List<Budget>> getOverspentBudgets(@PathVariable String monthYear) {
+        List<Budget> budgets = budgetService.getOverspentBudgets(monthYear);
+        return ResponseEntity.ok(budgets);
+    }
+
     @PostMapping("")
     public ResponseEntity<Budget> saveBudget(@RequestBody Budget budget) {
         Budget savedBudget = budgetService.saveBudget(budget);
@@ -90,6 +137,58 @@ public class BudgetController {
         return ResponseEntity.ok(updatedBudget);
     }
 
+    @GetMapping("/admin/cache-stats")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(budgetCacheService.getStats());
+    }
+
+    @GetMapping("/admin/alert-stats")
+    public ResponseEntity<Map<String, Object>> getAlertStats() {
+        return ResponseEntity.ok(budgetAlertService.getStats());
+    }
+
+    @PostMapping("/admin/reconcile")
+    public ResponseEntity<?> reconcileBudgets(
+            @RequestParam(required = false) List<Integer> partition,
+            @RequestParam(defaultValue = "false") boolean dryRun) {
+        try {
+            return ResponseEntity.ok(budgetReconciliationService.reconcile(partition, dryRun));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Reconciliation was interrupted");
+        }
+    }
+
+    @DeleteMapping("/admin/reconcile/checkpoints")
+    public ResponseEntity<Void> resetReconcileCheckpoints() {
+        budgetReconciliationService.resetCheckpoints();
+        return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/admin/rollover")
+    public ResponseEntity<?> rolloverBudgets(@RequestParam(required = false) String month) {
+        try {
+            YearMonth target = month != null ? YearMonth.parse(month) : YearMonth.now().plusMonths(1);
+            Map<String, Object> result = budgetRolloverService.rollover(target);
+            if (result == null) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body("Budget rollover is already running");
+            }
+            return ResponseEntity.ok(result);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("Month must be in yyyy-MM format");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Rollover was interrupted");
+        }
+    }
+
+    @PostMapping("/admin/migrate-category-keys")
+    public ResponseEntity<Map<String, Integer>> migrateCategoryKeys() {
+        return ResponseEntity.ok(Map.of("budgetsUpdated", budgetService.migrateCategoryKeys()));
+    }
+
     @DeleteMapping("/{budgetId}")
     public ResponseEntity<Void> deleteBudget(@PathVariable String budgetId) {
         budgetService.deleteBudget(budgetId);
@@ -0,0 +1,66 @@
+package sg.nus.iss.final_project.controller;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import sg.nus.iss.final_project.model.Campaign;
+import sg.nus.iss.final_project.service.CampaignService;
+
+// Campaigns credit points to whole segments, so every endpoint is an operator one under /admin
+@RestController
+@RequestMapping("/api/campaigns")
+public class CampaignController {
+
+    @Autowired
+    private CampaignService campaignService;
+
+    @PostMapping("/admin")
+    public ResponseEntity<?> createCampaign(@RequestBody Campaign campaign) {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(campaignService.create(campaign));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/admin")
+    public ResponseEntity<List<Campaign>> getCampaigns() {
+        return ResponseEntity.ok(campaignService.getCampaigns());
+    }
+
+    // Progress of the campaign: status, last user processed and credit counts
+    @GetMapping("/admin/{campaignId}")
+    public ResponseEntity<Campaign> getCampaign(@PathVariable String campaignId) {
+        Campaign campaign = campaignService.getCampaign(campaignId);
+        return campaign != null ? ResponseEntity.ok(campaign) : ResponseEntity.notFound().build();
+    }
+
+    @PostMapping("/admin/{campaignId}/start")
+    public ResponseEntity<?> startCampaign(@PathVariable String campaignId) {
+        try {
+            Campaign campaign = campaignService.start(campaignId);
+            return campaign != null ? ResponseEntity.accepted().body(campaign) : ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/admin/{campaignId}/pause")
+    public ResponseEntity<?> pauseCampaign(@PathVariable String campaignId) {
+        try {
+            Campaign campaign = campaignService.pause(campaignId);
+            return campaign != null ? ResponseEntity.ok(campaign) : ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package sg.nus.iss.final_project.controller;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import sg.nus.iss.final_project.service.ChangeEventService;
+import sg.nus.iss.final_project.service.StreamTicketService;
+
+@RestController
+@RequestMapping("/api/events")
+public class EventController {
+
+    @Autowired
+    private ChangeEventService changeEventService;
+
+    @Autowired
+    private StreamTicketService streamTicketService;
+
+    // Called with the usual Authorization header; the ticket then opens the stream
+    @PostMapping("/ticket")
+    public ResponseEntity<?> issueTicket(@RequestAttribute("uid") String uid) {
+        return ResponseEntity.ok(Map.of(
+                "ticket", streamTicketService.issue(uid),
+                "expiresInSeconds", streamTicketService.getTtlSeconds()));
+    }
+
+    @GetMapping(value = "/user/{userId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> subscribe(@PathVariable String userId, @RequestAttribute("uid") String uid) {
+        if (!userId.equals(uid)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(changeEventService.subscribe(userId));
+    }
+}
@@ -0,0 +1,55 @@
+package sg.nus.iss.final_project.controller;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import sg.nus.iss.final_project.model.LeaderboardEntry;
+import sg.nus.iss.final_project.service.LeaderboardService;
+
+@RestController
+@RequestMapping("/api/leaderboard")
+public class LeaderboardController {
+
+    @Autowired
+    private LeaderboardService leaderboardService;
+
+    @GetMapping("/weekly")
+    public ResponseEntity<List<LeaderboardEntry>> getWeeklyLeaderboard(
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(leaderboardService.getTop(true, limit));
+    }
+
+    @GetMapping("/all-time")
+    public ResponseEntity<List<LeaderboardEntry>> getAllTimeLeaderboard(
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(leaderboardService.getTop(false, limit));
+    }
+
+    @GetMapping("/user/{userId}")
+    public ResponseEntity<Map<String, LeaderboardEntry>> getUserRanks(@PathVariable String userId) {
+        Map<String, LeaderboardEntry> ranks = new HashMap<>();
+        ranks.put("weekly", leaderboardService.getUserEntry(userId, true));
+        ranks.put("allTime", leaderboardService.getUserEntry(userId, false));
+        return ResponseEntity.ok(ranks);
+    }
+
+    @PostMapping("/admin/rebuild")
+    public ResponseEntity<?> rebuildLeaderboards() {
+        Map<String, Object> result = leaderboardService.rebuild();
+        if (result == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Leaderboard rebuild is already running");
+        }
+        return ResponseEntity.ok(result);
+    }
+}
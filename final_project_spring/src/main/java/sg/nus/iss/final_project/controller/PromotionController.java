@@ -23,6 +23,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import sg.nus.iss.final_project.model.Promotion;
 import sg.nus.iss.final_project.repo.PromotionRepository;
+import sg.nus.iss.final_project.repo.ReceiptRepository;
 import sg.nus.iss.final_project.service.PromotionService;
 
 @RestController
@@ -38,6 +39,9 @@ public class PromotionController {
     @Autowired
     private PromotionRepository promotionRepository;
 
+    @Autowired
+    private ReceiptRepository receiptRepository;
+
     @GetMapping("")
     public ResponseEntity<List<Promotion>> getAllPromotions() {
         List<Promotion> promotions = promotionService.getAllPromotions();
@@ -103,7 +107,8 @@ public class PromotionController {
     public ResponseEntity<List<Promotion>> getPromotionsByReceiptId(@PathVariable String receiptId) {
         Query receiptQuery = new Query(Criteria.where("_id").is(receiptId));
         @SuppressWarnings("unchecked")
-        Map<String, Object> receipt = mongoTemplate.findOne(receiptQuery, Map.class, "receipts");
+        Map<String, Object> receipt = mongoTemplate.findOne(receiptQuery, Map.class,
+                receiptRepository.collectionName());
 
         if (receipt != null) {
             String merchant = (String) receipt.get("merchant");
@@ -1,9 +1,8 @@
 package sg.nus.iss.final_project.controller;
 
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -12,20 +11,28 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import sg.nus.iss.final_project.Util.DateUtil;
+import sg.nus.iss.final_project.model.IdempotencyRecord;
 import sg.nus.iss.final_project.model.PointTransaction;
 import sg.nus.iss.final_project.model.Receipt;
 import sg.nus.iss.final_project.repo.ReceiptRepository;
+import sg.nus.iss.final_project.service.AnalyticsService;
 import sg.nus.iss.final_project.service.BudgetService;
+import sg.nus.iss.final_project.service.IdempotencyService;
+import sg.nus.iss.final_project.service.ReceiptArchiveService;
+import sg.nus.iss.final_project.service.ReceiptMigrationService;
 import sg.nus.iss.final_project.service.RewardsService;
 
 @RestController
@@ -41,21 +48,57 @@ public class ReceiptController {
     @Autowired
     private RewardsService rewardsService;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private AnalyticsService analyticsService;
+
+    @Autowired
+    private ReceiptMigrationService receiptMigrationService;
+
+    @Autowired
+    private ReceiptArchiveService receiptArchiveService;
+
     public ReceiptController(ReceiptRepository receiptRepository) {
         this.receiptRepository = receiptRepository;
         logger.info("ReceiptController initialized with repository: {}", receiptRepository);
     }
 
     @GetMapping("/user/{userId}/recent")
-    public List<Receipt> getRecentUserReceipts(@PathVariable String userId) {
+    public List<Receipt> getRecentUserReceipts(
+            @PathVariable String userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from) {
         logger.info("Getting recent receipts for user: {}", userId);
-        List<Receipt> receipts = receiptRepository.findRecentByUserId(userId);
+        List<Receipt> receipts = receiptArchiveService.findRecentByUserId(userId,
+                from != null ? from.atStartOfDay() : null);
         logger.info("Found {} recent receipts for user: {}", receipts.size(), userId);
         receipts.forEach(r -> logger.debug("Recent receipt: ID={}, merchant={}, amount={}, date={}",
                 r.getId(), r.getMerchantName(), r.getTotalExpense(), r.getDateOfPurchase()));
         return receipts;
     }
 
+    @GetMapping("/user/{userId}/search")
+    public ResponseEntity<?> searchUserReceipts(
+            @PathVariable String userId,
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean includeArchived) {
+        if (query == null || query.isBlank()) {
+            return ResponseEntity.badRequest().body("Search query is required");
+        }
+        int pageSize = Math.max(1, Math.min(size, 100));
+        int pageNumber = Math.max(0, page);
+        logger.info("Searching receipts for user: {}, query: {}, page: {}", userId, query, pageNumber);
+
+        Map<String, Object> response = receiptArchiveService.searchByUserId(userId, query, pageNumber, pageSize,
+                includeArchived);
+        response.put("page", pageNumber);
+        response.put("size", pageSize);
+        return ResponseEntity.ok(response);
+    }
+
     @GetMapping("/system/check")
     public Map<String, Object> checkSystem() {
         logger.info("System check requested");
@@ -83,61 +126,38 @@ public class ReceiptController {
         return response;
     }
 
-    private LocalDateTime parseDate(String dateStr) {
-        if (dateStr == null || dateStr.trim().isEmpty()) {
-            logger.debug("Empty date string, using current date");
-            return LocalDateTime.now();
-        }
-        logger.debug("Attempting to parse date: {}", dateStr);
-
-        String[] dateFormats = {
-                "dd/MM/yyyy",
-                "MM/dd/yyyy",
-                "yyyy-MM-dd",
-                "dd-MM-yyyy",
-                "MM-dd-yyyy",
-                "yyyy/MM/dd",
-                "dd.MM.yyyy"
-        };
-        for (String format : dateFormats) {
-            try {
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern(format);
-                LocalDate date = LocalDate.parse(dateStr, formatter);
-                logger.debug("Successfully parsed date using format {}: {}", format, date);
-                return date.atTime(12, 0);
-            } catch (DateTimeParseException e) {
-                logger.trace("Failed to parse date {} with format {}", dateStr, format);
-            }
+    @PostMapping("/admin/archive")
+    public ResponseEntity<?> archiveOldReceipts() {
+        logger.info("Manual receipt archival requested");
+        try {
+            Map<String, Object> result = receiptArchiveService.archiveOldReceipts();
+            logger.info("Receipt archival finished: {}", result);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            logger.error("Receipt archival failed", e);
+            return ResponseEntity.status(500).body("Error archiving receipts: " + e.getMessage());
         }
+    }
 
-        String[] dateTimeFormats = {
-                "dd/MM/yyyy HH:mm:ss",
-                "MM/dd/yyyy HH:mm:ss",
-                "yyyy-MM-dd HH:mm:ss",
-                "yyyy-MM-dd'T'HH:mm:ss",
-                "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'"
-        };
-
-        for (String format : dateTimeFormats) {
-            try {
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern(format);
-                LocalDateTime dateTime = LocalDateTime.parse(dateStr, formatter);
-                logger.debug("Successfully parsed datetime using format {}: {}", format, dateTime);
-                return dateTime;
-            } catch (DateTimeParseException e) {
-                logger.trace("Failed to parse datetime {} with format {}", dateStr, format);
-            }
+    @PostMapping("/admin/migrate-timeseries")
+    public ResponseEntity<?> migrateToTimeSeries(@RequestParam(defaultValue = "500") int batchSize) {
+        logger.info("Starting receipt migration to time-series collection, batch size {}", batchSize);
+        try {
+            Map<String, Object> result = receiptMigrationService.migrateToTimeSeries(batchSize);
+            logger.info("Receipt migration finished: {}", result);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            logger.error("Receipt migration failed", e);
+            return ResponseEntity.status(500).body("Error migrating receipts: " + e.getMessage());
         }
-        logger.warn("All parsing attempts failed for date string: {}, using current date", dateStr);
-        return LocalDateTime.now();
     }
 
     @GetMapping("/user/{userId}")
-    public List<Receipt> getUserReceipts(@PathVariable String userId) {
+    public ResponseEntity<?> getUserReceipts(@PathVariable String userId) {
         logger.info("Getting receipts for user ID: {}", userId);
 
         try {
-            List<Receipt> receipts = receiptRepository.findByUserId(userId);
+            List<Receipt> receipts = receiptArchiveService.findAllByUserId(userId);
             logger.info("Found {} receipts for user ID: {}", receipts.size(), userId);
 
             if (receipts.isEmpty()) {
@@ -158,17 +178,21 @@ public class ReceiptController {
 
                 logger.info("After manual filtering found {} receipts for user ID: {}", receipts.size(), userId);
             }
-            return receipts;
+            return ResponseEntity.ok(receipts);
+        } catch (UncheckedIOException e) {
+            // An unreadable archive must not look like a user without older receipts
+            logger.error("Archived receipts of user ID {} could not be read", userId, e);
+            return ResponseEntity.status(503).body("Archived receipts are unavailable: " + e.getMessage());
         } catch (Exception e) {
             logger.error("Exception while fetching receipts for user ID: {}", userId, e);
-            return new ArrayList<>();
+            return ResponseEntity.ok(new ArrayList<>());
         }
     }
 
     @GetMapping("/{receiptId}")
     public ResponseEntity<?> getReceiptById(@PathVariable String receiptId) {
         logger.info("Getting receipt with ID: {}", receiptId);
-        Receipt receipt = receiptRepository.findById(receiptId);
+        Receipt receipt = receiptArchiveService.findById(receiptId);
         if (receipt != null) {
             logger.info("Found receipt: ID={}, userID={}, merchant={}, amount={}",
                     receipt.getId(), receipt.getUserId(), receipt.getMerchantName(), receipt.getTotalExpense());
@@ -180,9 +204,44 @@ public class ReceiptController {
     }
 
     @PostMapping
-    public ResponseEntity<?> addReceipt(@RequestBody Map<String, Object> receiptData) {
+    public ResponseEntity<?> addReceipt(@RequestBody Map<String, Object> receiptData,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         logger.info("Received new receipt data: {}", receiptData);
 
+        String idempotencyId = null;
+        IdempotencyRecord resumed = null;
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            Object keyUserId = receiptData.get("userId");
+            idempotencyId = idempotencyService.scopedKey(keyUserId != null ? keyUserId.toString() : null,
+                    idempotencyKey);
+            String requestHash = idempotencyService.fingerprint(receiptData);
+            IdempotencyRecord existing = idempotencyService.begin(idempotencyId, requestHash);
+            if (existing != null) {
+                if (!idempotencyService.matchesRequest(existing, requestHash)) {
+                    return ResponseEntity.status(422)
+                            .body("This Idempotency-Key was already used with a different request body");
+                }
+                resumed = idempotencyService.resume(existing);
+                if (resumed == null) {
+                    logger.info("Replaying response for idempotency key: {}", idempotencyId);
+                    return replayReceiptResponse(existing);
+                }
+            }
+        }
+
+        if (resumed != null && resumed.getReceiptId() != null) {
+            // An earlier attempt saved the receipt and failed afterwards; finish that receipt
+            Receipt savedReceipt = receiptArchiveService.findById(resumed.getReceiptId());
+            if (savedReceipt == null) {
+                idempotencyService.release(idempotencyId);
+                return ResponseEntity.status(404)
+                        .body("The receipt saved with this Idempotency-Key has since been deleted");
+            }
+            logger.info("Resuming receipt {} for idempotency key: {}", savedReceipt.getId(), idempotencyId);
+            return finishReceipt(savedReceipt, idempotencyId, resumed);
+        }
+
+        Receipt savedReceipt;
         try {
             Receipt receipt = new Receipt();
             Object userIdObj = receiptData.get("userId");
@@ -273,50 +332,117 @@ public class ReceiptController {
 
             receipt.setScanDate(LocalDateTime.now());
 
-            Receipt savedReceipt = receiptRepository.save(receipt);
+            savedReceipt = receiptRepository.save(receipt);
             logger.info("Saved receipt: ID={}, userID={}, merchant={}, amount={}",
                     savedReceipt.getId(), savedReceipt.getUserId(), savedReceipt.getMerchantName(),
                     savedReceipt.getTotalExpense());
+        } catch (Exception e) {
+            logger.error("Error saving receipt", e);
+            if (idempotencyId != null) {
+                idempotencyService.release(idempotencyId);
+            }
+            return ResponseEntity.badRequest().body("Error saving receipt: " + e.getMessage());
+        }
 
-            if (receipt.getUserId() != null && totalAmount > 0) {
-                String monthYear = purchaseDate.format(DateTimeFormatter.ofPattern("yyyy-MM"));
-                logger.info("Updating budget for user: {}, month: {}, category: {}, amount: {}",
-                        receipt.getUserId(), monthYear, category, totalAmount);
+        if (idempotencyId != null) {
+            idempotencyService.saved(idempotencyId, savedReceipt.getId());
+        }
+        return finishReceipt(savedReceipt, idempotencyId, null);
+    }
+
+    /**
+     * Applies a saved receipt to the budget, spending rollups and points. With
+     * an Idempotency-Key each step is recorded as it completes, and a failure
+     * leaves the key for the next retry to finish the remaining steps; points
+     * are credited once per receipt whatever happens, and a ledger too busy to
+     * take them defers them rather than failing the request.
+     */
+    private ResponseEntity<?> finishReceipt(Receipt savedReceipt, String idempotencyId,
+            IdempotencyRecord progress) {
+        try {
+            if (progress == null || !progress.isBudgetApplied()) {
+                if (savedReceipt.getUserId() != null && savedReceipt.getTotalExpense() > 0) {
+                    LocalDateTime purchaseDate = savedReceipt.getDateOfPurchase();
+                    String monthYear = DateUtil.toMonthYear(purchaseDate);
+                    logger.info("Updating budget for user: {}, month: {}, category: {}, amount: {}",
+                            savedReceipt.getUserId(), monthYear, savedReceipt.getCategory(),
+                            savedReceipt.getTotalExpense());
+
+                    budgetService.addExpenseToBudget(savedReceipt.getUserId(), monthYear, savedReceipt.getCategory(),
+                            savedReceipt.getTotalExpense(), purchaseDate.toLocalDate());
+                }
+                if (idempotencyId != null) {
+                    idempotencyService.budgetApplied(idempotencyId);
+                }
+            }
 
-                budgetService.addExpenseToBudget(receipt.getUserId(), monthYear, category, totalAmount);
+            if (progress == null || !progress.isRollupsApplied()) {
+                try {
+                    analyticsService.recordReceipt(savedReceipt);
+                    if (idempotencyId != null) {
+                        idempotencyService.rollupsApplied(idempotencyId);
+                    }
+                } catch (Exception e) {
+                    logger.warn("Failed to update spending rollups for receipt ID: {}", savedReceipt.getId(), e);
+                }
             }
 
             logger.info("Awarding points for receipt ID: {}", savedReceipt.getId());
             PointTransaction pointsAwarded = rewardsService.awardPointsForReceipt(savedReceipt.getId());
             int points = pointsAwarded != null ? pointsAwarded.getPoints() : 0;
-            logger.info("Awarded {} points for receipt ID: {}", points, savedReceipt.getId());
+            boolean pointsPending = pointsAwarded != null && pointsAwarded.getId() == null;
+            logger.info("Awarded {} points for receipt ID: {}{}", points, savedReceipt.getId(),
+                    pointsPending ? " (deferred)" : "");
 
             Map<String, Object> response = new HashMap<>();
             response.put("receipt", savedReceipt);
             response.put("pointsAwarded", points);
+            response.put("pointsPending", pointsPending);
+
+            if (idempotencyId != null) {
+                idempotencyService.complete(idempotencyId, savedReceipt.getId(), points, pointsPending);
+            }
 
             return ResponseEntity.ok(response);
         } catch (Exception e) {
-            logger.error("Error saving receipt", e);
-            return ResponseEntity.badRequest().body("Error saving receipt: " + e.getMessage());
+            logger.error("Error processing saved receipt ID: {}", savedReceipt.getId(), e);
+            if (idempotencyId != null) {
+                idempotencyService.interrupt(idempotencyId);
+            }
+            String retry = idempotencyId != null ? ", retry with the same Idempotency-Key" : "";
+            return ResponseEntity.status(500).body("Receipt " + savedReceipt.getId()
+                    + " was saved but could not be fully processed" + retry + ": " + e.getMessage());
+        }
+    }
+
+    private ResponseEntity<?> replayReceiptResponse(IdempotencyRecord record) {
+        if (!record.isCompleted()) {
+            return ResponseEntity.status(409).body("A request with this Idempotency-Key is still being processed");
         }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("receipt", receiptArchiveService.findById(record.getReceiptId()));
+        response.put("pointsAwarded", record.getPointsAwarded());
+        response.put("pointsPending", record.isPointsPending());
+
+        return ResponseEntity.ok()
+                .header("Idempotent-Replayed", "true")
+                .body(response);
     }
 
     @DeleteMapping("/{receiptId}")
     public ResponseEntity<?> deleteReceipt(@PathVariable String receiptId) {
         logger.info("Deleting receipt with ID: {}", receiptId);
         try {
-            Receipt receipt = receiptRepository.findById(receiptId);
+            // Archived receipts are deleted from their month file
+            Receipt receipt = receiptArchiveService.deleteReceipt(receiptId);
 
             if (receipt != null) {
-                logger.info("Found receipt to delete: ID={}, userID={}, merchant={}, amount={}",
+                logger.info("Deleted receipt: ID={}, userID={}, merchant={}, amount={}",
                         receipt.getId(), receipt.getUserId(), receipt.getMerchantName(), receipt.getTotalExpense());
 
-                receiptRepository.deleteById(receiptId);
-                logger.info("Receipt deleted successfully: {}", receiptId);
-
                 if (receipt.getUserId() != null && receipt.getTotalExpense() > 0) {
-                    String monthYear = receipt.getDateOfPurchase().format(DateTimeFormatter.ofPattern("yyyy-MM"));
+                    String monthYear = DateUtil.toMonthYear(receipt.getDateOfPurchase());
                     logger.info("Updating budget to remove expense: user={}, month={}, category={}, amount={}",
                             receipt.getUserId(), monthYear, receipt.getCategory(), receipt.getTotalExpense());
 
@@ -324,7 +450,14 @@ public class ReceiptController {
                             receipt.getUserId(),
                             monthYear,
                             receipt.getCategory(),
-                            receipt.getTotalExpense());
+                            receipt.getTotalExpense(),
+                            receipt.getDateOfPurchase().toLocalDate());
+                }
+
+                try {
+                    analyticsService.removeReceipt(receipt);
+                } catch (Exception e) {
+                    logger.warn("Failed to update spending rollups for deleted receipt ID: {}", receiptId, e);
                 }
 
                 return ResponseEntity.ok().build();
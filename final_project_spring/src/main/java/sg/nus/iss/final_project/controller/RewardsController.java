@@ -16,11 +16,14 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
 
 import sg.nus.iss.final_project.model.PointTransaction;
 import sg.nus.iss.final_project.model.Reward;
 import sg.nus.iss.final_project.model.UserPoints;
 import sg.nus.iss.final_project.model.UserReward;
+import sg.nus.iss.final_project.service.RedemptionCodeService;
+import sg.nus.iss.final_project.service.RewardInventoryService;
 import sg.nus.iss.final_project.service.RewardsService;
 
 @RestController
@@ -30,6 +33,12 @@ public class RewardsController {
     @Autowired
     private RewardsService rewardsService;
 
+    @Autowired
+    private RewardInventoryService rewardInventoryService;
+
+    @Autowired
+    private RedemptionCodeService redemptionCodeService;
+
     @GetMapping("/available")
     public ResponseEntity<List<Reward>> getAvailableRewards() {
         List<Reward> rewards = rewardsService.getAvailableRewards();
@@ -129,6 +138,69 @@ public class RewardsController {
         }
     }
 
+    @PostMapping("/admin/{rewardId}/restock")
+    public ResponseEntity<?> restockReward(
+            @PathVariable String rewardId,
+            @RequestParam int units) {
+        try {
+            Reward reward = rewardInventoryService.addStock(rewardId, units);
+            return ResponseEntity.ok(reward);
+        } catch (Exception e) {
+            Map<String, String> response = new HashMap<>();
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+
+    @PutMapping("/admin/{rewardId}/stripes")
+    public ResponseEntity<?> configureStockStripes(
+            @PathVariable String rewardId,
+            @RequestParam int count) {
+        try {
+            Reward reward = rewardInventoryService.configureStripes(rewardId, count);
+            return ResponseEntity.ok(reward);
+        } catch (Exception e) {
+            Map<String, String> response = new HashMap<>();
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+
+    @PostMapping("/admin/{rewardId}/codes/generate")
+    public ResponseEntity<?> generateRedemptionCodes(
+            @PathVariable String rewardId,
+            @RequestParam int count) {
+        try {
+            return ResponseEntity.ok(redemptionCodeService.generate(rewardId, count));
+        } catch (Exception e) {
+            Map<String, String> response = new HashMap<>();
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+
+    // Partner codes, one per line in the first column of a CSV file
+    @PostMapping("/admin/{rewardId}/codes/import")
+    public ResponseEntity<?> importRedemptionCodes(
+            @PathVariable String rewardId,
+            @RequestParam("file") MultipartFile file) {
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest().body("File is empty");
+        }
+        try {
+            return ResponseEntity.ok(redemptionCodeService.importCsv(rewardId, file.getInputStream()));
+        } catch (Exception e) {
+            Map<String, String> response = new HashMap<>();
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+
+    @GetMapping("/admin/{rewardId}/codes")
+    public ResponseEntity<Map<String, Object>> getRedemptionCodeStats(@PathVariable String rewardId) {
+        return ResponseEntity.ok(redemptionCodeService.getPoolStats(rewardId));
+    }
+
     @PutMapping("/admin/redemption/{redemptionId}")
     public ResponseEntity<?> updateRedemptionStatus(
             @PathVariable String redemptionId,
@@ -3,29 +3,39 @@ package sg.nus.iss.final_project.controller;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import sg.nus.iss.final_project.model.PointTransaction;
 import sg.nus.iss.final_project.repo.PointTransactionRepository;
-import sg.nus.iss.final_project.repo.UserPointsRepository;
+import sg.nus.iss.final_project.service.PointsExpiryService;
+import sg.nus.iss.final_project.service.PointsLedgerService;
+import sg.nus.iss.final_project.service.PointsReplayService;
 
 @RestController
 @RequestMapping("/api/user-points")
 public class UserPointsController {
 
     @Autowired
-    private UserPointsRepository userPointsRepository;
+    private PointsLedgerService pointsLedgerService;
+
+    @Autowired
+    private PointsReplayService pointsReplayService;
+
+    @Autowired
+    private PointsExpiryService pointsExpiryService;
 
     @Autowired
     private PointTransactionRepository pointTransactionRepository;
 
     @GetMapping("/{userId}")
     public ResponseEntity<?> getUserPoints(@PathVariable String userId) {
-        return userPointsRepository.findByUserId(userId)
+        return pointsLedgerService.findBalance(userId)
                 .map(ResponseEntity::ok)
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
@@ -51,4 +61,31 @@ public class UserPointsController {
         List<PointTransaction> transactions = pointTransactionRepository.findByUserIdAndSource(userId, source);
         return ResponseEntity.ok(transactions);
     }
-}
\ No newline at end of file
+
+    // Rebuilds every stored balance from the points ledger
+    @PostMapping("/admin/replay")
+    public ResponseEntity<?> replayLedger() {
+        try {
+            return ResponseEntity.ok(pointsReplayService.replayAll());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Replay was interrupted");
+        }
+    }
+
+    // Runs one expiry sweep over the partitions this node can lock
+    @PostMapping("/admin/expiry/sweep")
+    public ResponseEntity<?> sweepExpiredPoints() {
+        try {
+            return ResponseEntity.ok(pointsExpiryService.sweep());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Points expiry sweep failed: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/admin/expiry/metrics")
+    public ResponseEntity<?> getExpiryMetrics() {
+        return ResponseEntity.ok(pointsExpiryService.getMetrics());
+    }
+}
@@ -14,6 +14,7 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import sg.nus.iss.final_project.service.StreamTicketService;
 
 @Component
 public class FirebaseAuthenticationFilter extends OncePerRequestFilter {
@@ -21,6 +22,9 @@ public class FirebaseAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private FirebaseAuth firebaseAuth;
 
+    @Autowired
+    private StreamTicketService streamTicketService;
+
     @Override
     protected void doFilterInternal(HttpServletRequest request,
             HttpServletResponse response, FilterChain filterChain)
@@ -29,7 +33,7 @@ public class FirebaseAuthenticationFilter extends OncePerRequestFilter {
         response.setHeader("Access-Control-Allow-Origin", request.getHeader("Origin"));
         response.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
         response.setHeader("Access-Control-Allow-Headers",
-                "Authorization, Content-Type, X-Requested-With, Accept, Origin");
+                "Authorization, Content-Type, X-Requested-With, Accept, Origin, Idempotency-Key");
         response.setHeader("Access-Control-Allow-Credentials", "true");
 
         if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
@@ -44,6 +48,19 @@ public class FirebaseAuthenticationFilter extends OncePerRequestFilter {
         }
 
         String authHeader = request.getHeader("Authorization");
+        // EventSource cannot set headers, so SSE streams are opened with a single-use ticket instead
+        String ticket = request.getParameter("ticket");
+        if (authHeader == null && path.startsWith("/api/events/user/") && ticket != null) {
+            String uid = streamTicketService.redeem(ticket);
+            if (uid == null) {
+                response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                response.getWriter().write("Invalid or expired stream ticket");
+                return;
+            }
+            request.setAttribute("uid", uid);
+            filterChain.doFilter(request, response);
+            return;
+        }
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String idToken = authHeader.substring(7);
             try {
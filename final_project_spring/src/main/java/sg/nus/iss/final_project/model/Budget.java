@@ -1,14 +1,21 @@
 package sg.nus.iss.final_project.model;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "budgets")
-@CompoundIndex(name = "user_month_idx", def = "{'userId': 1, 'monthYear': 1}", unique = true)
+@CompoundIndexes({
+        @CompoundIndex(name = "user_month_idx", def = "{'userId': 1, 'monthYear': 1}", unique = true),
+        @CompoundIndex(name = "month_overspent_idx", def = "{'monthYear': 1, 'overspent': 1, 'overspendRatio': -1}")
+})
 public class Budget {
 
     @Id
@@ -20,6 +27,18 @@ public class Budget {
     private double totalSpent;
     private List<BudgetCategory> categories = new ArrayList<>();
 
+    // Derived from totalSpent and totalBudget on every write so overspent budgets can be found by index
+    private boolean overspent;
+    private double overspendRatio;
+
+    // Month-end projection from BudgetForecastService, filled in on reads and never stored
+    @Transient
+    private Double projectedTotal;
+
+    // Categories by normalised name; built on first lookup since the mapping layer sets the list directly
+    @Transient
+    private Map<String, BudgetCategory> categoryIndex;
+
     public Budget() {
     }
 
@@ -30,6 +49,20 @@ public class Budget {
         this.totalSpent = 0;
     }
 
+    // Copy with its own categories, so derived values can be filled in without touching a shared instance
+    public Budget copy() {
+        Budget copy = new Budget(userId, monthYear, totalBudget);
+        copy.id = id;
+        copy.totalSpent = totalSpent;
+        copy.overspent = overspent;
+        copy.overspendRatio = overspendRatio;
+        copy.projectedTotal = projectedTotal;
+        for (BudgetCategory category : categories) {
+            copy.categories.add(category.copy());
+        }
+        return copy;
+    }
+
     public String getId() {
         return id;
     }
@@ -76,28 +109,102 @@ public class Budget {
 
     public void setCategories(List<BudgetCategory> categories) {
         this.categories = categories;
+        this.categoryIndex = null;
     }
 
-    public void addCategory(BudgetCategory category) {
-        this.categories.add(category);
+    public boolean isOverspent() {
+        return overspent;
+    }
+
+    public void setOverspent(boolean overspent) {
+        this.overspent = overspent;
+    }
+
+    public double getOverspendRatio() {
+        return overspendRatio;
     }
 
+    public void setOverspendRatio(double overspendRatio) {
+        this.overspendRatio = overspendRatio;
+    }
+
+    public Double getProjectedTotal() {
+        return projectedTotal;
+    }
+
+    public void setProjectedTotal(Double projectedTotal) {
+        this.projectedTotal = projectedTotal;
+    }
+
+    public void addCategory(BudgetCategory category) {
+        this.categories.add(category);
+        if (this.categoryIndex != null) {
+            this.categoryIndex.putIfAbsent(category.getKey(), category);
+        }
+        this.totalSpent += category.getSpentAmount();
+    }
+
+    /**
+     * Adds an expense to an existing category, keeping totalSpent in step
+     * without re-summing. Returns false if the category does not exist.
+     */
+    public boolean addExpense(String categoryName, double amount) {
+        BudgetCategory category = findCategoryByName(categoryName);
+        if (category == null) {
+            return false;
+        }
+        category.addExpense(amount);
+        this.totalSpent += amount;
+        return true;
+    }
+
+    // Mirrors BudgetCategory.subtractExpense, which clamps at zero
+    public boolean subtractExpense(String categoryName, double amount) {
+        BudgetCategory category = findCategoryByName(categoryName);
+        if (category == null) {
+            return false;
+        }
+        double before = category.getSpentAmount();
+        category.subtractExpense(amount);
+        this.totalSpent -= before - category.getSpentAmount();
+        return true;
+    }
+
+    // Changes a category's spend to an absolute value, e.g. when it is recomputed
+    public void setCategorySpend(BudgetCategory category, double spentAmount, int transactions) {
+        this.totalSpent += spentAmount - category.getSpentAmount();
+        category.setSpentAmount(spentAmount);
+        category.setTransactions(transactions);
+    }
+
+    // Full re-sum, for budgets that arrive from outside such as a client-submitted save
     public void updateTotalSpent() {
         this.totalSpent = this.categories.stream()
                 .mapToDouble(BudgetCategory::getSpentAmount)
                 .sum();
     }
 
+    public void updateOverspend() {
+        this.overspendRatio = this.totalBudget > 0 ? this.totalSpent / this.totalBudget : 0;
+        this.overspent = this.totalSpent > this.totalBudget;
+    }
+
     public BudgetCategory findCategoryByName(String categoryName) {
-        return this.categories.stream()
-                .filter(c -> c.getCategory().equalsIgnoreCase(categoryName))
-                .findFirst()
-                .orElse(null);
+        if (this.categoryIndex == null) {
+            Map<String, BudgetCategory> index = new HashMap<>();
+            for (BudgetCategory category : this.categories) {
+                // Older budgets can hold case variants of a name; the first one wins as before
+                index.putIfAbsent(category.getKey(), category);
+            }
+            this.categoryIndex = index;
+        }
+        return this.categoryIndex.get(BudgetCategory.normalizeName(categoryName));
     }
 
     @Override
     public String toString() {
         return "Budget [id=" + id + ", userId=" + userId + ", monthYear=" + monthYear + ", totalBudget=" + totalBudget
-                + ", totalSpent=" + totalSpent + ", categories=" + categories + "]";
+                + ", totalSpent=" + totalSpent + ", overspent=" + overspent + ", overspendRatio=" + overspendRatio
+                + ", categories=" + categories + "]";
     }
 }
\ No newline at end of file
@@ -0,0 +1,143 @@
+package sg.nus.iss.final_project.model;
+
+import java.time.LocalDateTime;
+import java.util.Locale;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A category crossing one of the alert thresholds in a month. The id makes
+ * each crossing unique, so a threshold alerts at most once per category and
+ * month; the status turns the collection into an outbox for delivery retries.
+ */
+@Document(collection = "budgetAlerts")
+public class BudgetAlert {
+
+    public static final String PENDING = "PENDING";
+    public static final String SENT = "SENT";
+    public static final String FAILED = "FAILED";
+
+    @Id
+    private String id; // userId:monthYear:category:threshold
+    private String userId;
+    private String monthYear;
+    private String category;
+    private int threshold; // percent of the category budget
+    private double spentAmount;
+    private double budgetAmount;
+    private String status;
+    private int attempts;
+    private LocalDateTime createdAt;
+    private LocalDateTime sentAt;
+
+    public BudgetAlert() {
+    }
+
+    public BudgetAlert(String userId, String monthYear, String category, int threshold, double spentAmount,
+            double budgetAmount) {
+        this.id = userId + ":" + monthYear + ":" + category.toLowerCase(Locale.ROOT) + ":" + threshold;
+        this.userId = userId;
+        this.monthYear = monthYear;
+        this.category = category;
+        this.threshold = threshold;
+        this.spentAmount = spentAmount;
+        this.budgetAmount = budgetAmount;
+        this.status = PENDING;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getMonthYear() {
+        return monthYear;
+    }
+
+    public void setMonthYear(String monthYear) {
+        this.monthYear = monthYear;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public double getSpentAmount() {
+        return spentAmount;
+    }
+
+    public void setSpentAmount(double spentAmount) {
+        this.spentAmount = spentAmount;
+    }
+
+    public double getBudgetAmount() {
+        return budgetAmount;
+    }
+
+    public void setBudgetAmount(double budgetAmount) {
+        this.budgetAmount = budgetAmount;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getSentAt() {
+        return sentAt;
+    }
+
+    public void setSentAt(LocalDateTime sentAt) {
+        this.sentAt = sentAt;
+    }
+
+    @Override
+    public String toString() {
+        return "BudgetAlert [id=" + id + ", threshold=" + threshold + ", spentAmount=" + spentAmount
+                + ", budgetAmount=" + budgetAmount + ", status=" + status + "]";
+    }
+}
@@ -1,28 +1,62 @@
 package sg.nus.iss.final_project.model;
 
+import java.util.Locale;
+
+import org.springframework.data.annotation.Transient;
+
 public class BudgetCategory {
 
     private String category;
+    private String key; // normalised category name, see normalizeName
     private double budgetAmount;
     private double spentAmount;
     private int transactions;
 
+    @Transient
+    private Double projectedSpend;
+
     public BudgetCategory() {
     }
 
     public BudgetCategory(String category, double budgetAmount) {
         this.category = category;
+        this.key = normalizeName(category);
         this.budgetAmount = budgetAmount;
         this.spentAmount = 0;
         this.transactions = 0;
     }
 
+    public BudgetCategory copy() {
+        BudgetCategory copy = new BudgetCategory();
+        copy.category = category;
+        copy.key = key;
+        copy.budgetAmount = budgetAmount;
+        copy.spentAmount = spentAmount;
+        copy.transactions = transactions;
+        copy.projectedSpend = projectedSpend;
+        return copy;
+    }
+
     public String getCategory() {
         return category;
     }
 
     public void setCategory(String category) {
         this.category = category;
+        this.key = normalizeName(category);
+    }
+
+    // Budgets stored before keys existed have none until migrated
+    public String getKey() {
+        return key != null ? key : normalizeName(category);
+    }
+
+    /**
+     * Category names are compared trimmed and case-insensitively. BudgetRepository
+     * repeats this rule in its queries for budgets written before keys existed.
+     */
+    public static String normalizeName(String name) {
+        return name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
     }
 
     public double getBudgetAmount() {
@@ -49,6 +83,14 @@ public class BudgetCategory {
         this.transactions = transactions;
     }
 
+    public Double getProjectedSpend() {
+        return projectedSpend;
+    }
+
+    public void setProjectedSpend(Double projectedSpend) {
+        this.projectedSpend = projectedSpend;
+    }
+
     public void addExpense(double amount) {
         this.spentAmount += amount;
         this.transactions++;
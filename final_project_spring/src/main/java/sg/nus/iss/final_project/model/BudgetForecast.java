@@ -0,0 +1,102 @@
+package sg.nus.iss.final_project.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Forecast model state for one budget, stored under the same user and month.
+ * Updated with optimistic locking, since each update reads the previous state.
+ */
+@Document(collection = "budgetForecasts")
+public class BudgetForecast {
+
+    @Id
+    private String id; // userId:monthYear
+    @Version
+    private Long version;
+    private String userId;
+    private String monthYear;
+    private List<CategoryForecast> categories = new ArrayList<>();
+
+    public BudgetForecast() {
+    }
+
+    public BudgetForecast(String userId, String monthYear) {
+        this.id = idFor(userId, monthYear);
+        this.userId = userId;
+        this.monthYear = monthYear;
+    }
+
+    public static String idFor(String userId, String monthYear) {
+        return userId + ":" + monthYear;
+    }
+
+    // Matched like budget categories, so both resolve a name to the same category
+    public CategoryForecast findCategory(String categoryName) {
+        String key = BudgetCategory.normalizeName(categoryName);
+        for (CategoryForecast category : categories) {
+            if (BudgetCategory.normalizeName(category.getCategory()).equals(key)) {
+                return category;
+            }
+        }
+        return null;
+    }
+
+    public CategoryForecast getOrAddCategory(String categoryName) {
+        CategoryForecast category = findCategory(categoryName);
+        if (category == null) {
+            category = new CategoryForecast(categoryName);
+            categories.add(category);
+        }
+        return category;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getMonthYear() {
+        return monthYear;
+    }
+
+    public void setMonthYear(String monthYear) {
+        this.monthYear = monthYear;
+    }
+
+    public List<CategoryForecast> getCategories() {
+        return categories;
+    }
+
+    public void setCategories(List<CategoryForecast> categories) {
+        this.categories = categories;
+    }
+
+    @Override
+    public String toString() {
+        return "BudgetForecast [id=" + id + ", version=" + version + ", categories=" + categories + "]";
+    }
+}
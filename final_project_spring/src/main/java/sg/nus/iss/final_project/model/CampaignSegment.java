@@ -0,0 +1,91 @@
+package sg.nus.iss.final_project.model;
+
+import java.time.LocalDate;
+
+/**
+ * Selects the users of a campaign by their receipts, e.g. everyone who
+ * scanned a FairPrice receipt this month. Unset fields do not restrict the
+ * segment, so an empty segment is every user with a receipt.
+ */
+public class CampaignSegment {
+
+    private String merchantName; // matched ignoring case
+    private String category;
+    private LocalDate from; // purchase date, inclusive
+    private LocalDate to; // purchase date, inclusive
+    private Double minTotal; // smallest receipt total that counts
+
+    public CampaignSegment() {
+    }
+
+    public String getMerchantName() {
+        return merchantName;
+    }
+
+    public void setMerchantName(String merchantName) {
+        this.merchantName = merchantName;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public void setFrom(LocalDate from) {
+        this.from = from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public void setTo(LocalDate to) {
+        this.to = to;
+    }
+
+    public Double getMinTotal() {
+        return minTotal;
+    }
+
+    public void setMinTotal(Double minTotal) {
+        this.minTotal = minTotal;
+    }
+
+    // Same test as ReceiptRepository.streamSegmentUserIds, for receipts read from the archive
+    public boolean matches(Receipt receipt) {
+        if (receipt.getUserId() == null) {
+            return false;
+        }
+        if (merchantName != null && !merchantName.isBlank()
+                && (receipt.getMerchantName() == null
+                        || !receipt.getMerchantName().equalsIgnoreCase(merchantName.trim()))) {
+            return false;
+        }
+        if (category != null && !category.isBlank() && !category.equals(receipt.getCategory())) {
+            return false;
+        }
+        if (from != null || to != null) {
+            if (receipt.getDateOfPurchase() == null) {
+                return false;
+            }
+            LocalDate purchased = receipt.getDateOfPurchase().toLocalDate();
+            if ((from != null && purchased.isBefore(from)) || (to != null && purchased.isAfter(to))) {
+                return false;
+            }
+        }
+        return minTotal == null || receipt.getTotalExpense() >= minTotal;
+    }
+
+    @Override
+    public String toString() {
+        return "CampaignSegment [merchantName=" + merchantName + ", category=" + category + ", from=" + from
+                + ", to=" + to + ", minTotal=" + minTotal + "]";
+    }
+}
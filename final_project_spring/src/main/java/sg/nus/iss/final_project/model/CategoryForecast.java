@@ -0,0 +1,131 @@
+package sg.nus.iss.final_project.model;
+
+/**
+ * Exponentially weighted daily spend for one budget category. Days before the
+ * one currently open are "closed" and folded into rate; the open day collects
+ * spend until an expense on a later day closes it. Every update is O(1):
+ * skipped days are folded in with a single power of the decay factor, and
+ * backdated expenses add their already-decayed weight directly.
+ */
+public class CategoryForecast {
+
+    private String category;
+    private int day; // day of month that is still open, 0 before the first expense
+    private double daySpend;
+    private double rate; // EWMA of closed days, not yet bias corrected
+    private int closedDays;
+
+    public CategoryForecast() {
+    }
+
+    public CategoryForecast(String category) {
+        this.category = category;
+    }
+
+    public void record(int dayOfMonth, double amount, double alpha) {
+        adjust(dayOfMonth, amount, alpha);
+    }
+
+    public void remove(int dayOfMonth, double amount, double alpha) {
+        adjust(dayOfMonth, -amount, alpha);
+    }
+
+    private void adjust(int dayOfMonth, double amount, double alpha) {
+        if (day == 0) {
+            // The series starts on the 1st, so days before the first expense count as zero spend
+            day = 1;
+        }
+        advanceTo(dayOfMonth, alpha);
+        if (dayOfMonth == day) {
+            daySpend = Math.max(0, daySpend + amount);
+        } else {
+            // Day dayOfMonth was folded (day - 1 - dayOfMonth) folds ago with weight alpha
+            rate = Math.max(0, rate + alpha * amount * Math.pow(1 - alpha, day - 1 - dayOfMonth));
+        }
+    }
+
+    // Closes the open day and any days in between, which had no spend
+    public void advanceTo(int dayOfMonth, double alpha) {
+        int gap = dayOfMonth - day;
+        if (day == 0 || gap <= 0) {
+            return;
+        }
+        double decay = 1 - alpha;
+        rate = (alpha * daySpend + decay * rate) * Math.pow(decay, gap - 1);
+        closedDays += gap;
+        day = dayOfMonth;
+        daySpend = 0;
+    }
+
+    /**
+     * Expected spend for the rest of the month after today, including what is
+     * still expected today. Works on a copy so reading never changes the state.
+     */
+    public double projectRemaining(int today, int daysInMonth, double alpha) {
+        CategoryForecast view = copy();
+        if (view.day == 0) {
+            view.day = 1;
+        }
+        view.advanceTo(today, alpha);
+        // Fold today in as if it were closed, then correct the bias of the zero start
+        double decay = 1 - alpha;
+        double dailyRate = (alpha * view.daySpend + decay * view.rate)
+                / (1 - Math.pow(decay, view.closedDays + 1));
+        return Math.max(0, dailyRate - view.daySpend) + dailyRate * Math.max(0, daysInMonth - today);
+    }
+
+    private CategoryForecast copy() {
+        CategoryForecast copy = new CategoryForecast(category);
+        copy.day = day;
+        copy.daySpend = daySpend;
+        copy.rate = rate;
+        copy.closedDays = closedDays;
+        return copy;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public int getDay() {
+        return day;
+    }
+
+    public void setDay(int day) {
+        this.day = day;
+    }
+
+    public double getDaySpend() {
+        return daySpend;
+    }
+
+    public void setDaySpend(double daySpend) {
+        this.daySpend = daySpend;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    public int getClosedDays() {
+        return closedDays;
+    }
+
+    public void setClosedDays(int closedDays) {
+        this.closedDays = closedDays;
+    }
+
+    @Override
+    public String toString() {
+        return "CategoryForecast [category=" + category + ", day=" + day + ", daySpend=" + daySpend + ", rate="
+                + rate + ", closedDays=" + closedDays + "]";
+    }
+}
@@ -0,0 +1,139 @@
+package sg.nus.iss.final_project.model;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Stores the outcome of the first request made with a given Idempotency-Key so
+ * that client retries can be answered without repeating side effects.
+ * Once the receipt is saved its id and each completed follow-up step are
+ * recorded, so a retry after a failure finishes the remaining steps for that
+ * receipt instead of saving another one. An attempt holds the record for a
+ * short lease; a record whose lease ran out, e.g. because its node died, can
+ * be taken over the same way. Records are removed by a TTL index on
+ * createdAt.
+ */
+@Document(collection = "idempotencyKeys")
+public class IdempotencyRecord {
+    public static final String IN_PROGRESS = "IN_PROGRESS";
+    public static final String COMPLETED = "COMPLETED";
+    // Failed after the receipt was saved; the next retry takes the record over
+    public static final String INTERRUPTED = "INTERRUPTED";
+
+    @Id
+    private String id; // userId + ":" + Idempotency-Key
+    private String status;
+    private String requestHash; // SHA-256 of the request body, so a key cannot be reused for another receipt
+    private LocalDateTime leaseUntil; // an IN_PROGRESS record past this can be taken over
+    private String receiptId; // set as soon as the receipt is saved
+    private boolean budgetApplied;
+    private boolean rollupsApplied;
+    private int pointsAwarded;
+    private boolean pointsPending; // the credit was deferred by a busy ledger and is applied later
+    private LocalDateTime createdAt;
+
+    public IdempotencyRecord() {
+    }
+
+    public IdempotencyRecord(String id, String requestHash, LocalDateTime leaseUntil) {
+        this.id = id;
+        this.status = IN_PROGRESS;
+        this.requestHash = requestHash;
+        this.leaseUntil = leaseUntil;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    public void setRequestHash(String requestHash) {
+        this.requestHash = requestHash;
+    }
+
+    public LocalDateTime getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public void setLeaseUntil(LocalDateTime leaseUntil) {
+        this.leaseUntil = leaseUntil;
+    }
+
+    public String getReceiptId() {
+        return receiptId;
+    }
+
+    public void setReceiptId(String receiptId) {
+        this.receiptId = receiptId;
+    }
+
+    public boolean isBudgetApplied() {
+        return budgetApplied;
+    }
+
+    public void setBudgetApplied(boolean budgetApplied) {
+        this.budgetApplied = budgetApplied;
+    }
+
+    public boolean isRollupsApplied() {
+        return rollupsApplied;
+    }
+
+    public void setRollupsApplied(boolean rollupsApplied) {
+        this.rollupsApplied = rollupsApplied;
+    }
+
+    public int getPointsAwarded() {
+        return pointsAwarded;
+    }
+
+    public void setPointsAwarded(int pointsAwarded) {
+        this.pointsAwarded = pointsAwarded;
+    }
+
+    public boolean isPointsPending() {
+        return pointsPending;
+    }
+
+    public void setPointsPending(boolean pointsPending) {
+        this.pointsPending = pointsPending;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public boolean isCompleted() {
+        return COMPLETED.equals(status);
+    }
+
+    @Override
+    public String toString() {
+        return "IdempotencyRecord [id=" + id + ", status=" + status + ", leaseUntil=" + leaseUntil
+                + ", receiptId=" + receiptId
+                + ", budgetApplied=" + budgetApplied + ", rollupsApplied=" + rollupsApplied + ", pointsAwarded=" + pointsAwarded
+                + ", pointsPending=" + pointsPending + ", createdAt=" + createdAt + "]";
+    }
+}
@@ -0,0 +1,46 @@
+package sg.nus.iss.final_project.model;
+
+public class LeaderboardEntry {
+
+    private String userId;
+    private long points;
+    private int rank; // 1 for the top earner, 0 if the user has not earned points on the board
+
+    public LeaderboardEntry() {
+    }
+
+    public LeaderboardEntry(String userId, long points, int rank) {
+        this.userId = userId;
+        this.points = points;
+        this.rank = rank;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public long getPoints() {
+        return points;
+    }
+
+    public void setPoints(long points) {
+        this.points = points;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public void setRank(int rank) {
+        this.rank = rank;
+    }
+
+    @Override
+    public String toString() {
+        return "LeaderboardEntry [userId=" + userId + ", points=" + points + ", rank=" + rank + "]";
+    }
+}
@@ -0,0 +1,69 @@
+package sg.nus.iss.final_project.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Persisted score of one user on one leaderboard, used to restore the
+ * in-process leaderboards after a restart.
+ */
+@Document(collection = "leaderboardScores")
+public class LeaderboardScore {
+
+    @Id
+    private String id; // board:userId
+    private String board; // "all" or "week:yyyy-Www"
+    private String userId;
+    private long score;
+
+    public LeaderboardScore() {
+    }
+
+    public LeaderboardScore(String board, String userId, long score) {
+        this.id = idFor(board, userId);
+        this.board = board;
+        this.userId = userId;
+        this.score = score;
+    }
+
+    public static String idFor(String board, String userId) {
+        return board + ":" + userId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getBoard() {
+        return board;
+    }
+
+    public void setBoard(String board) {
+        this.board = board;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public long getScore() {
+        return score;
+    }
+
+    public void setScore(long score) {
+        this.score = score;
+    }
+
+    @Override
+    public String toString() {
+        return "LeaderboardScore [id=" + id + ", score=" + score + "]";
+    }
+}
@@ -7,6 +7,13 @@ import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "pointTransactions")
 public class PointTransaction {
+    public static final String EARNED = "EARNED";
+    public static final String SPENT = "SPENT";
+    public static final String OPENING = "OPENING"; // carries over a balance kept before the ledger
+    public static final String EXPIRED = "EXPIRED"; // removes unspent points whose lots have expired
+    // Source of EARNED events that hand back the points of a failed redemption; not scored on leaderboards
+    public static final String REWARD_REFUND = "REWARD_REFUND";
+
     @Id
     private String id;
     private String userId;
@@ -16,6 +23,10 @@ public class PointTransaction {
     private String referenceId; // Receipt ID or Reward ID
     private LocalDateTime transactionDate;
     private String description;
+    private Long sequence; // per user, starting at 1; null for entries written before the ledger
+    private Integer openingSpent; // OPENING only: points already spent when the balance was carried over
+    private LocalDateTime expiresAt; // EARNED and OPENING: when the points of this lot expire, null if never
+    private Integer expiryBucket; // hash bucket of userId, set together with expiresAt for the expiry sweeper
 
     public PointTransaction() {
     }
@@ -95,6 +106,38 @@ public class PointTransaction {
         this.description = description;
     }
 
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
+
+    public Integer getOpeningSpent() {
+        return openingSpent;
+    }
+
+    public void setOpeningSpent(Integer openingSpent) {
+        this.openingSpent = openingSpent;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public Integer getExpiryBucket() {
+        return expiryBucket;
+    }
+
+    public void setExpiryBucket(Integer expiryBucket) {
+        this.expiryBucket = expiryBucket;
+    }
+
     @Override
     public String toString() {
         return "PointTransaction{" +
@@ -105,6 +148,7 @@ public class PointTransaction {
                 ", source='" + source + '\'' +
                 ", referenceId='" + referenceId + '\'' +
                 ", transactionDate=" + transactionDate +
+                ", sequence=" + sequence +
                 '}';
     }
 }
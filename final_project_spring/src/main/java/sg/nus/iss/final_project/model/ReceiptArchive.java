@@ -0,0 +1,119 @@
+package sg.nus.iss.final_project.model;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Catalog entry for one archived user-month of receipts. The receipts
+ * themselves live in a compressed columnar file in GridFS, so every node can
+ * read them; the catalog also lists their ids so a single archived receipt
+ * can be found without opening files.
+ */
+@Document(collection = "receiptArchives")
+@CompoundIndex(name = "user_month_idx", def = "{'userId': 1, 'monthYear': 1}", unique = true)
+public class ReceiptArchive {
+
+    @Id
+    private String id; // userId:monthYear
+    private String userId;
+    private String monthYear; // Format: YYYY-MM
+    private String location; // "gridfs:<file id>", or a local path for archives written before GridFS
+    private List<String> receiptIds;
+    private int receiptCount;
+    private double totalExpense;
+    private long sizeBytes;
+    private LocalDateTime archivedAt;
+
+    public ReceiptArchive() {
+    }
+
+    public ReceiptArchive(String userId, String monthYear, String location) {
+        this.id = userId + ":" + monthYear;
+        this.userId = userId;
+        this.monthYear = monthYear;
+        this.location = location;
+        this.archivedAt = LocalDateTime.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getMonthYear() {
+        return monthYear;
+    }
+
+    public void setMonthYear(String monthYear) {
+        this.monthYear = monthYear;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public List<String> getReceiptIds() {
+        return receiptIds;
+    }
+
+    public void setReceiptIds(List<String> receiptIds) {
+        this.receiptIds = receiptIds;
+    }
+
+    public int getReceiptCount() {
+        return receiptCount;
+    }
+
+    public void setReceiptCount(int receiptCount) {
+        this.receiptCount = receiptCount;
+    }
+
+    public double getTotalExpense() {
+        return totalExpense;
+    }
+
+    public void setTotalExpense(double totalExpense) {
+        this.totalExpense = totalExpense;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public void setSizeBytes(long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+
+    public LocalDateTime getArchivedAt() {
+        return archivedAt;
+    }
+
+    public void setArchivedAt(LocalDateTime archivedAt) {
+        this.archivedAt = archivedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "ReceiptArchive [id=" + id + ", location=" + location + ", receiptCount=" + receiptCount
+                + ", totalExpense=" + totalExpense + ", sizeBytes=" + sizeBytes + "]";
+    }
+}
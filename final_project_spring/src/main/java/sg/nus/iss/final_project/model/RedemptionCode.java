@@ -0,0 +1,125 @@
+package sg.nus.iss.final_project.model;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A voucher code waiting in a reward's pool, or already handed out. Codes are
+ * unique across all rewards and are claimed by exactly one redemption.
+ */
+@Document(collection = "redemptionCodes")
+public class RedemptionCode {
+    public static final String AVAILABLE = "AVAILABLE";
+    public static final String CLAIMED = "CLAIMED";
+
+    public static final String GENERATED = "GENERATED";
+    public static final String IMPORTED = "IMPORTED";
+
+    @Id
+    private String id;
+    private String code;
+    private String rewardId;
+    private String status;
+    private String source; // GENERATED by the refill job or IMPORTED from a partner file
+    private String batchId; // the import or refill that added the code
+    private String userId; // set when claimed
+    private LocalDateTime createdAt;
+    private LocalDateTime claimedAt;
+
+    public RedemptionCode() {
+    }
+
+    public RedemptionCode(String code, String rewardId, String source, String batchId) {
+        this.code = code;
+        this.rewardId = rewardId;
+        this.status = AVAILABLE;
+        this.source = source;
+        this.batchId = batchId;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public void setCode(String code) {
+        this.code = code;
+    }
+
+    public String getRewardId() {
+        return rewardId;
+    }
+
+    public void setRewardId(String rewardId) {
+        this.rewardId = rewardId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public String getBatchId() {
+        return batchId;
+    }
+
+    public void setBatchId(String batchId) {
+        this.batchId = batchId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getClaimedAt() {
+        return claimedAt;
+    }
+
+    public void setClaimedAt(LocalDateTime claimedAt) {
+        this.claimedAt = claimedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "RedemptionCode{" +
+                "id='" + id + '\'' +
+                ", rewardId='" + rewardId + '\'' +
+                ", status='" + status + '\'' +
+                ", source='" + source + '\'' +
+                ", batchId='" + batchId + '\'' +
+                '}';
+    }
+}
@@ -19,6 +19,9 @@ public class Reward {
     private String merchantName; // For vouchers
     private String termsConditions;
     private LocalDateTime expiryDate; // For vouchers
+    private int stockStripes; // > 1 when the stock is split across rewardStock documents
+    private boolean soldOut; // set when the last unit was taken, unlike an admin disabling the reward
+    private boolean partnerCodes; // codes come only from partner imports and are never generated
 
     public Reward() {
     }
@@ -126,6 +129,39 @@ public class Reward {
         this.expiryDate = expiryDate;
     }
 
+    public int getStockStripes() {
+        return stockStripes;
+    }
+
+    public void setStockStripes(int stockStripes) {
+        this.stockStripes = stockStripes;
+    }
+
+    public boolean isStriped() {
+        return stockStripes > 1;
+    }
+
+    public boolean isSoldOut() {
+        return soldOut;
+    }
+
+    public void setSoldOut(boolean soldOut) {
+        this.soldOut = soldOut;
+    }
+
+    public boolean isPartnerCodes() {
+        return partnerCodes;
+    }
+
+    public void setPartnerCodes(boolean partnerCodes) {
+        this.partnerCodes = partnerCodes;
+    }
+
+    // Vouchers, and rewards stocked with partner codes, hand out a code from the reward's pool
+    public boolean usesRedemptionCodes() {
+        return "VOUCHER".equals(category) || partnerCodes;
+    }
+
     @Override
     public String toString() {
         return "Reward{" +
@@ -0,0 +1,70 @@
+package sg.nus.iss.final_project.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * One stripe of a reward's stock. Splitting a hot reward's quantity across
+ * several of these spreads concurrent redemptions over several documents
+ * instead of queueing them all on the reward itself.
+ */
+@Document(collection = "rewardStock")
+public class RewardStock {
+
+    @Id
+    private String id; // rewardId:stripe
+    private String rewardId;
+    private int stripe;
+    private int quantity;
+
+    public RewardStock() {
+    }
+
+    public RewardStock(String rewardId, int stripe, int quantity) {
+        this.id = idFor(rewardId, stripe);
+        this.rewardId = rewardId;
+        this.stripe = stripe;
+        this.quantity = quantity;
+    }
+
+    public static String idFor(String rewardId, int stripe) {
+        return rewardId + ":" + stripe;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getRewardId() {
+        return rewardId;
+    }
+
+    public void setRewardId(String rewardId) {
+        this.rewardId = rewardId;
+    }
+
+    public int getStripe() {
+        return stripe;
+    }
+
+    public void setStripe(int stripe) {
+        this.stripe = stripe;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    @Override
+    public String toString() {
+        return "RewardStock [id=" + id + ", quantity=" + quantity + "]";
+    }
+}
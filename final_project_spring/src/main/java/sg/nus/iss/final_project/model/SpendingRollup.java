@@ -0,0 +1,153 @@
+package sg.nus.iss.final_project.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Pre-aggregated spend for one user over one day or one month, maintained
+ * incrementally as receipts are created and deleted. The version goes up
+ * with every write, so a recomputed rollup is only stored over the one it
+ * was computed against.
+ */
+@Document(collection = "spendingRollups")
+@CompoundIndex(name = "user_granularity_period_idx", def = "{'userId': 1, 'granularity': 1, 'periodKey': 1}")
+public class SpendingRollup {
+
+    public static final String DAY = "DAY";
+    public static final String MONTH = "MONTH";
+
+    @Id
+    private String id; // userId:granularity:periodKey
+    private String userId;
+    private String granularity; // "DAY" or "MONTH"
+    private String periodKey; // Format: YYYY-MM-DD for days, YYYY-MM for months
+    private double totalSpent;
+    private int receiptCount;
+    private Double minExpense;
+    private Double maxExpense;
+    private Map<String, Double> categoryTotals = new HashMap<>();
+    private Map<String, Integer> categoryCounts = new HashMap<>();
+    private long version;
+
+    public SpendingRollup() {
+    }
+
+    public SpendingRollup(String userId, String granularity, String periodKey) {
+        this.id = idFor(userId, granularity, periodKey);
+        this.userId = userId;
+        this.granularity = granularity;
+        this.periodKey = periodKey;
+    }
+
+    public static String idFor(String userId, String granularity, String periodKey) {
+        return userId + ":" + granularity + ":" + periodKey;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getGranularity() {
+        return granularity;
+    }
+
+    public void setGranularity(String granularity) {
+        this.granularity = granularity;
+    }
+
+    public String getPeriodKey() {
+        return periodKey;
+    }
+
+    public void setPeriodKey(String periodKey) {
+        this.periodKey = periodKey;
+    }
+
+    public double getTotalSpent() {
+        return totalSpent;
+    }
+
+    public void setTotalSpent(double totalSpent) {
+        this.totalSpent = totalSpent;
+    }
+
+    public int getReceiptCount() {
+        return receiptCount;
+    }
+
+    public void setReceiptCount(int receiptCount) {
+        this.receiptCount = receiptCount;
+    }
+
+    public Double getMinExpense() {
+        return minExpense;
+    }
+
+    public void setMinExpense(Double minExpense) {
+        this.minExpense = minExpense;
+    }
+
+    public Double getMaxExpense() {
+        return maxExpense;
+    }
+
+    public void setMaxExpense(Double maxExpense) {
+        this.maxExpense = maxExpense;
+    }
+
+    public Map<String, Double> getCategoryTotals() {
+        return categoryTotals;
+    }
+
+    public void setCategoryTotals(Map<String, Double> categoryTotals) {
+        this.categoryTotals = categoryTotals;
+    }
+
+    public Map<String, Integer> getCategoryCounts() {
+        return categoryCounts;
+    }
+
+    public void setCategoryCounts(Map<String, Integer> categoryCounts) {
+        this.categoryCounts = categoryCounts;
+    }
+
+    public void addExpense(String category, double amount) {
+        this.totalSpent += amount;
+        this.receiptCount++;
+        this.minExpense = minExpense == null ? amount : Math.min(minExpense, amount);
+        this.maxExpense = maxExpense == null ? amount : Math.max(maxExpense, amount);
+        this.categoryTotals.merge(category, amount, Double::sum);
+        this.categoryCounts.merge(category, 1, Integer::sum);
+    }
+
+    @Override
+    public String toString() {
+        return "SpendingRollup [id=" + id + ", totalSpent=" + totalSpent + ", receiptCount=" + receiptCount
+                + ", minExpense=" + minExpense + ", maxExpense=" + maxExpense + ", categoryTotals=" + categoryTotals
+                + "]";
+    }
+}
@@ -13,7 +13,9 @@ public class UserPoints {
     private int totalPoints;
     private int availablePoints;
     private int spentPoints;
+    private int expiredPoints;
     private LocalDateTime lastUpdated;
+    private Long sequence; // last ledger event folded into this snapshot, null for balances kept before the ledger
 
     public UserPoints() {
     }
@@ -66,6 +68,14 @@ public class UserPoints {
         this.spentPoints = spentPoints;
     }
 
+    public int getExpiredPoints() {
+        return expiredPoints;
+    }
+
+    public void setExpiredPoints(int expiredPoints) {
+        this.expiredPoints = expiredPoints;
+    }
+
     public LocalDateTime getLastUpdated() {
         return lastUpdated;
     }
@@ -74,6 +84,43 @@ public class UserPoints {
         this.lastUpdated = lastUpdated;
     }
 
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
+
+    // Folds one ledger event into the balance; events must be applied in sequence order
+    public void apply(PointTransaction transaction) {
+        int points = transaction.getPoints();
+        switch (transaction.getTransactionType()) {
+            case PointTransaction.EARNED -> {
+                this.totalPoints += points;
+                this.availablePoints += points;
+            }
+            case PointTransaction.SPENT -> {
+                this.availablePoints -= points;
+                this.spentPoints += points;
+            }
+            case PointTransaction.OPENING -> {
+                int spent = transaction.getOpeningSpent() != null ? transaction.getOpeningSpent() : 0;
+                this.totalPoints += points;
+                this.availablePoints += points - spent;
+                this.spentPoints += spent;
+            }
+            case PointTransaction.EXPIRED -> {
+                this.availablePoints -= points;
+                this.expiredPoints += points;
+            }
+            default -> {
+            }
+        }
+        this.sequence = transaction.getSequence();
+        this.lastUpdated = transaction.getTransactionDate();
+    }
+
     // Helper methods
     public void addPoints(int points) {
         this.totalPoints += points;
@@ -98,7 +145,9 @@ public class UserPoints {
                 ", userId='" + userId + '\'' +
                 ", totalPoints=" + totalPoints +
                 ", availablePoints=" + availablePoints +
+                ", sequence=" + sequence +
                 ", spentPoints=" + spentPoints +
+                ", expiredPoints=" + expiredPoints +
                 ", lastUpdated=" + lastUpdated +
                 '}';
     }
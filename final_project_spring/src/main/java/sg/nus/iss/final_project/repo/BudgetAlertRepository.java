@@ -0,0 +1,104 @@
+package sg.nus.iss.final_project.repo;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import com.mongodb.bulk.BulkWriteError;
+
+import jakarta.annotation.PostConstruct;
+import sg.nus.iss.final_project.model.BudgetAlert;
+
+@Repository
+public class BudgetAlertRepository {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @PostConstruct
+    public void ensureIndexes() {
+        mongoTemplate.indexOps("budgetAlerts").ensureIndex(new Index()
+                .on("status", Sort.Direction.ASC)
+                .on("createdAt", Sort.Direction.ASC)
+                .named("status_created_idx"));
+        mongoTemplate.indexOps("budgetAlerts").ensureIndex(new Index()
+                .on("userId", Sort.Direction.ASC)
+                .on("monthYear", Sort.Direction.ASC)
+                .named("user_month_idx"));
+    }
+
+    /**
+     * Inserts the alerts in one unordered bulk write and returns those that were
+     * new. Alerts whose id already exists were raised before and are dropped.
+     */
+    public List<BudgetAlert> insertAllIfAbsent(List<BudgetAlert> alerts) {
+        if (alerts.isEmpty()) {
+            return alerts;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BudgetAlert.class,
+                "budgetAlerts");
+        bulk.insert(alerts);
+        try {
+            bulk.execute();
+            return alerts;
+        } catch (BulkOperationException e) {
+            Set<Integer> duplicates = new HashSet<>();
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != 11000) {
+                    throw e;
+                }
+                duplicates.add(error.getIndex());
+            }
+            List<BudgetAlert> inserted = new ArrayList<>();
+            for (int i = 0; i < alerts.size(); i++) {
+                if (!duplicates.contains(i)) {
+                    inserted.add(alerts.get(i));
+                }
+            }
+            return inserted;
+        }
+    }
+
+    public void markSent(Collection<String> ids) {
+        Query query = new Query(Criteria.where("id").in(ids));
+        Update update = new Update().set("status", BudgetAlert.SENT).set("sentAt", LocalDateTime.now());
+        mongoTemplate.updateMulti(query, update, BudgetAlert.class, "budgetAlerts");
+    }
+
+    // Counts a failed delivery; alerts that used up their attempts are marked FAILED
+    public void markAttemptFailed(Collection<String> ids, int maxAttempts) {
+        Query query = new Query(Criteria.where("id").in(ids));
+        mongoTemplate.updateMulti(query, new Update().inc("attempts", 1), BudgetAlert.class, "budgetAlerts");
+        Query exhausted = new Query(Criteria.where("id").in(ids).and("attempts").gte(maxAttempts));
+        mongoTemplate.updateMulti(exhausted, new Update().set("status", BudgetAlert.FAILED),
+                BudgetAlert.class, "budgetAlerts");
+    }
+
+    public List<BudgetAlert> findPendingCreatedBefore(LocalDateTime cutoff, int limit) {
+        Query query = new Query(Criteria.where("status").is(BudgetAlert.PENDING)
+                .and("createdAt").lt(cutoff))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt"))
+                .limit(limit);
+        return mongoTemplate.find(query, BudgetAlert.class, "budgetAlerts");
+    }
+
+    public List<BudgetAlert> findByUserIdAndMonthYear(String userId, String monthYear) {
+        Query query = new Query(Criteria.where("userId").is(userId).and("monthYear").is(monthYear))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt"));
+        return mongoTemplate.find(query, BudgetAlert.class, "budgetAlerts");
+    }
+}
@@ -0,0 +1,37 @@
+package sg.nus.iss.final_project.repo;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+
+import sg.nus.iss.final_project.model.BudgetForecast;
+
+@Repository
+public class BudgetForecastRepository {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    public BudgetForecast findById(String id) {
+        return mongoTemplate.findById(id, BudgetForecast.class, "budgetForecasts");
+    }
+
+    public List<BudgetForecast> findByIds(Collection<String> ids) {
+        Query query = new Query(Criteria.where("id").in(ids));
+        return mongoTemplate.find(query, BudgetForecast.class, "budgetForecasts");
+    }
+
+    // Throws OptimisticLockingFailureException if the forecast changed since it was read
+    public BudgetForecast save(BudgetForecast forecast) {
+        return mongoTemplate.save(forecast, "budgetForecasts");
+    }
+
+    public void deleteById(String id) {
+        mongoTemplate.remove(new Query(Criteria.where("id").is(id)), BudgetForecast.class, "budgetForecasts");
+    }
+}
@@ -1,22 +1,56 @@
 package sg.nus.iss.final_project.repo;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
 
+import jakarta.annotation.PostConstruct;
 import sg.nus.iss.final_project.model.Budget;
+import sg.nus.iss.final_project.model.BudgetCategory;
 
 @Repository
 public class BudgetRepository {
 
+    // Stage appended to every spend update: ratio and flag follow totalSpent atomically
+    private static final Document OVERSPEND_STAGE = new Document("$set", new Document("overspendRatio",
+            new Document("$cond", List.of(
+                    new Document("$gt", List.of("$totalBudget", 0)),
+                    new Document("$divide", List.of("$totalSpent", "$totalBudget")),
+                    0)))
+            .append("overspent", new Document("$gt", List.of("$totalSpent", "$totalBudget"))));
+
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    @PostConstruct
+    public void ensureIndexes() {
+        // Also declared on Budget, but auto index creation is off
+        mongoTemplate.indexOps("budgets").ensureIndex(new Index()
+                .on("monthYear", Sort.Direction.ASC)
+                .on("overspent", Sort.Direction.ASC)
+                .on("overspendRatio", Sort.Direction.DESC)
+                .named("month_overspent_idx"));
+    }
+
     public List<Budget> findAll() {
         return mongoTemplate.findAll(Budget.class, "budgets");
     }
@@ -31,6 +65,7 @@ public class BudgetRepository {
     }
 
     public Budget save(Budget budget) {
+        budget.updateOverspend();
         return mongoTemplate.save(budget, "budgets");
     }
 
@@ -41,18 +76,118 @@ public class BudgetRepository {
         return Optional.ofNullable(budget);
     }
 
+    /**
+     * Returns the budget for the user and month, inserting the given default in
+     * the same findAndModify when it does not exist. Fields of an existing
+     * budget are never touched because everything is written with $setOnInsert.
+     */
+    public Budget findOrCreate(Budget defaultBudget) {
+        Query query = userMonthQuery(defaultBudget);
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+        try {
+            return mongoTemplate.findAndModify(query, insertOnly(defaultBudget), options, Budget.class, "budgets");
+        } catch (DuplicateKeyException e) {
+            // A concurrent upsert inserted the document first; it exists now
+            return mongoTemplate.findOne(query, Budget.class, "budgets");
+        }
+    }
+
+    /**
+     * Inserts the budgets whose user and month do not exist yet, in one
+     * unordered bulk write, leaving existing budgets untouched. Returns the
+     * number inserted.
+     */
+    public int bulkInsertIfAbsent(List<Budget> budgets) {
+        if (budgets.isEmpty()) {
+            return 0;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Budget.class, "budgets");
+        for (Budget budget : budgets) {
+            bulk.upsert(userMonthQuery(budget), insertOnly(budget));
+        }
+        try {
+            return bulk.execute().getUpserts().size();
+        } catch (BulkOperationException e) {
+            // Duplicate keys mean a user's own request created the budget concurrently
+            boolean onlyDuplicates = e.getErrors().stream().allMatch(error -> error.getCode() == 11000);
+            if (!onlyDuplicates) {
+                throw e;
+            }
+            return e.getResult().getUpserts().size();
+        }
+    }
+
+    private Query userMonthQuery(Budget budget) {
+        return new Query(Criteria.where("userId").is(budget.getUserId())
+                .and("monthYear").is(budget.getMonthYear()));
+    }
+
+    // Everything is written with $setOnInsert so an existing budget is never touched
+    private Update insertOnly(Budget budget) {
+        budget.updateOverspend();
+        return new Update()
+                .setOnInsert("totalBudget", budget.getTotalBudget())
+                .setOnInsert("totalSpent", budget.getTotalSpent())
+                .setOnInsert("categories", budget.getCategories())
+                .setOnInsert("overspent", budget.isOverspent())
+                .setOnInsert("overspendRatio", budget.getOverspendRatio());
+    }
+
     public List<Budget> findByUserId(String userId) {
         Query query = new Query(Criteria.where("userId").is(userId));
         return mongoTemplate.find(query, Budget.class, "budgets");
     }
 
-    public List<Budget> findByMonthYear(String monthYear) {
-        Query query = new Query(Criteria.where("monthYear").is(monthYear));
+    // monthYear is yyyy-MM, so string order is month order and the range stays on user_month_idx
+    public List<Budget> findByUserIdAndMonthRange(String userId, String fromMonth, String toMonth) {
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .and("monthYear").gte(fromMonth).lte(toMonth))
+                .with(Sort.by(Sort.Direction.ASC, "monthYear"));
         return mongoTemplate.find(query, Budget.class, "budgets");
     }
 
-    public List<Budget> findOverspentBudgets() {
-        Query query = new Query(Criteria.where("totalSpent").gt("totalBudget"));
+    public List<String> findDistinctUserIds() {
+        return mongoTemplate.findDistinct(new Query(), "userId", "budgets", String.class);
+    }
+
+    /**
+     * Writes recomputed categories and totals in one unordered bulk request.
+     * Each update only applies if the budget still has the totalSpent,
+     * totalBudget and categories, by name and budget amount, observed when the
+     * repair was computed, so concurrent expenses and budget edits are never
+     * overwritten. Returns the number of budgets that still matched and were
+     * written.
+     */
+    public int bulkReplaceSpend(List<Budget> repaired, Map<String, Budget> observed) {
+        if (repaired.isEmpty()) {
+            return 0;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Budget.class, "budgets");
+        for (Budget budget : repaired) {
+            budget.updateOverspend();
+            Budget before = observed.get(budget.getId());
+            Criteria guard = Criteria.where("id").is(budget.getId())
+                    .and("totalSpent").is(before.getTotalSpent())
+                    .and("totalBudget").is(before.getTotalBudget());
+            List<BudgetCategory> categories = before.getCategories();
+            // No element past the observed ones, i.e. no category added meanwhile
+            guard.and("categories." + categories.size()).exists(false);
+            for (int i = 0; i < categories.size(); i++) {
+                guard.and("categories." + i + ".category").is(categories.get(i).getCategory())
+                        .and("categories." + i + ".budgetAmount").is(categories.get(i).getBudgetAmount());
+            }
+            Update update = new Update()
+                    .set("categories", budget.getCategories())
+                    .set("totalSpent", budget.getTotalSpent())
+                    .set("overspent", budget.isOverspent())
+                    .set("overspendRatio", budget.getOverspendRatio());
+            bulk.updateOne(new Query(guard), update);
+        }
+        return bulk.execute().getMatchedCount();
+    }
+
+    public List<Budget> findByMonthYear(String monthYear) {
+        Query query = new Query(Criteria.where("monthYear").is(monthYear));
         return mongoTemplate.find(query, Budget.class, "budgets");
     }
 
@@ -62,6 +197,228 @@ public class BudgetRepository {
         return mongoTemplate.find(query, Budget.class, "budgets");
     }
 
+    /**
+     * Adds an expense to an existing category with a single findAndModify.
+     * Returns null when the budget or the category does not exist yet.
+     */
+    public Budget incrementCategoryExpense(String userId, String monthYear, String categoryName, double amount) {
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .and("monthYear").is(monthYear)
+                .and("categories").elemMatch(categoryNameMatches(categoryName)));
+        Document spend = new Document("spentAmount", new Document("$add", List.of("$$c.spentAmount", amount)))
+                .append("transactions", new Document("$add", List.of("$$c.transactions", 1)));
+        return findAndModifyPipeline(query, updateCategory(categoryNameEquals(categoryName), spend, amount));
+    }
+
+    /**
+     * Sets the total budget and scales every category's budget by the same
+     * factor, in one findAndModify so spend written concurrently is kept.
+     * Categories keep their amounts when the old total was zero. Returns null
+     * when the budget does not exist.
+     */
+    public Budget scaleTotalBudget(String userId, String monthYear, double newTotal) {
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .and("monthYear").is(monthYear));
+        Document scaled = new Document("$cond", List.of(
+                new Document("$gt", List.of("$totalBudget", 0)),
+                new Document("$multiply", List.of("$$c.budgetAmount",
+                        new Document("$divide", List.of(newTotal, "$totalBudget")))),
+                "$$c.budgetAmount"));
+        Document scale = new Document("$set", new Document("totalBudget", newTotal)
+                .append("categories", new Document("$map", new Document("input",
+                        new Document("$ifNull", List.of("$categories", List.of())))
+                        .append("as", "c")
+                        .append("in", new Document("$mergeObjects", List.of("$$c",
+                                new Document("budgetAmount", scaled)))))));
+        return findAndModifyPipeline(query, scale);
+    }
+
+    /**
+     * Sets the budget of an existing category, leaving its spend alone.
+     * Returns null when the budget or the category does not exist yet.
+     */
+    public Budget setCategoryBudget(String userId, String monthYear, String categoryName, double budgetAmount) {
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .and("monthYear").is(monthYear)
+                .and("categories").elemMatch(categoryNameMatches(categoryName)));
+        return findAndModifyPipeline(query, updateCategory(categoryNameEquals(categoryName),
+                new Document("budgetAmount", budgetAmount), 0));
+    }
+
+    /**
+     * Appends a category that is not present yet, together with its first
+     * expense, if any.
+     * Returns null when the budget is missing or another writer added the category first.
+     */
+    public Budget pushCategoryWithExpense(String userId, String monthYear, BudgetCategory category) {
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .and("monthYear").is(monthYear)
+                .and("categories").not().elemMatch(categoryNameMatches(category.getCategory())));
+        Document categoryDocument = new Document("category", category.getCategory())
+                .append("key", category.getKey())
+                .append("budgetAmount", category.getBudgetAmount())
+                .append("spentAmount", category.getSpentAmount())
+                .append("transactions", category.getTransactions());
+        Document push = new Document("$set", new Document("categories", new Document("$concatArrays", List.of(
+                new Document("$ifNull", List.of("$categories", List.of())),
+                List.of(new Document("$literal", categoryDocument)))))
+                .append("totalSpent", new Document("$add", List.of("$totalSpent", category.getSpentAmount()))));
+        return findAndModifyPipeline(query, push);
+    }
+
+    /**
+     * Removes an expense when the category can absorb it without going below zero.
+     * Returns null otherwise, leaving clamping to the caller.
+     */
+    public Budget decrementCategoryExpense(String userId, String monthYear, String categoryName, double amount) {
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .and("monthYear").is(monthYear)
+                .and("categories").elemMatch(categoryNameMatches(categoryName)
+                        .and("spentAmount").gte(amount)
+                        .and("transactions").gte(1)));
+        Document spend = new Document("spentAmount", new Document("$subtract", List.of("$$c.spentAmount", amount)))
+                .append("transactions", new Document("$subtract", List.of("$$c.transactions", 1)));
+        Document matches = new Document("$and", List.of(
+                categoryNameEquals(categoryName),
+                new Document("$gte", List.of("$$c.spentAmount", amount)),
+                new Document("$gte", List.of("$$c.transactions", 1))));
+        return findAndModifyPipeline(query, updateCategory(matches, spend, -amount));
+    }
+
+    /**
+     * Compare-and-set of a category's spend, used when an expense removal has to be clamped.
+     * Returns null if the category changed since it was read.
+     */
+    public Budget replaceCategorySpend(String userId, String monthYear, BudgetCategory expected,
+            double newSpentAmount, int newTransactions) {
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .and("monthYear").is(monthYear)
+                .and("categories").elemMatch(Criteria.where("category").is(expected.getCategory())
+                        .and("spentAmount").is(expected.getSpentAmount())
+                        .and("transactions").is(expected.getTransactions())));
+        Document spend = new Document("spentAmount", newSpentAmount)
+                .append("transactions", newTransactions);
+        Document matches = new Document("$and", List.of(
+                new Document("$eq", List.of("$$c.category", new Document("$literal", expected.getCategory()))),
+                new Document("$eq", List.of("$$c.spentAmount", expected.getSpentAmount())),
+                new Document("$eq", List.of("$$c.transactions", expected.getTransactions()))));
+        return findAndModifyPipeline(query,
+                updateCategory(matches, spend, newSpentAmount - expected.getSpentAmount()));
+    }
+
+    public List<Budget> findOverspentBudgets(String monthYear) {
+        Query query = new Query(Criteria.where("monthYear").is(monthYear)
+                .and("overspent").is(true))
+                .with(Sort.by(Sort.Direction.DESC, "overspendRatio"));
+        return mongoTemplate.find(query, Budget.class, "budgets");
+    }
+
+    /**
+     * Recomputes the overspent flag server-side for budgets of the month that
+     * were written before the flag existed. Returns the number of budgets fixed.
+     */
+    public long backfillOverspent(String monthYear) {
+        Query query = new Query(Criteria.where("monthYear").is(monthYear)
+                .and("overspendRatio").exists(false));
+        return mongoTemplate.updateMulti(query, AggregationUpdate.from(List.of(stage(OVERSPEND_STAGE))),
+                "budgets").getModifiedCount();
+    }
+
+    /**
+     * Sets the normalised key on categories of budgets stored before keys
+     * existed. Each key is written by array position and guarded by the
+     * category name, so concurrent expenses are not overwritten. Returns the
+     * number of budgets updated.
+     */
+    public int backfillCategoryKeys(int batchSize) {
+        Query query = new Query(Criteria.where("categories")
+                .elemMatch(Criteria.where("key").exists(false)));
+        query.cursorBatchSize(batchSize);
+        int updated = 0;
+        try (Stream<Budget> budgets = mongoTemplate.stream(query, Budget.class, "budgets")) {
+            Iterator<Budget> iterator = budgets.iterator();
+            BulkOperations bulk = null;
+            int pending = 0;
+            while (iterator.hasNext()) {
+                Budget budget = iterator.next();
+                Criteria guard = Criteria.where("id").is(budget.getId());
+                Update update = new Update();
+                List<BudgetCategory> categories = budget.getCategories();
+                for (int i = 0; i < categories.size(); i++) {
+                    guard.and("categories." + i + ".category").is(categories.get(i).getCategory());
+                    update.set("categories." + i + ".key", categories.get(i).getKey());
+                }
+                if (bulk == null) {
+                    bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Budget.class, "budgets");
+                }
+                bulk.updateOne(new Query(guard), update);
+                if (++pending >= batchSize) {
+                    updated += bulk.execute().getModifiedCount();
+                    bulk = null;
+                    pending = 0;
+                }
+            }
+            if (bulk != null) {
+                updated += bulk.execute().getModifiedCount();
+            }
+        }
+        return updated;
+    }
+
+    // Categories are matched by key; budgets not migrated yet fall back to the name rule of BudgetCategory.normalizeName
+    private Criteria categoryNameMatches(String categoryName) {
+        String key = BudgetCategory.normalizeName(categoryName);
+        return new Criteria().orOperator(
+                Criteria.where("key").is(key),
+                Criteria.where("key").exists(false)
+                        .and("category").regex("^\\s*" + Pattern.quote(key) + "\\s*$", "i"));
+    }
+
+    // The aggregation counterpart of categoryNameMatches, evaluated per element inside $map
+    private Document categoryNameEquals(String categoryName) {
+        Document legacyKey = new Document("$toLower", new Document("$trim", new Document("input", "$$c.category")));
+        return new Document("$eq", List.of(
+                new Document("$ifNull", List.of("$$c.key", legacyKey)),
+                new Document("$literal", BudgetCategory.normalizeName(categoryName))));
+    }
+
+    /**
+     * $set stage that merges the given fields into the first category the
+     * matcher accepts and shifts totalSpent. Legacy budgets can hold several
+     * categories that differ only in case or spacing; only the first of them
+     * takes the expense, as elemMatch in the query counted it once.
+     */
+    private Document updateCategory(Document matches, Document fields, double totalDelta) {
+        Document firstMatch = new Document("$indexOfArray", List.of(
+                new Document("$map", new Document("input", "$categories")
+                        .append("as", "c")
+                        .append("in", matches)),
+                true));
+        Document merged = new Document("$mergeObjects", List.of("$$c", fields));
+        Document atIndex = new Document("$let", new Document("vars",
+                new Document("c", new Document("$arrayElemAt", List.of("$categories", "$$i"))))
+                .append("in", new Document("$cond", List.of(
+                        new Document("$eq", List.of("$$i", "$$first")), merged, "$$c"))));
+        Document mapped = new Document("$let", new Document("vars", new Document("first", firstMatch))
+                .append("in", new Document("$map", new Document("input",
+                        new Document("$range", List.of(0, new Document("$size", "$categories"))))
+                        .append("as", "i")
+                        .append("in", atIndex))));
+        return new Document("$set", new Document("categories", mapped)
+                .append("totalSpent", new Document("$add", List.of("$totalSpent", totalDelta))));
+    }
+
+    // Runs the spend change followed by the overspend stage so the flag moves in the same write
+    private Budget findAndModifyPipeline(Query query, Document spendStage) {
+        AggregationUpdate update = AggregationUpdate.from(List.of(stage(spendStage), stage(OVERSPEND_STAGE)));
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                Budget.class, "budgets");
+    }
+
+    private static AggregationOperation stage(Document stage) {
+        return context -> stage;
+    }
+
     public void delete(Budget budget) {
         mongoTemplate.remove(budget, "budgets");
     }
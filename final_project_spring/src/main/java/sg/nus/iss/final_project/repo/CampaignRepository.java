@@ -0,0 +1,73 @@
+package sg.nus.iss.final_project.repo;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import sg.nus.iss.final_project.model.Campaign;
+
+@Repository
+public class CampaignRepository {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    public Campaign save(Campaign campaign) {
+        return mongoTemplate.save(campaign, "campaigns");
+    }
+
+    public Campaign findById(String id) {
+        return mongoTemplate.findById(id, Campaign.class, "campaigns");
+    }
+
+    public List<Campaign> findAll() {
+        Query query = new Query().with(Sort.by(Sort.Direction.DESC, "createdAt"));
+        return mongoTemplate.find(query, Campaign.class, "campaigns");
+    }
+
+    public List<Campaign> findByStatus(String status) {
+        return mongoTemplate.find(new Query(Criteria.where("status").is(status)), Campaign.class, "campaigns");
+    }
+
+    // Moves the campaign to the new status only from one of the given ones; false if it was in another
+    public boolean transition(String id, Collection<String> from, String to) {
+        Query query = new Query(Criteria.where("_id").is(id).and("status").in(from));
+        Update update = new Update().set("status", to).set("updatedAt", LocalDateTime.now());
+        if (Campaign.RUNNING.equals(to)) {
+            update.set("startedAt", LocalDateTime.now()).unset("lastError");
+        } else if (Campaign.COMPLETED.equals(to)) {
+            update.set("completedAt", LocalDateTime.now());
+        }
+        return mongoTemplate.updateFirst(query, update, Campaign.class, "campaigns").getModifiedCount() > 0;
+    }
+
+    public void recordProgress(String id, String lastUserId, int processed, int credited, int skipped,
+            int failed) {
+        Query query = new Query(Criteria.where("_id").is(id));
+        Update update = new Update()
+                .set("lastUserId", lastUserId)
+                .inc("processed", processed)
+                .inc("credited", credited)
+                .inc("skipped", skipped)
+                .inc("failed", failed)
+                .set("updatedAt", LocalDateTime.now());
+        mongoTemplate.updateFirst(query, update, Campaign.class, "campaigns");
+    }
+
+    public void markFailed(String id, String error) {
+        Query query = new Query(Criteria.where("_id").is(id).and("status").is(Campaign.RUNNING));
+        Update update = new Update()
+                .set("status", Campaign.FAILED)
+                .set("lastError", error)
+                .set("updatedAt", LocalDateTime.now());
+        mongoTemplate.updateFirst(query, update, Campaign.class, "campaigns");
+    }
+}
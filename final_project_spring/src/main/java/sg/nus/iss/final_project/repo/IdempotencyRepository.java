@@ -0,0 +1,107 @@
+package sg.nus.iss.final_project.repo;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import jakarta.annotation.PostConstruct;
+import sg.nus.iss.final_project.model.IdempotencyRecord;
+
+@Repository
+public class IdempotencyRepository {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${idempotency.ttl-hours:24}")
+    private long ttlHours;
+
+    @PostConstruct
+    public void ensureIndexes() {
+        mongoTemplate.indexOps("idempotencyKeys").ensureIndex(new Index()
+                .on("createdAt", Sort.Direction.ASC)
+                .expire(Duration.ofHours(ttlHours))
+                .named("created_ttl_idx"));
+    }
+
+    public IdempotencyRecord findById(String id) {
+        return mongoTemplate.findById(id, IdempotencyRecord.class, "idempotencyKeys");
+    }
+
+    /**
+     * Inserts the record unless one with the same key already exists.
+     * The _id uniqueness makes this safe against concurrent retries.
+     */
+    public boolean insertIfAbsent(IdempotencyRecord record) {
+        try {
+            mongoTemplate.insert(record, "idempotencyKeys");
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    // Progress updates also renew the lease of the attempt making them
+    public void markSaved(String id, String receiptId, LocalDateTime leaseUntil) {
+        Query query = new Query(Criteria.where("id").is(id));
+        mongoTemplate.updateFirst(query, new Update().set("receiptId", receiptId).set("leaseUntil", leaseUntil),
+                IdempotencyRecord.class, "idempotencyKeys");
+    }
+
+    // Records that a follow-up step of the saved receipt is done, e.g. "budgetApplied"
+    public void markStep(String id, String step, LocalDateTime leaseUntil) {
+        Query query = new Query(Criteria.where("id").is(id));
+        mongoTemplate.updateFirst(query, new Update().set(step, true).set("leaseUntil", leaseUntil),
+                IdempotencyRecord.class, "idempotencyKeys");
+    }
+
+    public void markInterrupted(String id) {
+        Query query = new Query(Criteria.where("id").is(id).and("status").is(IdempotencyRecord.IN_PROGRESS));
+        mongoTemplate.updateFirst(query, new Update().set("status", IdempotencyRecord.INTERRUPTED),
+                IdempotencyRecord.class, "idempotencyKeys");
+    }
+
+    /**
+     * Moves an interrupted record, or one still in progress whose lease ran out
+     * before now, to in progress under a new lease and returns it. Returns null
+     * if the record is neither, e.g. because another retry took it over first.
+     */
+    public IdempotencyRecord takeOver(String id, LocalDateTime now, Duration lease) {
+        Criteria stale = new Criteria().orOperator(
+                Criteria.where("status").is(IdempotencyRecord.INTERRUPTED),
+                Criteria.where("status").is(IdempotencyRecord.IN_PROGRESS).and("leaseUntil").lt(now),
+                // Records from before leases were kept
+                Criteria.where("status").is(IdempotencyRecord.IN_PROGRESS).and("leaseUntil").exists(false)
+                        .and("createdAt").lt(now.minus(lease)));
+        Query query = new Query(Criteria.where("id").is(id).andOperator(stale));
+        Update update = new Update().set("status", IdempotencyRecord.IN_PROGRESS).set("leaseUntil", now.plus(lease));
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                IdempotencyRecord.class, "idempotencyKeys");
+    }
+
+    public void markCompleted(String id, String receiptId, int pointsAwarded, boolean pointsPending) {
+        Query query = new Query(Criteria.where("id").is(id));
+        Update update = new Update()
+                .set("status", IdempotencyRecord.COMPLETED)
+                .set("receiptId", receiptId)
+                .set("pointsAwarded", pointsAwarded)
+                .set("pointsPending", pointsPending);
+        mongoTemplate.updateFirst(query, update, IdempotencyRecord.class, "idempotencyKeys");
+    }
+
+    public void deleteById(String id) {
+        Query query = new Query(Criteria.where("id").is(id));
+        mongoTemplate.remove(query, IdempotencyRecord.class, "idempotencyKeys");
+    }
+}
@@ -0,0 +1,71 @@
+package sg.nus.iss.final_project.repo;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Date;
+import java.util.UUID;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Lease-based locks stored in MongoDB so that a job runs once at a time
+ * across all nodes. A lock is a document whose lockedUntil lies in the future;
+ * a node that dies while holding it simply lets the lease expire. Every
+ * acquisition gets its own token, so a second run on the same node is turned
+ * away too, and a run whose lease was taken over cannot extend or release
+ * the new holder's lease.
+ */
+@Repository
+public class JobLockRepository {
+
+    private static final String COLLECTION = "jobLocks";
+
+    // Prefix of this JVM's tokens, so the holder of a lock can be told from the document
+    private final String node = ManagementFactory.getRuntimeMXBean().getName();
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Takes the lock if it is free or expired. Returns the token of this
+     * acquisition, to pass to extend and release, or null when an unexpired
+     * lease is held, by this node or another.
+     */
+    public String tryAcquire(String name, Duration lease) {
+        String token = node + ":" + UUID.randomUUID();
+        Date now = new Date();
+        Query query = new Query(Criteria.where("_id").is(name).and("lockedUntil").lt(now));
+        Update update = new Update()
+                .set("owner", token)
+                .set("lockedAt", now)
+                .set("lockedUntil", new Date(now.getTime() + lease.toMillis()));
+        try {
+            Document lock = mongoTemplate.findAndModify(query, update,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true), Document.class, COLLECTION);
+            return lock != null && token.equals(lock.getString("owner")) ? token : null;
+        } catch (DuplicateKeyException e) {
+            // The lock document exists and is held, so the upsert tried to insert
+            return null;
+        }
+    }
+
+    // Renews the lease of the acquisition holding token; returns false if it was lost in the meantime
+    public boolean extend(String name, String token, Duration lease) {
+        Query query = new Query(Criteria.where("_id").is(name).and("owner").is(token));
+        Update update = new Update().set("lockedUntil", new Date(System.currentTimeMillis() + lease.toMillis()));
+        return mongoTemplate.updateFirst(query, update, COLLECTION).getMatchedCount() > 0;
+    }
+
+    public void release(String name, String token) {
+        Query query = new Query(Criteria.where("_id").is(name).and("owner").is(token));
+        mongoTemplate.updateFirst(query, new Update().set("lockedUntil", new Date()), COLLECTION);
+    }
+}
@@ -0,0 +1,114 @@
+package sg.nus.iss.final_project.repo;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import jakarta.annotation.PostConstruct;
+import sg.nus.iss.final_project.model.LeaderboardScore;
+
+@Repository
+public class LeaderboardRepository {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final String REBUILDS = "leaderboardRebuilds";
+    private static final String REBUILD_ID = "latest";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @PostConstruct
+    public void ensureIndexes() {
+        mongoTemplate.indexOps("leaderboardScores").ensureIndex(new Index()
+                .on("board", Sort.Direction.ASC)
+                .named("board_idx"));
+    }
+
+    // Adds the deltas with $inc, so nodes flushing at the same time do not overwrite each other
+    public void incrementScores(String board, Map<String, Long> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, LeaderboardScore.class,
+                "leaderboardScores");
+        for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+            Query query = new Query(Criteria.where("_id").is(LeaderboardScore.idFor(board, delta.getKey())));
+            Update update = new Update()
+                    .inc("score", delta.getValue())
+                    .setOnInsert("board", board)
+                    .setOnInsert("userId", delta.getKey());
+            bulk.upsert(query, update);
+        }
+        bulk.execute();
+    }
+
+    public void replaceBoard(String board, Map<String, Long> scores) {
+        deleteBoard(board);
+        List<LeaderboardScore> batch = new ArrayList<>(BATCH_SIZE);
+        for (Map.Entry<String, Long> score : scores.entrySet()) {
+            batch.add(new LeaderboardScore(board, score.getKey(), score.getValue()));
+            if (batch.size() == BATCH_SIZE) {
+                mongoTemplate.insert(batch, "leaderboardScores");
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            mongoTemplate.insert(batch, "leaderboardScores");
+        }
+    }
+
+    // The caller must close the stream
+    public Stream<LeaderboardScore> streamBoard(String board) {
+        Query query = new Query(Criteria.where("board").is(board));
+        return mongoTemplate.stream(query, LeaderboardScore.class, "leaderboardScores");
+    }
+
+    public boolean hasBoard(String board) {
+        return mongoTemplate.exists(new Query(Criteria.where("board").is(board)), LeaderboardScore.class,
+                "leaderboardScores");
+    }
+
+    public void deleteBoard(String board) {
+        mongoTemplate.remove(new Query(Criteria.where("board").is(board)), LeaderboardScore.class,
+                "leaderboardScores");
+    }
+
+    // Announces a rebuild counting ledger credits before cutoff, so nodes hold back later increments
+    public void startRebuild(LocalDateTime cutoff) {
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(REBUILD_ID)),
+                new Update().set("cutoff", cutoff).set("done", false), REBUILDS);
+    }
+
+    public void finishRebuild() {
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(REBUILD_ID)), new Update().set("done", true),
+                REBUILDS);
+    }
+
+    public void abortRebuild() {
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(REBUILD_ID)), REBUILDS);
+    }
+
+    // The latest rebuild with its cutoff and done flag, or null
+    public Document findRebuild() {
+        return mongoTemplate.findById(REBUILD_ID, Document.class, REBUILDS);
+    }
+
+    // Weekly boards are named week:yyyy-Www, which sorts by date as a string
+    public long deleteWeeklyBoardsBefore(String board) {
+        Query query = new Query(Criteria.where("board").regex("^week:").lt(board));
+        return mongoTemplate.remove(query, LeaderboardScore.class, "leaderboardScores").getDeletedCount();
+    }
+}
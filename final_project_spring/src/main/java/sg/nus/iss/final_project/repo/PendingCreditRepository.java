@@ -0,0 +1,74 @@
+package sg.nus.iss.final_project.repo;
+
+import java.util.Date;
+import java.util.List;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Credits that could not be appended to the points ledger when they were
+ * earned, e.g. because the user's ledger stayed contended. One document per
+ * user, source and reference, so deferring the same credit twice keeps a
+ * single entry; it is removed once the credit is in the ledger.
+ */
+@Repository
+public class PendingCreditRepository {
+
+    private static final String COLLECTION = "pendingCredits";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @PostConstruct
+    public void ensureIndexes() {
+        mongoTemplate.indexOps(COLLECTION).ensureIndex(new Index()
+                .on("nextAttemptAt", Sort.Direction.ASC)
+                .named("next_attempt_idx"));
+    }
+
+    public void defer(String userId, int points, String source, String referenceId, String description) {
+        Date now = new Date();
+        Update update = new Update()
+                .setOnInsert("userId", userId)
+                .setOnInsert("points", points)
+                .setOnInsert("source", source)
+                .setOnInsert("referenceId", referenceId)
+                .setOnInsert("description", description)
+                .setOnInsert("attempts", 0)
+                .setOnInsert("nextAttemptAt", now)
+                .setOnInsert("createdAt", now);
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(idOf(userId, source, referenceId))), update,
+                COLLECTION);
+    }
+
+    // Credits due for another attempt that have not used up maxAttempts, oldest first
+    public List<Document> findDue(Date now, int maxAttempts, int limit) {
+        Query query = new Query(Criteria.where("nextAttemptAt").lte(now).and("attempts").lt(maxAttempts))
+                .with(Sort.by(Sort.Direction.ASC, "nextAttemptAt"))
+                .limit(limit);
+        return mongoTemplate.find(query, Document.class, COLLECTION);
+    }
+
+    public void recordFailure(String id, Date nextAttemptAt) {
+        Update update = new Update().inc("attempts", 1).set("nextAttemptAt", nextAttemptAt);
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(id)), update, COLLECTION);
+    }
+
+    public void delete(String id) {
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(id)), COLLECTION);
+    }
+
+    private static String idOf(String userId, String source, String referenceId) {
+        return source + ":" + referenceId + ":" + userId;
+    }
+}
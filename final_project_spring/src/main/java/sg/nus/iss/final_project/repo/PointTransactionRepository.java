@@ -1,15 +1,33 @@
 package sg.nus.iss.final_project.repo;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.UnionWithOperation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Repository;
 
+import com.mongodb.bulk.BulkWriteError;
+
+import jakarta.annotation.PostConstruct;
 import sg.nus.iss.final_project.model.PointTransaction;
 
 @Repository
@@ -18,6 +36,218 @@ public class PointTransactionRepository {
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    public static final String CAMPAIGN_SOURCE = "CAMPAIGN";
+
+    // Lots are spread over this many buckets by user so the expiry sweeper can split them into hash ranges
+    public static final int EXPIRY_BUCKETS = 1024;
+
+    public static int expiryBucket(String userId) {
+        return Math.floorMod(userId.hashCode(), EXPIRY_BUCKETS);
+    }
+
+    // One event per sequence number and user; entries from before the ledger have none and are left out
+    @PostConstruct
+    public void ensureIndexes() {
+        mongoTemplate.indexOps("pointTransactions").ensureIndex(new Index()
+                .on("userId", Sort.Direction.ASC)
+                .on("sequence", Sort.Direction.ASC)
+                .unique()
+                .partial(PartialIndexFilter.of(Criteria.where("sequence").exists(true)))
+                .named("user_sequence_unique_idx"));
+        // A campaign credits each user at most once
+        mongoTemplate.indexOps("pointTransactions").ensureIndex(new Index()
+                .on("referenceId", Sort.Direction.ASC)
+                .on("userId", Sort.Direction.ASC)
+                .unique()
+                .partial(PartialIndexFilter.of(Criteria.where("source").is(CAMPAIGN_SOURCE)))
+                .named("campaign_credit_unique_idx"));
+        // Lots in order of expiry, only for events that expire
+        mongoTemplate.indexOps("pointTransactions").ensureIndex(new Index()
+                .on("expiresAt", Sort.Direction.ASC)
+                .on("expiryBucket", Sort.Direction.ASC)
+                .partial(PartialIndexFilter.of(Criteria.where("expiresAt").exists(true)))
+                .named("lot_expiry_idx"));
+    }
+
+    /**
+     * Appends a ledger event. Throws DuplicateKeyException if the user already
+     * has an event with the same sequence number, i.e. another write won.
+     */
+    public PointTransaction append(PointTransaction transaction) {
+        return mongoTemplate.insert(transaction, "pointTransactions");
+    }
+
+    /**
+     * Appends ledger events in one unordered bulk write and returns those that
+     * were rejected as duplicates, either because the sequence number was
+     * taken meanwhile or because the user already has the event.
+     */
+    public List<PointTransaction> appendAll(List<PointTransaction> transactions) {
+        if (transactions.isEmpty()) {
+            return transactions;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PointTransaction.class,
+                "pointTransactions");
+        bulk.insert(transactions);
+        try {
+            bulk.execute();
+            return List.of();
+        } catch (BulkOperationException e) {
+            List<PointTransaction> rejected = new ArrayList<>();
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != 11000) {
+                    throw e;
+                }
+                rejected.add(transactions.get(error.getIndex()));
+            }
+            return rejected;
+        }
+    }
+
+    // Highest sequence number per user, for users with ledger events
+    public Map<String, Long> findLastSequences(Collection<String> userIds) {
+        // Sorting along the (userId, sequence) index lets $first read one entry per user
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("userId").in(userIds).and("sequence").exists(true)),
+                Aggregation.sort(Sort.by(Sort.Direction.DESC, "userId", "sequence")),
+                Aggregation.group("userId").first("sequence").as("sequence"));
+        Map<String, Long> sequences = new HashMap<>();
+        for (Document row : mongoTemplate.aggregate(aggregation, "pointTransactions", Document.class)) {
+            sequences.put(row.getString("_id"), ((Number) row.get("sequence")).longValue());
+        }
+        return sequences;
+    }
+
+    public Set<String> findUserIdsWithReference(Collection<String> userIds, String source, String referenceId) {
+        Query query = new Query(Criteria.where("source").is(source)
+                .and("referenceId").is(referenceId)
+                .and("userId").in(userIds));
+        query.fields().include("userId");
+        Set<String> found = new HashSet<>();
+        for (PointTransaction transaction : mongoTemplate.find(query, PointTransaction.class, "pointTransactions")) {
+            found.add(transaction.getUserId());
+        }
+        return found;
+    }
+
+    public boolean existsByUserIdAndSourceAndReferenceId(String userId, String source, String referenceId) {
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .and("source").is(source)
+                .and("referenceId").is(referenceId));
+        return mongoTemplate.exists(query, PointTransaction.class, "pointTransactions");
+    }
+
+    public List<PointTransaction> findByUserIdAfterSequence(String userId, long sequence) {
+        return mongoTemplate.find(afterSequence(userId, sequence), PointTransaction.class, "pointTransactions");
+    }
+
+    // The whole ledger of a user without loading it into memory; the caller must close the stream
+    public Stream<PointTransaction> streamLedger(String userId) {
+        return mongoTemplate.stream(afterSequence(userId, 0), PointTransaction.class, "pointTransactions");
+    }
+
+    /**
+     * Ledger events after the given sequence number of each user, in sequence
+     * order per user. Users without an entry in the map are not read.
+     */
+    public List<PointTransaction> findByUserIdsAfterSequences(Map<String, Long> sequences) {
+        if (sequences.isEmpty()) {
+            return List.of();
+        }
+        List<Criteria> tails = new ArrayList<>(sequences.size());
+        sequences.forEach((userId, sequence) -> tails.add(Criteria.where("userId").is(userId)
+                .and("sequence").gt(sequence)));
+        Query query = new Query(new Criteria().orOperator(tails))
+                .with(Sort.by(Sort.Direction.ASC, "userId", "sequence"));
+        return mongoTemplate.find(query, PointTransaction.class, "pointTransactions");
+    }
+
+    /**
+     * Lots in the bucket range [bucketFrom, bucketTo) that expire no later than
+     * upTo, in order of (expiresAt, id) after the given position. Only userId,
+     * expiresAt and id are read.
+     */
+    public List<PointTransaction> findExpiringLots(int bucketFrom, int bucketTo, LocalDateTime afterExpiresAt,
+            String afterId, LocalDateTime upTo, int limit) {
+        Criteria criteria = Criteria.where("expiryBucket").gte(bucketFrom).lt(bucketTo);
+        if (afterExpiresAt == null) {
+            criteria.and("expiresAt").lte(upTo);
+        } else {
+            criteria.and("expiresAt").gte(afterExpiresAt).lte(upTo)
+                    .orOperator(Criteria.where("expiresAt").gt(afterExpiresAt),
+                            Criteria.where("id").gt(afterId));
+        }
+        Query query = new Query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "expiresAt", "id"))
+                .limit(limit);
+        query.fields().include("userId").include("expiresAt");
+        return mongoTemplate.find(query, PointTransaction.class, "pointTransactions");
+    }
+
+    // Points per user in lots that expired at or before asOf, whether or not they were spent
+    public Map<String, Long> sumExpiredLots(Collection<String> userIds, LocalDateTime asOf) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                // Lots always have a sequence; matching on it lets the (userId, sequence) index serve the query
+                Aggregation.match(Criteria.where("userId").in(userIds).and("sequence").exists(true)
+                        .and("expiresAt").lte(asOf)),
+                Aggregation.group("userId").sum("points").as("points"));
+        Map<String, Long> totals = new HashMap<>();
+        for (Document row : mongoTemplate.aggregate(aggregation, "pointTransactions", Document.class)) {
+            totals.put(row.getString("_id"), ((Number) row.get("points")).longValue());
+        }
+        return totals;
+    }
+
+    /**
+     * Streams, once each, the ids of users with ledger events or a points
+     * snapshot from a single aggregation cursor; the snapshot ids are merged in
+     * with $unionWith and deduplicated by the server, spilling to disk, so the
+     * caller never holds every user. The caller must close the stream.
+     */
+    public Stream<String> streamReplayUserIds(int batchSize) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("sequence").exists(true).and("userId").ne(null)),
+                Aggregation.project("userId"),
+                UnionWithOperation.unionWith("userPoints").pipeline(
+                        Aggregation.match(Criteria.where("userId").ne(null)),
+                        Aggregation.project("userId")),
+                Aggregation.group("userId"))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).cursorBatchSize(batchSize).build());
+        return mongoTemplate.aggregateStream(aggregation, "pointTransactions", Document.class)
+                .map(row -> row.getString("_id"));
+    }
+
+    // Points earned per user, in total or since the given time
+    // Points earned per user in [since, before), null bounds being open; refunds are not earnings
+    public Map<String, Long> sumEarnedByUser(LocalDateTime since, LocalDateTime before) {
+        Criteria criteria = Criteria.where("transactionType").is(PointTransaction.EARNED)
+                .and("source").ne(PointTransaction.REWARD_REFUND);
+        if (since != null || before != null) {
+            Criteria date = criteria.and("transactionDate");
+            if (since != null) {
+                date.gte(since);
+            }
+            if (before != null) {
+                date.lt(before);
+            }
+        }
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(criteria),
+                Aggregation.group("userId").sum("points").as("points"));
+        Map<String, Long> totals = new HashMap<>();
+        for (Document row : mongoTemplate.aggregate(aggregation, "pointTransactions", Document.class)) {
+            if (row.getString("_id") != null) {
+                totals.put(row.getString("_id"), ((Number) row.get("points")).longValue());
+            }
+        }
+        return totals;
+    }
+
+    private Query afterSequence(String userId, long sequence) {
+        return new Query(Criteria.where("userId").is(userId).and("sequence").gt(sequence))
+                .with(Sort.by(Sort.Direction.ASC, "sequence"));
+    }
+
     public List<PointTransaction> findAll() {
         return mongoTemplate.findAll(PointTransaction.class, "pointTransactions");
     }
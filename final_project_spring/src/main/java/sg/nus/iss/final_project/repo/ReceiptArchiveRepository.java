@@ -0,0 +1,123 @@
+package sg.nus.iss.final_project.repo;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+
+import jakarta.annotation.PostConstruct;
+import sg.nus.iss.final_project.model.ReceiptArchive;
+
+@Repository
+public class ReceiptArchiveRepository {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // Finds the month an archived receipt is in
+    @PostConstruct
+    public void ensureIndexes() {
+        mongoTemplate.indexOps("receiptArchives").ensureIndex(new Index()
+                .on("receiptIds", Sort.Direction.ASC)
+                .named("receiptIds_idx"));
+    }
+
+    public ReceiptArchive findById(String id) {
+        return mongoTemplate.findById(id, ReceiptArchive.class, "receiptArchives");
+    }
+
+    // The month holding an archived receipt, or null
+    public ReceiptArchive findByReceiptId(String receiptId) {
+        return mongoTemplate.findOne(new Query(Criteria.where("receiptIds").is(receiptId)), ReceiptArchive.class,
+                "receiptArchives");
+    }
+
+    /**
+     * Stores the catalog entry if the stored one still points at
+     * expectedLocation, or if there is none when expectedLocation is null.
+     * Returns false when another writer replaced or created the entry first.
+     */
+    public boolean saveIfLocation(ReceiptArchive archive, String expectedLocation) {
+        if (expectedLocation == null) {
+            try {
+                mongoTemplate.insert(archive, "receiptArchives");
+                return true;
+            } catch (DuplicateKeyException e) {
+                return false;
+            }
+        }
+        Query query = new Query(Criteria.where("_id").is(archive.getId()).and("location").is(expectedLocation));
+        return mongoTemplate.findAndReplace(query, archive, "receiptArchives") != null;
+    }
+
+    public boolean deleteIfLocation(String id, String expectedLocation) {
+        Query query = new Query(Criteria.where("_id").is(id).and("location").is(expectedLocation));
+        return mongoTemplate.remove(query, ReceiptArchive.class, "receiptArchives").getDeletedCount() > 0;
+    }
+
+    public List<ReceiptArchive> findByUserId(String userId) {
+        Query query = new Query(Criteria.where("userId").is(userId))
+                .with(Sort.by(Sort.Direction.ASC, "monthYear"));
+        return mongoTemplate.find(query, ReceiptArchive.class, "receiptArchives");
+    }
+
+    // Receipts in the user's archived months, from the catalog alone
+    public long countReceiptsByUserId(String userId) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("userId").is(userId)),
+                Aggregation.group().sum("receiptCount").as("receipts"));
+        Document row = mongoTemplate.aggregate(aggregation, "receiptArchives", Document.class).getUniqueMappedResult();
+        return row != null ? ((Number) row.get("receipts")).longValue() : 0;
+    }
+
+    public List<ReceiptArchive> findByUserIdAndMonthRange(String userId, String fromMonth, String toMonth) {
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .and("monthYear").gte(fromMonth).lte(toMonth))
+                .with(Sort.by(Sort.Direction.ASC, "monthYear"));
+        return mongoTemplate.find(query, ReceiptArchive.class, "receiptArchives");
+    }
+
+    /**
+     * Streams the distinct ids of users with an archived month in
+     * [fromMonth, toMonth], in ascending order and starting after afterUserId
+     * when it is set. Null bounds are open. The caller must close the stream.
+     */
+    public Stream<String> streamUserIds(String fromMonth, String toMonth, String afterUserId, int batchSize) {
+        Criteria criteria = Criteria.where("userId").ne(null);
+        if (fromMonth != null || toMonth != null) {
+            Criteria month = criteria.and("monthYear");
+            if (fromMonth != null) {
+                month.gte(fromMonth);
+            }
+            if (toMonth != null) {
+                month.lte(toMonth);
+            }
+        }
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(criteria),
+                Aggregation.group("userId"),
+                Aggregation.match(afterUserId != null ? Criteria.where("_id").gt(afterUserId) : new Criteria()),
+                Aggregation.sort(Sort.Direction.ASC, "_id"))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).cursorBatchSize(batchSize).build());
+        return mongoTemplate.aggregateStream(aggregation, "receiptArchives", Document.class)
+                .map(row -> row.getString("_id"));
+    }
+
+    // Entries still on node-local disk, or written before the catalog listed receipt ids
+    public List<ReceiptArchive> findNeedingMigration(String gridFsPrefix) {
+        Query query = new Query(new Criteria().orOperator(
+                Criteria.where("location").not().regex("^" + gridFsPrefix),
+                Criteria.where("receiptIds").exists(false)));
+        return mongoTemplate.find(query, ReceiptArchive.class, "receiptArchives");
+    }
+}
@@ -1,48 +1,164 @@
 package sg.nus.iss.final_project.repo;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
+import org.bson.Document;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.CollectionOptions.TimeSeriesOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
 import org.springframework.stereotype.Repository;
 
+import com.mongodb.client.model.IndexOptions;
+
+import jakarta.annotation.PostConstruct;
+import sg.nus.iss.final_project.model.CampaignSegment;
 import sg.nus.iss.final_project.model.Receipt;
 
 @Repository
 public class ReceiptRepository {
+    private static final Logger logger = LoggerFactory.getLogger(ReceiptRepository.class);
+
+    public static final String STANDARD_COLLECTION = "receipts";
+    public static final String TIME_SERIES_COLLECTION = "receiptsTimeSeries";
+    // receiptId -> (userId, dateOfPurchase), since a time-series collection has no _id index
+    public static final String LOCATION_COLLECTION = "receiptLocations";
 
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    // "standard" keeps receipts in the regular collection, "timeseries" uses a
+    // time-series collection keyed on dateOfPurchase with userId as the metaField
+    @Value("${receipts.storage-mode:standard}")
+    private String storageMode;
+
+    @PostConstruct
+    public void initStorage() {
+        if (isTimeSeriesMode()) {
+            ensureTimeSeriesCollection();
+        } else {
+            ensureTextIndex();
+        }
+        logger.info("Receipts are stored in collection: {}", collectionName());
+    }
+
+    public boolean isTimeSeriesMode() {
+        return "timeseries".equalsIgnoreCase(storageMode);
+    }
+
+    public String collectionName() {
+        return isTimeSeriesMode() ? TIME_SERIES_COLLECTION : STANDARD_COLLECTION;
+    }
+
+    // userId is an equality prefix so each search only walks the caller's index entries
+    private void ensureTextIndex() {
+        mongoTemplate.getCollection(STANDARD_COLLECTION).createIndex(
+                new Document("userId", 1).append("merchantName", "text").append("items", "text"),
+                new IndexOptions().name("user_receipt_text_idx")
+                        .weights(new Document("merchantName", 3).append("items", 1))
+                        .defaultLanguage("english"));
+    }
+
+    public void ensureTimeSeriesCollection() {
+        if (!mongoTemplate.collectionExists(TIME_SERIES_COLLECTION)) {
+            mongoTemplate.createCollection(TIME_SERIES_COLLECTION, CollectionOptions.empty()
+                    .timeSeries(TimeSeriesOptions.timeSeries("dateOfPurchase")
+                            .metaField("userId")
+                            .granularity(Granularity.HOURS)));
+            logger.info("Created time-series collection: {}", TIME_SERIES_COLLECTION);
+        }
+        mongoTemplate.indexOps(TIME_SERIES_COLLECTION).ensureIndex(new Index()
+                .on("userId", Sort.Direction.ASC)
+                .on("dateOfPurchase", Sort.Direction.DESC)
+                .named("user_date_idx"));
+    }
+
     public List<Receipt> findAll() {
-        return mongoTemplate.findAll(Receipt.class, "receipts");
+        return mongoTemplate.findAll(Receipt.class, collectionName());
     }
 
     public Receipt findById(String id) {
-        return mongoTemplate.findById(id, Receipt.class, "receipts");
+        Query query = idQuery(id);
+        return query != null ? mongoTemplate.findOne(query, Receipt.class, collectionName()) : null;
     }
 
     public java.util.Optional<Receipt> findByIdOptional(String id) {
-        Receipt receipt = mongoTemplate.findById(id, Receipt.class, "receipts");
-        return java.util.Optional.ofNullable(receipt);
+        return java.util.Optional.ofNullable(findById(id));
     }
 
     public Receipt save(Receipt receipt) {
-        return mongoTemplate.save(receipt);
+        Receipt saved = mongoTemplate.save(receipt, collectionName());
+        if (isTimeSeriesMode()) {
+            mongoTemplate.upsert(new Query(Criteria.where("_id").is(saved.getId())),
+                    new Update().set("userId", saved.getUserId()).set("dateOfPurchase", saved.getDateOfPurchase()),
+                    LOCATION_COLLECTION);
+        }
+        return saved;
+    }
+
+    /**
+     * Query for a single receipt. In time-series mode it names the receipt's
+     * user and purchase time from receiptLocations, so it is served by
+     * user_date_idx instead of scanning the collection; null means the
+     * receipt is unknown.
+     */
+    private Query idQuery(String id) {
+        if (!isTimeSeriesMode()) {
+            return new Query(Criteria.where("id").is(id));
+        }
+        Document location = mongoTemplate.findById(id, Document.class, LOCATION_COLLECTION);
+        if (location == null) {
+            return null;
+        }
+        return new Query(Criteria.where("userId").is(location.getString("userId"))
+                .and("dateOfPurchase").is(location.getDate("dateOfPurchase"))
+                .and("id").is(id));
+    }
+
+    /**
+     * Records the location of every receipt in the time-series collection
+     * that has none yet, in one server-side pass. Returns the number of
+     * locations afterwards.
+     */
+    public long backfillLocations() {
+        List<Document> pipeline = List.of(
+                new Document("$project", new Document("userId", 1).append("dateOfPurchase", 1)),
+                new Document("$merge", new Document("into", LOCATION_COLLECTION)
+                        .append("on", "_id")
+                        .append("whenMatched", "keepExisting")
+                        .append("whenNotMatched", "insert")));
+        mongoTemplate.getCollection(TIME_SERIES_COLLECTION).aggregate(pipeline).allowDiskUse(true).toCollection();
+        return mongoTemplate.getCollection(LOCATION_COLLECTION).countDocuments();
     }
 
     public List<Receipt> findByUserId(String userId) {
         Query query = new Query(Criteria.where("userId").is(userId));
-        return mongoTemplate.find(query, Receipt.class, "receipts");
+        return mongoTemplate.find(query, Receipt.class, collectionName());
     }
 
     public List<Receipt> findReceiptsByUserId(String userId) {
         System.out.println("Executing findReceiptsByUserId with userId: " + userId);
         Query query = new Query(Criteria.where("userId").is(userId));
-        List<Receipt> results = mongoTemplate.find(query, Receipt.class, "receipts");
+        List<Receipt> results = mongoTemplate.find(query, Receipt.class, collectionName());
         System.out.println("Found " + results.size() + " receipts");
         return results;
     }
@@ -50,29 +166,148 @@ public class ReceiptRepository {
     public List<Receipt> findRecentByUserId(String userId) {
         Query query = new Query(Criteria.where("userId").is(userId))
                 .with(Sort.by(Sort.Direction.DESC, "dateOfPurchase"));
-        return mongoTemplate.find(query, Receipt.class, "receipts");
+        return mongoTemplate.find(query, Receipt.class, collectionName());
+    }
+
+    public List<Receipt> findByUserIdAndDateRange(String userId, LocalDateTime from, LocalDateTime to) {
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .and("dateOfPurchase").gte(from).lt(to));
+        return mongoTemplate.find(query, Receipt.class, collectionName());
+    }
+
+    /**
+     * Ranked full-text search over merchant name and line items. Time-series
+     * collections cannot hold text indexes, so that mode falls back to a
+     * case-insensitive match within the user's receipts, newest first.
+     */
+    public List<Receipt> searchByUserId(String userId, String terms, int page, int size) {
+        return mongoTemplate.find(searchQuery(userId, terms).with(PageRequest.of(page, size)),
+                Receipt.class, collectionName());
+    }
+
+    public long countSearchByUserId(String userId, String terms) {
+        return mongoTemplate.count(searchQuery(userId, terms), Receipt.class, collectionName());
+    }
+
+    private Query searchQuery(String userId, String terms) {
+        if (isTimeSeriesMode()) {
+            String pattern = Pattern.quote(terms.trim());
+            return new Query(Criteria.where("userId").is(userId)
+                    .orOperator(Criteria.where("merchantName").regex(pattern, "i"),
+                            Criteria.where("items").regex(pattern, "i")))
+                    .with(Sort.by(Sort.Direction.DESC, "dateOfPurchase"));
+        }
+        return TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(terms))
+                .sortByScore()
+                .addCriteria(Criteria.where("userId").is(userId));
+    }
+
+    public List<Receipt> findByUserIdAndDateBefore(String userId, LocalDateTime cutoff) {
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .and("dateOfPurchase").lt(cutoff));
+        return mongoTemplate.find(query, Receipt.class, collectionName());
+    }
+
+    // userId keeps the delete on user_date_idx in time-series mode
+    public void deleteByIds(String userId, List<String> ids) {
+        Query query = new Query(Criteria.where("userId").is(userId).and("id").in(ids));
+        mongoTemplate.remove(query, Receipt.class, collectionName());
+        if (isTimeSeriesMode()) {
+            mongoTemplate.remove(new Query(Criteria.where("_id").in(ids)), LOCATION_COLLECTION);
+        }
+    }
+
+    public List<String> findDistinctUserIds() {
+        return mongoTemplate.findDistinct(new Query(), "userId", collectionName(), String.class);
+    }
+
+    /**
+     * Sums the user's receipts per month and case-insensitive category on the
+     * server. Each result has _id {month, category}, name, spent, count and the
+     * latest scanDate. Months are computed in the given time zone so they line
+     * up with DateUtil.toMonthYear.
+     */
+    public List<Document> aggregateMonthlyCategorySpend(String userId, String timezone) {
+        Document month = new Document("$dateToString", new Document("format", "%Y-%m")
+                .append("date", new Document("$ifNull", List.of("$dateOfPurchase", "$scanDate")))
+                .append("timezone", timezone));
+        Document category = new Document("$ifNull", List.of("$category", "Others"));
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("userId", userId)
+                        .append("totalExpense", new Document("$gt", 0))),
+                new Document("$group", new Document("_id", new Document("month", month)
+                        .append("category", new Document("$toLower",
+                                new Document("$trim", new Document("input", category)))))
+                        .append("name", new Document("$first", category))
+                        .append("spent", new Document("$sum", "$totalExpense"))
+                        .append("count", new Document("$sum", 1))
+                        .append("lastScan", new Document("$max", "$scanDate"))));
+        return mongoTemplate.getCollection(collectionName())
+                .aggregate(pipeline)
+                .into(new ArrayList<>());
+    }
+
+    /**
+     * Streams the distinct ids of users with a receipt in the segment, in
+     * ascending order and starting after afterUserId when it is set. The
+     * caller must close the stream.
+     */
+    public Stream<String> streamSegmentUserIds(CampaignSegment segment, String afterUserId, int batchSize) {
+        Criteria criteria = Criteria.where("userId").ne(null);
+        if (segment.getMerchantName() != null && !segment.getMerchantName().isBlank()) {
+            criteria.and("merchantName").regex("^" + Pattern.quote(segment.getMerchantName().trim()) + "$", "i");
+        }
+        if (segment.getCategory() != null && !segment.getCategory().isBlank()) {
+            criteria.and("category").is(segment.getCategory());
+        }
+        if (segment.getFrom() != null || segment.getTo() != null) {
+            Criteria purchased = criteria.and("dateOfPurchase");
+            if (segment.getFrom() != null) {
+                purchased.gte(segment.getFrom().atStartOfDay());
+            }
+            if (segment.getTo() != null) {
+                purchased.lt(segment.getTo().plusDays(1).atStartOfDay());
+            }
+        }
+        if (segment.getMinTotal() != null) {
+            criteria.and("totalExpense").gte(segment.getMinTotal());
+        }
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(criteria),
+                Aggregation.group("userId"),
+                Aggregation.match(afterUserId != null ? Criteria.where("_id").gt(afterUserId) : new Criteria()),
+                Aggregation.sort(Sort.Direction.ASC, "_id"))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).cursorBatchSize(batchSize).build());
+        return mongoTemplate.aggregateStream(aggregation, collectionName(), Document.class)
+                .map(row -> row.getString("_id"));
     }
 
     public long countByUserId(String userId) {
         Query query = new Query(Criteria.where("userId").is(userId));
-        return mongoTemplate.count(query, Receipt.class, "receipts");
+        return mongoTemplate.count(query, Receipt.class, collectionName());
     }
 
     public long count() {
-        return mongoTemplate.count(new Query(), Receipt.class, "receipts");
+        return mongoTemplate.count(new Query(), Receipt.class, collectionName());
     }
 
     public void delete(Receipt receipt) {
-        mongoTemplate.remove(receipt);
+        deleteById(receipt.getId());
     }
 
     public void deleteById(String id) {
-        Query query = new Query(Criteria.where("id").is(id));
-        mongoTemplate.remove(query, Receipt.class, "receipts");
+        Query query = idQuery(id);
+        if (query != null) {
+            mongoTemplate.remove(query, Receipt.class, collectionName());
+        }
+        if (isTimeSeriesMode()) {
+            mongoTemplate.remove(new Query(Criteria.where("_id").is(id)), LOCATION_COLLECTION);
+        }
     }
 
     public boolean existsById(String id) {
-        Query query = new Query(Criteria.where("id").is(id));
-        return mongoTemplate.exists(query, Receipt.class, "receipts");
+        Query query = idQuery(id);
+        return query != null && mongoTemplate.exists(query, Receipt.class, collectionName());
     }
 }
\ No newline at end of file
@@ -0,0 +1,118 @@
+package sg.nus.iss.final_project.repo;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import com.mongodb.bulk.BulkWriteError;
+
+import jakarta.annotation.PostConstruct;
+import sg.nus.iss.final_project.model.RedemptionCode;
+
+@Repository
+public class RedemptionCodeRepository {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @PostConstruct
+    public void ensureIndexes() {
+        // A code exists once across all rewards, whether generated or imported
+        mongoTemplate.indexOps("redemptionCodes").ensureIndex(new Index()
+                .on("code", Sort.Direction.ASC)
+                .unique()
+                .named("code_unique_idx"));
+        mongoTemplate.indexOps("redemptionCodes").ensureIndex(new Index()
+                .on("rewardId", Sort.Direction.ASC)
+                .on("status", Sort.Direction.ASC)
+                .named("reward_status_idx"));
+    }
+
+    /**
+     * Marks one available code of the reward as claimed by the user and
+     * returns it, or null if the reward's pool is empty.
+     */
+    public RedemptionCode claim(String rewardId, String userId) {
+        Query query = new Query(Criteria.where("rewardId").is(rewardId).and("status").is(RedemptionCode.AVAILABLE));
+        Update update = new Update()
+                .set("status", RedemptionCode.CLAIMED)
+                .set("userId", userId)
+                .set("claimedAt", LocalDateTime.now());
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                RedemptionCode.class, "redemptionCodes");
+    }
+
+    // Puts a claimed code back into the pool when its redemption did not go through
+    public void release(String id) {
+        Query query = new Query(Criteria.where("_id").is(id).and("status").is(RedemptionCode.CLAIMED));
+        Update update = new Update()
+                .set("status", RedemptionCode.AVAILABLE)
+                .unset("userId")
+                .unset("claimedAt");
+        mongoTemplate.updateFirst(query, update, RedemptionCode.class, "redemptionCodes");
+    }
+
+    /**
+     * Inserts the codes with one unordered bulk write and returns how many
+     * were rejected because the code already exists.
+     */
+    public int insertAll(List<RedemptionCode> codes) {
+        if (codes.isEmpty()) {
+            return 0;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RedemptionCode.class,
+                "redemptionCodes");
+        bulk.insert(codes);
+        try {
+            bulk.execute();
+            return 0;
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != 11000) {
+                    throw e;
+                }
+            }
+            return e.getErrors().size();
+        }
+    }
+
+    // Codes per status of one reward
+    public Map<String, Long> countByStatus(String rewardId) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("rewardId").is(rewardId)),
+                Aggregation.group("status").count().as("count"));
+        Map<String, Long> counts = new HashMap<>();
+        for (Document row : mongoTemplate.aggregate(aggregation, "redemptionCodes", Document.class)) {
+            counts.put(row.getString("_id"), ((Number) row.get("count")).longValue());
+        }
+        return counts;
+    }
+
+    // Available codes per reward; rewards with an empty pool are missing
+    public Map<String, Long> countAvailableByReward(Collection<String> rewardIds) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("rewardId").in(rewardIds).and("status").is(RedemptionCode.AVAILABLE)),
+                Aggregation.group("rewardId").count().as("count"));
+        Map<String, Long> counts = new HashMap<>();
+        for (Document row : mongoTemplate.aggregate(aggregation, "redemptionCodes", Document.class)) {
+            counts.put(row.getString("_id"), ((Number) row.get("count")).longValue());
+        }
+        return counts;
+    }
+}
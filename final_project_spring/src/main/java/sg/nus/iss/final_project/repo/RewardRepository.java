@@ -3,9 +3,11 @@ package sg.nus.iss.final_project.repo;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
 
 import sg.nus.iss.final_project.model.Reward;
@@ -62,6 +64,104 @@ public class RewardRepository {
         return mongoTemplate.find(query, Reward.class, "rewards");
     }
 
+    /**
+     * Takes one unit if the reward is available and has stock left, in a single
+     * conditional update. Returns the reward after the decrement, or null if
+     * there was nothing to take.
+     */
+    public Reward takeUnit(String rewardId) {
+        Query query = new Query(Criteria.where("_id").is(rewardId)
+                .and("isAvailable").is(true)
+                .and("quantity").gt(0));
+        return mongoTemplate.findAndModify(query, new Update().inc("quantity", -1),
+                FindAndModifyOptions.options().returnNew(true), Reward.class, "rewards");
+    }
+
+    public void returnUnit(String rewardId) {
+        addUnits(rewardId, 1);
+    }
+
+    public void addUnits(String rewardId, int units) {
+        Query query = new Query(Criteria.where("_id").is(rewardId));
+        mongoTemplate.updateFirst(query, new Update().inc("quantity", units), Reward.class, "rewards");
+    }
+
+    /**
+     * Sets the fields an admin edits, leaving the stock fields alone so units
+     * taken concurrently are not written back. Making the reward available
+     * clears the sold-out mark, since the admin's choice then stands.
+     */
+    public Reward updateDetails(String rewardId, Reward details) {
+        Query query = new Query(Criteria.where("_id").is(rewardId));
+        Update update = new Update()
+                .set("name", details.getName())
+                .set("description", details.getDescription())
+                .set("pointsCost", details.getPointsCost())
+                .set("imageUrl", details.getImageUrl())
+                .set("category", details.getCategory())
+                .set("isAvailable", details.isAvailable())
+                .set("merchantName", details.getMerchantName())
+                .set("termsConditions", details.getTermsConditions())
+                .set("expiryDate", details.getExpiryDate());
+        if (details.isAvailable()) {
+            update.set("soldOut", false);
+        }
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                Reward.class, "rewards");
+    }
+
+    // With requireEmpty the reward is only marked if no unit was returned in the meantime; true if it was marked
+    public boolean markSoldOut(String rewardId, boolean requireEmpty) {
+        Criteria criteria = Criteria.where("_id").is(rewardId).and("isAvailable").is(true);
+        if (requireEmpty) {
+            criteria.and("quantity").lte(0);
+        }
+        Update update = new Update().set("isAvailable", false).set("soldOut", true);
+        return mongoTemplate.updateFirst(new Query(criteria), update, Reward.class, "rewards").getModifiedCount() > 0;
+    }
+
+    // Makes a reward available again only if it was disabled by selling out, not by an admin; true if it was
+    public boolean clearSoldOut(String rewardId) {
+        Query query = new Query(Criteria.where("_id").is(rewardId).and("soldOut").is(true));
+        Update update = new Update().set("isAvailable", true).set("soldOut", false);
+        return mongoTemplate.updateFirst(query, update, Reward.class, "rewards").getModifiedCount() > 0;
+    }
+
+    // Targeted, so it cannot overwrite stock taken concurrently the way a full save could
+    public void markPartnerCodes(String rewardId) {
+        Query query = new Query(Criteria.where("_id").is(rewardId));
+        mongoTemplate.updateFirst(query, new Update().set("partnerCodes", true), Reward.class, "rewards");
+    }
+
+    // Sets the quantity to zero in one findAndModify and returns the units that were left
+    public int takeAllUnits(String rewardId) {
+        Query query = new Query(Criteria.where("_id").is(rewardId));
+        Reward before = mongoTemplate.findAndModify(query, new Update().set("quantity", 0),
+                FindAndModifyOptions.options().returnNew(false), Reward.class, "rewards");
+        return before != null ? Math.max(0, before.getQuantity()) : 0;
+    }
+
+    /**
+     * Sets the stripe count and quantity without touching availability, and
+     * returns the reward as it was before, or null if it does not exist.
+     */
+    public Reward setStockStripes(String rewardId, int stripes, int quantity) {
+        Query query = new Query(Criteria.where("_id").is(rewardId));
+        Update update = new Update().set("stockStripes", stripes).set("quantity", quantity);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(false),
+                Reward.class, "rewards");
+    }
+
+    public void updateQuantity(String rewardId, int quantity) {
+        Query query = new Query(Criteria.where("_id").is(rewardId));
+        mongoTemplate.updateFirst(query, new Update().set("quantity", quantity), Reward.class, "rewards");
+    }
+
+    public List<Reward> findStriped() {
+        Query query = new Query(Criteria.where("stockStripes").gt(1));
+        return mongoTemplate.find(query, Reward.class, "rewards");
+    }
+
     public void delete(Reward reward) {
         mongoTemplate.remove(reward);
     }
@@ -0,0 +1,108 @@
+package sg.nus.iss.final_project.repo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import jakarta.annotation.PostConstruct;
+import sg.nus.iss.final_project.model.RewardStock;
+
+@Repository
+public class RewardStockRepository {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @PostConstruct
+    public void ensureIndexes() {
+        mongoTemplate.indexOps("rewardStock").ensureIndex(new Index()
+                .on("rewardId", Sort.Direction.ASC)
+                .named("rewardId_idx"));
+    }
+
+    // Takes one unit from the stripe if it has any left; false means the stripe is empty
+    public boolean decrement(String rewardId, int stripe) {
+        Query query = new Query(Criteria.where("_id").is(RewardStock.idFor(rewardId, stripe))
+                .and("quantity").gt(0));
+        return mongoTemplate.updateFirst(query, new Update().inc("quantity", -1), RewardStock.class,
+                "rewardStock").getModifiedCount() > 0;
+    }
+
+    public void increment(String rewardId, int stripe) {
+        increment(rewardId, stripe, 1);
+    }
+
+    public void increment(String rewardId, int stripe, int units) {
+        Query query = new Query(Criteria.where("_id").is(RewardStock.idFor(rewardId, stripe)));
+        mongoTemplate.updateFirst(query, new Update().inc("quantity", units), RewardStock.class, "rewardStock");
+    }
+
+    // Adds units to the stripe, creating it if it does not exist yet
+    public void add(String rewardId, int stripe, int units) {
+        Query query = new Query(Criteria.where("_id").is(RewardStock.idFor(rewardId, stripe)));
+        Update update = new Update().inc("quantity", units)
+                .setOnInsert("rewardId", rewardId)
+                .setOnInsert("stripe", stripe);
+        mongoTemplate.upsert(query, update, RewardStock.class, "rewardStock");
+    }
+
+    // Empties every stripe of the reward, each in one findAndModify, and returns the units that were left
+    public int takeAll(String rewardId) {
+        int taken = 0;
+        for (RewardStock stock : findByRewardId(rewardId)) {
+            Query query = new Query(Criteria.where("_id").is(stock.getId()).and("quantity").gt(0));
+            RewardStock before = mongoTemplate.findAndModify(query, new Update().set("quantity", 0),
+                    FindAndModifyOptions.options().returnNew(false), RewardStock.class, "rewardStock");
+            if (before != null) {
+                taken += before.getQuantity();
+            }
+        }
+        return taken;
+    }
+
+    // Removes the reward's empty stripes from the given index on; stripes a unit was returned to stay
+    public void removeEmptyStripes(String rewardId, int fromStripe) {
+        Query query = new Query(Criteria.where("rewardId").is(rewardId)
+                .and("stripe").gte(fromStripe)
+                .and("quantity").lte(0));
+        mongoTemplate.remove(query, RewardStock.class, "rewardStock");
+    }
+
+    public List<RewardStock> findByRewardId(String rewardId) {
+        Query query = new Query(Criteria.where("rewardId").is(rewardId));
+        return mongoTemplate.find(query, RewardStock.class, "rewardStock");
+    }
+
+    // Replaces all stripes of the reward with the given ones
+    public void replaceStripes(String rewardId, List<RewardStock> stripes) {
+        mongoTemplate.remove(new Query(Criteria.where("rewardId").is(rewardId)), RewardStock.class, "rewardStock");
+        if (!stripes.isEmpty()) {
+            mongoTemplate.insert(new ArrayList<>(stripes), "rewardStock");
+        }
+    }
+
+    // Remaining stock per reward, summed over the stripes in one aggregation
+    public Map<String, Integer> sumByRewardId(List<String> rewardIds) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("rewardId").in(rewardIds)),
+                Aggregation.group("rewardId").sum("quantity").as("quantity"));
+        Map<String, Integer> totals = new HashMap<>();
+        for (Document row : mongoTemplate.aggregate(aggregation, "rewardStock", Document.class)) {
+            totals.put(row.getString("_id"), ((Number) row.get("quantity")).intValue());
+        }
+        return totals;
+    }
+}
@@ -0,0 +1,130 @@
+package sg.nus.iss.final_project.repo;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import jakarta.annotation.PostConstruct;
+import sg.nus.iss.final_project.model.SpendingRollup;
+
+@Repository
+public class SpendingRollupRepository {
+
+    public static final long ABSENT = -1;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @PostConstruct
+    public void ensureIndexes() {
+        mongoTemplate.indexOps("spendingRollups").ensureIndex(new Index()
+                .on("userId", Sort.Direction.ASC)
+                .on("granularity", Sort.Direction.ASC)
+                .on("periodKey", Sort.Direction.ASC)
+                .named("user_granularity_period_idx"));
+    }
+
+    public SpendingRollup findById(String id) {
+        return mongoTemplate.findById(id, SpendingRollup.class, "spendingRollups");
+    }
+
+    /**
+     * Folds one receipt into the rollup with a single upsert. Min and max only move
+     * outwards here; removals that touch them are repaired by the caller.
+     */
+    public SpendingRollup applyExpense(String userId, String granularity, String periodKey,
+            String category, double amount, int countDelta) {
+        Query query = new Query(Criteria.where("id").is(SpendingRollup.idFor(userId, granularity, periodKey)));
+        Update update = new Update()
+                .setOnInsert("userId", userId)
+                .setOnInsert("granularity", granularity)
+                .setOnInsert("periodKey", periodKey)
+                .inc("totalSpent", amount)
+                .inc("receiptCount", countDelta)
+                .inc("categoryTotals." + category, amount)
+                .inc("categoryCounts." + category, countDelta)
+                .inc("version", 1);
+        if (countDelta > 0) {
+            update.min("minExpense", amount).max("maxExpense", amount);
+        }
+        return mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                SpendingRollup.class, "spendingRollups");
+    }
+
+    public List<SpendingRollup> findRange(String userId, String granularity, String fromKey, String toKey) {
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .and("granularity").is(granularity)
+                .and("periodKey").gte(fromKey).lte(toKey))
+                .with(Sort.by(Sort.Direction.ASC, "periodKey"));
+        return mongoTemplate.find(query, SpendingRollup.class, "spendingRollups");
+    }
+
+    // Version of the rollup, or ABSENT if there is none
+    public long findVersion(String id) {
+        SpendingRollup rollup = findById(id);
+        return rollup != null ? rollup.getVersion() : ABSENT;
+    }
+
+    // Version of each of the user's rollups by id
+    public Map<String, Long> findVersionsByUser(String userId) {
+        Query query = new Query(Criteria.where("userId").is(userId));
+        query.fields().include("version");
+        Map<String, Long> versions = new HashMap<>();
+        for (SpendingRollup rollup : mongoTemplate.find(query, SpendingRollup.class, "spendingRollups")) {
+            versions.put(rollup.getId(), rollup.getVersion());
+        }
+        return versions;
+    }
+
+    /**
+     * Stores a recomputed rollup if the stored one is still at
+     * expectedVersion, or absent for ABSENT. Returns false when an expense was
+     * applied in the meantime, so the caller recomputes instead of writing
+     * over it.
+     */
+    public boolean replaceIfVersion(SpendingRollup rollup, long expectedVersion) {
+        rollup.setVersion(expectedVersion + 1);
+        if (expectedVersion == ABSENT) {
+            try {
+                mongoTemplate.insert(rollup, "spendingRollups");
+                return true;
+            } catch (DuplicateKeyException e) {
+                return false;
+            }
+        }
+        return mongoTemplate.findAndReplace(versionQuery(rollup.getId(), expectedVersion), rollup,
+                "spendingRollups") != null;
+    }
+
+    public boolean deleteIfVersion(String id, long expectedVersion) {
+        if (expectedVersion == ABSENT) {
+            return !mongoTemplate.exists(new Query(Criteria.where("id").is(id)), SpendingRollup.class,
+                    "spendingRollups");
+        }
+        return mongoTemplate.remove(versionQuery(id, expectedVersion), SpendingRollup.class, "spendingRollups")
+                .getDeletedCount() > 0;
+    }
+
+    // Rollups written before versions were kept have none, which reads as 0
+    private Query versionQuery(String id, long version) {
+        Criteria criteria = Criteria.where("id").is(id);
+        if (version == 0) {
+            criteria.orOperator(Criteria.where("version").is(0L), Criteria.where("version").exists(false));
+        } else {
+            criteria.and("version").is(version);
+        }
+        return new Query(criteria);
+    }
+}
@@ -0,0 +1,51 @@
+package sg.nus.iss.final_project.repo;
+
+import java.time.Duration;
+import java.util.Date;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Single-use tickets that open an SSE stream, kept in MongoDB so a ticket
+ * issued by one node can be redeemed on another. A TTL index removes
+ * tickets that were never redeemed.
+ */
+@Repository
+public class StreamTicketRepository {
+
+    private static final String COLLECTION = "streamTickets";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @PostConstruct
+    public void ensureIndexes() {
+        mongoTemplate.indexOps(COLLECTION).ensureIndex(new Index()
+                .on("expiresAt", Sort.Direction.ASC)
+                .expire(Duration.ZERO)
+                .named("expires_ttl_idx"));
+    }
+
+    public void insert(String ticket, String uid, Duration ttl) {
+        Document document = new Document("_id", ticket)
+                .append("uid", uid)
+                .append("expiresAt", new Date(System.currentTimeMillis() + ttl.toMillis()));
+        mongoTemplate.insert(document, COLLECTION);
+    }
+
+    // Removes the ticket and returns its uid, or null if it is unknown, used or expired
+    public String redeem(String ticket) {
+        Query query = new Query(Criteria.where("_id").is(ticket).and("expiresAt").gt(new Date()));
+        Document document = mongoTemplate.findAndRemove(query, Document.class, COLLECTION);
+        return document != null ? document.getString("uid") : null;
+    }
+}
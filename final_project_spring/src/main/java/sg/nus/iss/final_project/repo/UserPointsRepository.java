@@ -1,15 +1,21 @@
 package sg.nus.iss.final_project.repo;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
 
+import jakarta.annotation.PostConstruct;
 import sg.nus.iss.final_project.model.UserPoints;
 
 @Repository
@@ -18,6 +24,15 @@ public class UserPointsRepository {
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    // One snapshot per user, also when the first snapshots are upserted concurrently
+    @PostConstruct
+    public void ensureIndexes() {
+        mongoTemplate.indexOps("userPoints").ensureIndex(new Index()
+                .on("userId", Sort.Direction.ASC)
+                .unique()
+                .named("userId_unique_idx"));
+    }
+
     public List<UserPoints> findAll() {
         return mongoTemplate.findAll(UserPoints.class, "userPoints");
     }
@@ -41,6 +56,33 @@ public class UserPointsRepository {
         return Optional.ofNullable(userPoints);
     }
 
+    /**
+     * Writes the balance as the user's snapshot unless a snapshot of a later
+     * sequence is already stored, so concurrent writers can only move it forward.
+     */
+    public void saveSnapshot(UserPoints balance) {
+        Query query = new Query(Criteria.where("userId").is(balance.getUserId())
+                .orOperator(Criteria.where("sequence").lte(balance.getSequence()),
+                        Criteria.where("sequence").exists(false)));
+        Update update = new Update()
+                .set("totalPoints", balance.getTotalPoints())
+                .set("availablePoints", balance.getAvailablePoints())
+                .set("spentPoints", balance.getSpentPoints())
+                .set("expiredPoints", balance.getExpiredPoints())
+                .set("sequence", balance.getSequence())
+                .set("lastUpdated", balance.getLastUpdated());
+        try {
+            mongoTemplate.upsert(query, update, UserPoints.class, "userPoints");
+        } catch (DuplicateKeyException e) {
+            // The stored snapshot is newer; the upsert tried to insert a second one
+        }
+    }
+
+    public List<UserPoints> findByUserIds(Collection<String> userIds) {
+        Query query = new Query(Criteria.where("userId").in(userIds));
+        return mongoTemplate.find(query, UserPoints.class, "userPoints");
+    }
+
     public List<UserPoints> findByAvailablePointsGreaterThan(int threshold) {
         Query query = new Query(Criteria.where("availablePoints").gt(threshold));
         return mongoTemplate.find(query, UserPoints.class, "userPoints");
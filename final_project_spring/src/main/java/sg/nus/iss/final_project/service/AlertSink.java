@@ -0,0 +1,16 @@
+package sg.nus.iss.final_project.service;
+
+import java.util.List;
+
+import sg.nus.iss.final_project.model.BudgetAlert;
+
+/**
+ * Delivery channel for budget alerts. Every enabled sink bean receives each
+ * batch; a sink that throws causes the batch to be retried later.
+ */
+public interface AlertSink {
+
+    String getName();
+
+    void send(List<BudgetAlert> alerts) throws Exception;
+}
@@ -0,0 +1,272 @@
+package sg.nus.iss.final_project.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import sg.nus.iss.final_project.model.Receipt;
+import sg.nus.iss.final_project.model.SpendingRollup;
+import sg.nus.iss.final_project.repo.ReceiptRepository;
+import sg.nus.iss.final_project.repo.SpendingRollupRepository;
+
+@Service
+public class AnalyticsService {
+    private static final Logger logger = LoggerFactory.getLogger(AnalyticsService.class);
+
+    private static final int MAX_REFRESH_ATTEMPTS = 5;
+
+    @Autowired
+    private SpendingRollupRepository spendingRollupRepository;
+
+    @Autowired
+    private ReceiptRepository receiptRepository;
+
+    @Autowired
+    private ReceiptArchiveService receiptArchiveService;
+
+    @Value("${analytics.rebuild.threads:0}")
+    private int rebuildThreads;
+
+    public void recordReceipt(Receipt receipt) {
+        if (!isTrackable(receipt)) {
+            return;
+        }
+        String category = categoryKey(receipt.getCategory());
+        LocalDateTime date = receipt.getDateOfPurchase();
+        spendingRollupRepository.applyExpense(receipt.getUserId(), SpendingRollup.DAY, dayKey(date),
+                category, receipt.getTotalExpense(), 1);
+        spendingRollupRepository.applyExpense(receipt.getUserId(), SpendingRollup.MONTH, monthKey(date),
+                category, receipt.getTotalExpense(), 1);
+    }
+
+    public void removeReceipt(Receipt receipt) {
+        if (!isTrackable(receipt)) {
+            return;
+        }
+        String category = categoryKey(receipt.getCategory());
+        LocalDateTime date = receipt.getDateOfPurchase();
+        double amount = receipt.getTotalExpense();
+
+        SpendingRollup day = spendingRollupRepository.applyExpense(receipt.getUserId(), SpendingRollup.DAY,
+                dayKey(date), category, -amount, -1);
+        if (touchesBounds(day, amount)) {
+            LocalDateTime start = date.toLocalDate().atStartOfDay();
+            refreshRollup(receipt.getUserId(), SpendingRollup.DAY, dayKey(date), start, start.plusDays(1));
+        }
+
+        SpendingRollup month = spendingRollupRepository.applyExpense(receipt.getUserId(), SpendingRollup.MONTH,
+                monthKey(date), category, -amount, -1);
+        if (touchesBounds(month, amount)) {
+            LocalDateTime start = YearMonth.from(date).atDay(1).atStartOfDay();
+            refreshRollup(receipt.getUserId(), SpendingRollup.MONTH, monthKey(date), start, start.plusMonths(1));
+        }
+    }
+
+    public List<SpendingRollup> getDailyRollups(String userId, LocalDate from, LocalDate to) {
+        return spendingRollupRepository.findRange(userId, SpendingRollup.DAY, from.toString(), to.toString());
+    }
+
+    public List<SpendingRollup> getMonthlyRollups(String userId, YearMonth from, YearMonth to) {
+        return spendingRollupRepository.findRange(userId, SpendingRollup.MONTH, from.toString(), to.toString());
+    }
+
+    public Map<String, Object> getSummary(String userId, YearMonth from, YearMonth to) {
+        List<SpendingRollup> months = getMonthlyRollups(userId, from, to);
+
+        double totalSpent = 0;
+        int receiptCount = 0;
+        Double minExpense = null;
+        Double maxExpense = null;
+        Map<String, Double> categoryTotals = new HashMap<>();
+        Map<String, Double> monthlyTotals = new LinkedHashMap<>();
+
+        for (SpendingRollup month : months) {
+            totalSpent += month.getTotalSpent();
+            receiptCount += month.getReceiptCount();
+            if (month.getMinExpense() != null) {
+                minExpense = minExpense == null ? month.getMinExpense() : Math.min(minExpense, month.getMinExpense());
+            }
+            if (month.getMaxExpense() != null) {
+                maxExpense = maxExpense == null ? month.getMaxExpense() : Math.max(maxExpense, month.getMaxExpense());
+            }
+            month.getCategoryTotals().forEach((category, amount) -> categoryTotals.merge(category, amount, Double::sum));
+            monthlyTotals.put(month.getPeriodKey(), month.getTotalSpent());
+        }
+
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("from", from.toString());
+        summary.put("to", to.toString());
+        summary.put("totalSpent", totalSpent);
+        summary.put("receiptCount", receiptCount);
+        summary.put("minExpense", minExpense);
+        summary.put("maxExpense", maxExpense);
+        summary.put("categoryTotals", categoryTotals);
+        summary.put("monthlyTotals", monthlyTotals);
+        return summary;
+    }
+
+    /**
+     * Recomputes every user's rollups from the receipts collection. Users are
+     * independent, so they are spread over a fixed pool of worker threads.
+     */
+    public Map<String, Object> rebuildAll() throws InterruptedException {
+        List<String> userIds = receiptRepository.findDistinctUserIds();
+        int threads = rebuildThreads > 0 ? rebuildThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger rebuiltUsers = new AtomicInteger();
+        AtomicInteger failedUsers = new AtomicInteger();
+        long started = System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (String userId : userIds) {
+                if (userId == null) {
+                    continue;
+                }
+                futures.add(executor.submit(() -> {
+                    try {
+                        rebuildUser(userId);
+                        rebuiltUsers.incrementAndGet();
+                    } catch (Exception e) {
+                        failedUsers.incrementAndGet();
+                        logger.error("Failed to rebuild spending rollups for user: {}", userId, e);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    logger.error("Rollup rebuild task failed", e);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        long elapsed = System.currentTimeMillis() - started;
+        logger.info("Rebuilt spending rollups for {} users ({} failed) in {} ms",
+                rebuiltUsers.get(), failedUsers.get(), elapsed);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("usersRebuilt", rebuiltUsers.get());
+        result.put("usersFailed", failedUsers.get());
+        result.put("threads", threads);
+        result.put("elapsedMs", elapsed);
+        return result;
+    }
+
+    /**
+     * Recomputes the user's rollups and stores each one only over the version
+     * read before the receipts, so an expense applied meanwhile is never
+     * overwritten; the user is recomputed instead.
+     */
+    public void rebuildUser(String userId) {
+        for (int attempt = 0; attempt < MAX_REFRESH_ATTEMPTS; attempt++) {
+            Map<String, Long> versions = spendingRollupRepository.findVersionsByUser(userId);
+            Map<String, SpendingRollup> rollups = computeRollups(userId);
+            boolean clean = true;
+            for (SpendingRollup rollup : rollups.values()) {
+                clean &= spendingRollupRepository.replaceIfVersion(rollup,
+                        versions.getOrDefault(rollup.getId(), SpendingRollupRepository.ABSENT));
+            }
+            for (Map.Entry<String, Long> stored : versions.entrySet()) {
+                if (!rollups.containsKey(stored.getKey())) {
+                    clean &= spendingRollupRepository.deleteIfVersion(stored.getKey(), stored.getValue());
+                }
+            }
+            if (clean) {
+                return;
+            }
+        }
+        throw new IllegalStateException("Spending rollups of " + userId + " kept changing during the rebuild");
+    }
+
+    private Map<String, SpendingRollup> computeRollups(String userId) {
+        Map<String, SpendingRollup> rollups = new HashMap<>();
+        for (Receipt receipt : receiptArchiveService.findAllByUserId(userId)) {
+            if (!isTrackable(receipt)) {
+                continue;
+            }
+            String category = categoryKey(receipt.getCategory());
+            LocalDateTime date = receipt.getDateOfPurchase();
+            rollups.computeIfAbsent(SpendingRollup.idFor(userId, SpendingRollup.DAY, dayKey(date)),
+                    id -> new SpendingRollup(userId, SpendingRollup.DAY, dayKey(date)))
+                    .addExpense(category, receipt.getTotalExpense());
+            rollups.computeIfAbsent(SpendingRollup.idFor(userId, SpendingRollup.MONTH, monthKey(date)),
+                    id -> new SpendingRollup(userId, SpendingRollup.MONTH, monthKey(date)))
+                    .addExpense(category, receipt.getTotalExpense());
+        }
+        return rollups;
+    }
+
+    // Recomputes one rollup from its receipts, e.g. after its min or max receipt was removed
+    private void refreshRollup(String userId, String granularity, String periodKey,
+            LocalDateTime from, LocalDateTime to) {
+        String id = SpendingRollup.idFor(userId, granularity, periodKey);
+        for (int attempt = 0; attempt < MAX_REFRESH_ATTEMPTS; attempt++) {
+            // Read before the receipts, so any expense applied after it fails the conditional write
+            long version = spendingRollupRepository.findVersion(id);
+            SpendingRollup rollup = new SpendingRollup(userId, granularity, periodKey);
+            for (Receipt receipt : receiptArchiveService.findByUserIdAndDateRange(userId, from, to)) {
+                if (isTrackable(receipt)) {
+                    rollup.addExpense(categoryKey(receipt.getCategory()), receipt.getTotalExpense());
+                }
+            }
+            boolean stored = rollup.getReceiptCount() == 0
+                    ? spendingRollupRepository.deleteIfVersion(id, version)
+                    : spendingRollupRepository.replaceIfVersion(rollup, version);
+            if (stored) {
+                return;
+            }
+        }
+        // The counters are still right; only min or max may be stale until the next rebuild
+        logger.warn("Spending rollup {} kept changing while it was refreshed", id);
+    }
+
+    private boolean touchesBounds(SpendingRollup rollup, double amount) {
+        if (rollup == null) {
+            return false;
+        }
+        return rollup.getReceiptCount() <= 0
+                || (rollup.getMinExpense() != null && amount <= rollup.getMinExpense())
+                || (rollup.getMaxExpense() != null && amount >= rollup.getMaxExpense());
+    }
+
+    private boolean isTrackable(Receipt receipt) {
+        return receipt.getUserId() != null && receipt.getDateOfPurchase() != null && receipt.getTotalExpense() > 0;
+    }
+
+    private String dayKey(LocalDateTime date) {
+        return date.toLocalDate().toString();
+    }
+
+    private String monthKey(LocalDateTime date) {
+        return YearMonth.from(date).toString();
+    }
+
+    // Category names become field names inside the rollup, so dots and leading $ are not allowed
+    private String categoryKey(String category) {
+        if (category == null || category.isBlank()) {
+            return "Others";
+        }
+        String key = category.replace('.', '_');
+        return key.startsWith("$") ? "_" + key.substring(1) : key;
+    }
+}
@@ -0,0 +1,188 @@
+package sg.nus.iss.final_project.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import sg.nus.iss.final_project.model.Budget;
+import sg.nus.iss.final_project.model.BudgetAlert;
+import sg.nus.iss.final_project.model.BudgetCategory;
+import sg.nus.iss.final_project.repo.BudgetAlertRepository;
+import sg.nus.iss.final_project.repo.JobLockRepository;
+
+/**
+ * Raises an alert when an expense moves a category across one of the
+ * configured percentages of its budget. Evaluation runs inline and only
+ * compares the category before and after the expense; everything that touches
+ * the database or a sink happens in the periodic flush, which deduplicates the
+ * queued alerts with one bulk insert and hands the new ones to every sink as a
+ * single batch. A batch that cannot be recorded goes back on the queue; one
+ * that was recorded but not delivered is picked up by the retry job, which
+ * runs on one node at a time.
+ */
+@Service
+public class BudgetAlertService {
+    private static final Logger logger = LoggerFactory.getLogger(BudgetAlertService.class);
+
+    private static final int MAX_DELIVERY_ATTEMPTS = 5;
+    private static final String RETRY_LOCK = "budget-alert-retry";
+    private static final Duration RETRY_LEASE = Duration.ofMinutes(5);
+
+    @Autowired
+    private BudgetAlertRepository budgetAlertRepository;
+
+    @Autowired
+    private JobLockRepository jobLockRepository;
+
+    @Autowired(required = false)
+    private List<AlertSink> sinks = new ArrayList<>();
+
+    @Value("${alerts.thresholds:80,100}")
+    private String thresholdList;
+
+    @Value("${alerts.batch-size:200}")
+    private int batchSize;
+
+    @Value("${alerts.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private int[] thresholds;
+    private BlockingQueue<BudgetAlert> queue;
+    private final AtomicLong dropped = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        thresholds = Arrays.stream(thresholdList.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .mapToInt(Integer::parseInt)
+                .sorted()
+                .toArray();
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        logger.info("Budget alerts at {}% with sinks {}", Arrays.toString(thresholds),
+                sinks.stream().map(AlertSink::getName).toList());
+    }
+
+    /**
+     * Called after an expense of the given amount was added to the category.
+     * Never blocks: a full queue drops the alert and counts it.
+     */
+    public void evaluate(Budget updated, String categoryName, double amount) {
+        BudgetCategory category = updated.findCategoryByName(categoryName);
+        if (category == null || category.getBudgetAmount() <= 0 || amount <= 0) {
+            return;
+        }
+        double after = category.getSpentAmount() / category.getBudgetAmount() * 100;
+        double before = (category.getSpentAmount() - amount) / category.getBudgetAmount() * 100;
+        for (int threshold : thresholds) {
+            if (before < threshold && after >= threshold) {
+                BudgetAlert alert = new BudgetAlert(updated.getUserId(), updated.getMonthYear(),
+                        category.getCategory(), threshold, category.getSpentAmount(), category.getBudgetAmount());
+                if (!queue.offer(alert)) {
+                    dropped.incrementAndGet();
+                    logger.warn("Budget alert queue is full, dropped {}", alert.getId());
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${alerts.flush-interval-ms:2000}")
+    public void flush() {
+        List<BudgetAlert> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            List<BudgetAlert> recorded;
+            try {
+                // Repeated crossings, e.g. after an expense was removed and re-added, are dropped here
+                recorded = budgetAlertRepository.insertAllIfAbsent(batch);
+            } catch (Exception e) {
+                // Alerts of the batch that did get in are duplicates next time and reach the sinks via retryPending
+                logger.error("Failed to record {} budget alerts, requeued for the next flush", batch.size(), e);
+                requeue(batch);
+                return;
+            }
+            deliver(recorded);
+            batch.clear();
+        }
+    }
+
+    // Alerts recorded but not delivered, because a sink failed or the node stopped before sending
+    @Scheduled(fixedDelayString = "${alerts.retry-interval-ms:60000}")
+    public void retryPending() {
+        // Nodes retrying the same alerts would send each one several times
+        String lockToken = jobLockRepository.tryAcquire(RETRY_LOCK, RETRY_LEASE);
+        if (lockToken == null) {
+            return;
+        }
+        try {
+            List<BudgetAlert> pending = budgetAlertRepository.findPendingCreatedBefore(
+                    LocalDateTime.now().minusMinutes(1), batchSize);
+            if (!pending.isEmpty()) {
+                logger.info("Retrying delivery of {} budget alerts", pending.size());
+                deliver(pending);
+            }
+        } catch (Exception e) {
+            logger.error("Budget alert retry failed", e);
+        } finally {
+            jobLockRepository.release(RETRY_LOCK, lockToken);
+        }
+    }
+
+    // Alerts waiting in the queue and alerts dropped because it was full, since startup
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queued", queue.size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("dropped", dropped.get());
+        return stats;
+    }
+
+    public List<BudgetAlert> getAlerts(String userId, String monthYear) {
+        return budgetAlertRepository.findByUserIdAndMonthYear(userId, monthYear);
+    }
+
+    private void requeue(List<BudgetAlert> batch) {
+        for (BudgetAlert alert : batch) {
+            if (!queue.offer(alert)) {
+                dropped.incrementAndGet();
+                logger.warn("Budget alert queue is full, dropped {}", alert.getId());
+            }
+        }
+    }
+
+    private void deliver(List<BudgetAlert> alerts) {
+        if (alerts.isEmpty()) {
+            return;
+        }
+        List<String> ids = alerts.stream().map(BudgetAlert::getId).toList();
+        boolean failed = false;
+        for (AlertSink sink : sinks) {
+            try {
+                sink.send(alerts);
+            } catch (Exception e) {
+                failed = true;
+                logger.warn("Alert sink {} failed for {} alerts: {}", sink.getName(), alerts.size(), e.getMessage());
+            }
+        }
+        // A retry goes to every sink again, so sinks may see an alert more than once after a failure
+        if (failed) {
+            budgetAlertRepository.markAttemptFailed(ids, MAX_DELIVERY_ATTEMPTS);
+        } else {
+            budgetAlertRepository.markSent(ids);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package sg.nus.iss.final_project.service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import jakarta.annotation.PostConstruct;
+import sg.nus.iss.final_project.model.Budget;
+
+/**
+ * Two-tier read cache for budgets keyed by user and month: an in-process
+ * Caffeine cache in front of an optional shared Redis tier. Writers evict the
+ * key from both tiers rather than storing their result, so concurrent writers
+ * can never leave an older budget behind. Other nodes drop their local copy
+ * when the budget change stream reports the write, and the short local TTL
+ * bounds staleness when change streams are unavailable.
+ *
+ * A reader that missed Redis fills it only if the key's generation, bumped by
+ * every eviction, is still the one it saw before loading from MongoDB. A load
+ * that overlapped a write therefore cannot put the budget from before the
+ * write back into the shared tier.
+ *
+ * Cached budgets are shared between requests and must not be modified.
+ */
+@Service
+public class BudgetCacheService {
+    private static final Logger logger = LoggerFactory.getLogger(BudgetCacheService.class);
+
+    private static final String KEY_PREFIX = "budget:";
+    private static final String GENERATION_PREFIX = "budget-gen:";
+
+    // KEYS: value, generation; ARGV: generation seen before loading ("" for none), json, ttl seconds
+    private static final RedisScript<Long> FILL_IF_CURRENT = new DefaultRedisScript<>(
+            "if (redis.call('GET', KEYS[2]) or '') == ARGV[1] then "
+                    + "redis.call('SET', KEYS[1], ARGV[2], 'EX', ARGV[3]) return 1 end return 0",
+            Long.class);
+
+    // KEYS: value, generation; ARGV: generation ttl seconds
+    private static final RedisScript<Long> EVICT = new DefaultRedisScript<>(
+            "redis.call('INCR', KEYS[2]) redis.call('EXPIRE', KEYS[2], ARGV[1]) "
+                    + "return redis.call('DEL', KEYS[1])",
+            Long.class);
+
+    @Autowired
+    private ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${budgets.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${budgets.cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${budgets.cache.local-ttl-seconds:30}")
+    private long localTtlSeconds;
+
+    @Value("${budgets.cache.redis.enabled:false}")
+    private boolean redisEnabled;
+
+    @Value("${budgets.cache.redis.ttl-seconds:300}")
+    private long redisTtlSeconds;
+
+    private Cache<String, Budget> localCache;
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder redisMisses = new LongAdder();
+    private final LongAdder redisErrors = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(localTtlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached budget, calling the loader at most once per key on a
+     * miss in both tiers. Concurrent readers of the same key wait for that load.
+     */
+    public Budget get(String userId, String monthYear, Supplier<Budget> loader) {
+        if (!cacheEnabled) {
+            return loader.get();
+        }
+        return localCache.get(key(userId, monthYear), key -> loadThroughRedis(key, loader));
+    }
+
+    public void evict(String userId, String monthYear) {
+        String key = key(userId, monthYear);
+        localCache.invalidate(key);
+        StringRedisTemplate redis = redis();
+        if (redis != null) {
+            try {
+                // Bumping the generation turns away fills that loaded before this write
+                redis.execute(EVICT, List.of(key, generationKey(key)), String.valueOf(redisTtlSeconds));
+            } catch (Exception e) {
+                redisErrors.increment();
+                logger.warn("Failed to evict budget {} from Redis: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    // Used for writes made by other nodes, which have already evicted the shared tier
+    public void evictLocal(String userId, String monthYear) {
+        localCache.invalidate(key(userId, monthYear));
+    }
+
+    public Map<String, Object> getStats() {
+        CacheStats stats = localCache.stats();
+        Map<String, Object> local = new HashMap<>();
+        local.put("hitCount", stats.hitCount());
+        local.put("missCount", stats.missCount());
+        local.put("hitRatio", stats.hitRate());
+        local.put("evictionCount", stats.evictionCount());
+        local.put("averageLoadMs", stats.averageLoadPenalty() / 1_000_000.0);
+        local.put("size", localCache.estimatedSize());
+
+        long hits = redisHits.sum();
+        long misses = redisMisses.sum();
+        Map<String, Object> shared = new HashMap<>();
+        shared.put("enabled", redisEnabled);
+        shared.put("hitCount", hits);
+        shared.put("missCount", misses);
+        shared.put("hitRatio", hits + misses == 0 ? 1.0 : (double) hits / (hits + misses));
+        shared.put("errorCount", redisErrors.sum());
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", cacheEnabled);
+        result.put("local", local);
+        result.put("redis", shared);
+        return result;
+    }
+
+    private Budget loadThroughRedis(String key, Supplier<Budget> loader) {
+        StringRedisTemplate redis = redis();
+        String generation = null;
+        if (redis != null) {
+            try {
+                // Read before the value, so an eviction between the two is seen when filling
+                List<String> values = redis.opsForValue().multiGet(List.of(generationKey(key), key));
+                generation = values != null && values.get(0) != null ? values.get(0) : "";
+                String json = values != null ? values.get(1) : null;
+                if (json != null) {
+                    redisHits.increment();
+                    return objectMapper.readValue(json, Budget.class);
+                }
+                redisMisses.increment();
+            } catch (Exception e) {
+                redisErrors.increment();
+                logger.warn("Failed to read budget {} from Redis, using MongoDB: {}", key, e.getMessage());
+                generation = null;
+            }
+        }
+
+        Budget budget = loader.get();
+        // Without a generation from before the load the fill could be stale, so it is skipped
+        if (redis != null && budget != null && generation != null) {
+            try {
+                redis.execute(FILL_IF_CURRENT, List.of(key, generationKey(key)), generation,
+                        objectMapper.writeValueAsString(budget), String.valueOf(redisTtlSeconds));
+            } catch (Exception e) {
+                redisErrors.increment();
+                logger.warn("Failed to write budget {} to Redis: {}", key, e.getMessage());
+            }
+        }
+        return budget;
+    }
+
+    private StringRedisTemplate redis() {
+        return redisEnabled ? redisTemplateProvider.getIfAvailable() : null;
+    }
+
+    // The hash tag keeps a value and its generation in one Redis Cluster slot, as the scripts require
+    private static String key(String userId, String monthYear) {
+        return KEY_PREFIX + "{" + userId + ":" + monthYear + "}";
+    }
+
+    private static String generationKey(String key) {
+        return GENERATION_PREFIX + key.substring(KEY_PREFIX.length());
+    }
+}
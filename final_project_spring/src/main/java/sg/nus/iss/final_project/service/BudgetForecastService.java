@@ -0,0 +1,191 @@
+package sg.nus.iss.final_project.service;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import sg.nus.iss.final_project.model.Budget;
+import sg.nus.iss.final_project.model.BudgetCategory;
+import sg.nus.iss.final_project.model.BudgetForecast;
+import sg.nus.iss.final_project.model.CategoryForecast;
+import sg.nus.iss.final_project.repo.BudgetForecastRepository;
+
+/**
+ * Projects month-end spend per budget category from an exponentially weighted
+ * daily spend rate. The model state is updated in O(1) per expense and kept in
+ * budgetForecasts under the budget's user and month; projections are computed
+ * when budgets are loaded and cached with them, so each update evicts the
+ * cached budget once it is written. Updates run on a background thread so
+ * they add no round trips to recording an expense; when the backlog is full
+ * the caller runs the update itself rather than dropping it.
+ */
+@Service
+public class BudgetForecastService {
+    private static final Logger logger = LoggerFactory.getLogger(BudgetForecastService.class);
+
+    private static final int MAX_UPDATE_ATTEMPTS = 5;
+
+    @Autowired
+    private BudgetForecastRepository budgetForecastRepository;
+
+    @Autowired
+    private BudgetCacheService budgetCacheService;
+
+    @Value("${budgets.forecast.alpha:0.2}")
+    private double alpha;
+
+    @Value("${budgets.forecast.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private ExecutorService updater;
+
+    @PostConstruct
+    public void start() {
+        // One thread keeps a user's updates in order; the version check still guards against other nodes
+        updater = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "budget-forecast-updater");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void stop() {
+        updater.shutdown();
+    }
+
+    public void recordExpense(String userId, String monthYear, String categoryName, double amount, LocalDate day) {
+        submit(() -> update(userId, monthYear, categoryName, amount, day, true));
+    }
+
+    public void removeExpense(String userId, String monthYear, String categoryName, double amount, LocalDate day) {
+        submit(() -> update(userId, monthYear, categoryName, amount, day, false));
+    }
+
+    private void submit(Runnable update) {
+        updater.execute(() -> {
+            try {
+                update.run();
+            } catch (Exception e) {
+                logger.warn("Failed to update forecast: {}", e.getMessage());
+            }
+        });
+    }
+
+    private void update(String userId, String monthYear, String categoryName, double amount, LocalDate day,
+            boolean add) {
+        int dayOfMonth = dayOfMonth(monthYear, day);
+        for (int attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+            BudgetForecast forecast = budgetForecastRepository.findById(BudgetForecast.idFor(userId, monthYear));
+            if (forecast == null) {
+                if (!add) {
+                    return;
+                }
+                forecast = new BudgetForecast(userId, monthYear);
+            }
+            CategoryForecast category = forecast.getOrAddCategory(categoryName);
+            if (add) {
+                category.record(dayOfMonth, amount, alpha);
+            } else {
+                category.remove(dayOfMonth, amount, alpha);
+            }
+            try {
+                budgetForecastRepository.save(forecast);
+                budgetCacheService.evict(userId, monthYear);
+                return;
+            } catch (OptimisticLockingFailureException | DuplicateKeyException e) {
+                // Another expense for the same budget was recorded first; reapply on its result
+            }
+        }
+        logger.warn("Gave up updating forecast for {} {} after {} attempts", userId, monthYear, MAX_UPDATE_ATTEMPTS);
+    }
+
+    public void deleteForecast(String userId, String monthYear) {
+        budgetForecastRepository.deleteById(BudgetForecast.idFor(userId, monthYear));
+    }
+
+    public void attachForecast(Budget budget) {
+        BudgetForecast forecast = budget.getUserId() == null ? null
+                : budgetForecastRepository.findById(BudgetForecast.idFor(budget.getUserId(), budget.getMonthYear()));
+        applyForecast(budget, forecast);
+    }
+
+    // Loads the state for all budgets with one query
+    public void attachForecasts(List<Budget> budgets) {
+        if (budgets.isEmpty()) {
+            return;
+        }
+        Map<String, BudgetForecast> forecasts = new HashMap<>();
+        List<String> ids = budgets.stream().map(b -> BudgetForecast.idFor(b.getUserId(), b.getMonthYear())).toList();
+        for (BudgetForecast forecast : budgetForecastRepository.findByIds(ids)) {
+            forecasts.put(forecast.getId(), forecast);
+        }
+        for (Budget budget : budgets) {
+            applyForecast(budget, forecasts.get(BudgetForecast.idFor(budget.getUserId(), budget.getMonthYear())));
+        }
+    }
+
+    private void applyForecast(Budget budget, BudgetForecast forecast) {
+        YearMonth month = parseMonth(budget.getMonthYear());
+        YearMonth current = YearMonth.now();
+        boolean open = month != null && month.equals(current);
+        int today = LocalDate.now().getDayOfMonth();
+        int daysInMonth = month != null ? month.lengthOfMonth() : 0;
+
+        double projectedTotal = 0;
+        for (BudgetCategory category : budget.getCategories()) {
+            double projected = category.getSpentAmount();
+            if (open) {
+                CategoryForecast state = forecast != null ? forecast.findCategory(category.getCategory()) : null;
+                if (state != null) {
+                    projected += state.projectRemaining(today, daysInMonth, alpha);
+                } else {
+                    // No model yet, e.g. spend recorded before forecasting existed: use the run rate
+                    projected += category.getSpentAmount() / today * (daysInMonth - today);
+                }
+            }
+            category.setProjectedSpend(projected);
+            projectedTotal += projected;
+        }
+        budget.setProjectedTotal(projectedTotal);
+    }
+
+    // Expenses without a usable date in the month count as today, clamped into the month
+    private int dayOfMonth(String monthYear, LocalDate day) {
+        YearMonth month = parseMonth(monthYear);
+        if (day != null && month != null && YearMonth.from(day).equals(month)) {
+            return day.getDayOfMonth();
+        }
+        LocalDate today = LocalDate.now();
+        if (month == null || YearMonth.from(today).equals(month)) {
+            return today.getDayOfMonth();
+        }
+        return month.isBefore(YearMonth.from(today)) ? month.lengthOfMonth() : 1;
+    }
+
+    private YearMonth parseMonth(String monthYear) {
+        try {
+            return monthYear != null ? YearMonth.parse(monthYear) : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
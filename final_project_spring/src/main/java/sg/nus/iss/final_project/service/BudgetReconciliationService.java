@@ -0,0 +1,367 @@
+package sg.nus.iss.final_project.service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import sg.nus.iss.final_project.model.Budget;
+import sg.nus.iss.final_project.model.BudgetCategory;
+import sg.nus.iss.final_project.model.ReceiptArchive;
+import sg.nus.iss.final_project.repo.BudgetRepository;
+import sg.nus.iss.final_project.repo.ReceiptArchiveRepository;
+import sg.nus.iss.final_project.repo.ReceiptRepository;
+
+/**
+ * Recomputes budget category spend from the receipts and repairs budgets that
+ * drifted. Users are split into partitions by hash of their id; partitions run
+ * in parallel here, or on different nodes by passing disjoint partition lists.
+ * Each partition checkpoints the last user it finished so an interrupted run
+ * resumes from there.
+ */
+@Service
+public class BudgetReconciliationService {
+    private static final Logger logger = LoggerFactory.getLogger(BudgetReconciliationService.class);
+
+    private static final String CHECKPOINT_COLLECTION = "migrationCheckpoints";
+    private static final double TOLERANCE = 0.005;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private BudgetRepository budgetRepository;
+
+    @Autowired
+    private BudgetService budgetService;
+
+    @Autowired
+    private BudgetCacheService budgetCacheService;
+
+    @Autowired
+    private ReceiptRepository receiptRepository;
+
+    @Autowired
+    private ReceiptArchiveRepository receiptArchiveRepository;
+
+    @Value("${budgets.reconcile.enabled:false}")
+    private boolean reconcileEnabled;
+
+    @Value("${budgets.reconcile.partitions:8}")
+    private int partitionCount;
+
+    @Value("${budgets.reconcile.threads:0}")
+    private int reconcileThreads;
+
+    @Value("${budgets.reconcile.batch-size:200}")
+    private int batchSize;
+
+    @Value("${budgets.reconcile.grace-minutes:10}")
+    private int graceMinutes;
+
+    @Scheduled(cron = "${budgets.reconcile.cron:0 0 4 * * *}")
+    public void scheduledReconcile() {
+        if (!reconcileEnabled) {
+            return;
+        }
+        logger.info("Starting scheduled budget reconciliation");
+        try {
+            Map<String, Object> result = reconcile(null, false);
+            logger.info("Scheduled budget reconciliation finished: {}", result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Scheduled budget reconciliation was interrupted");
+        }
+    }
+
+    public int partitionOf(String userId) {
+        return Math.floorMod(userId.hashCode(), partitionCount);
+    }
+
+    /**
+     * Reconciles the given partitions, or all of them when the list is null or
+     * empty. A dry run only counts the budgets that would be repaired and
+     * leaves the checkpoints alone.
+     */
+    public Map<String, Object> reconcile(List<Integer> partitions, boolean dryRun) throws InterruptedException {
+        List<Integer> selected = new ArrayList<>();
+        if (partitions == null || partitions.isEmpty()) {
+            for (int p = 0; p < partitionCount; p++) {
+                selected.add(p);
+            }
+        } else {
+            for (Integer p : partitions) {
+                if (p == null || p < 0 || p >= partitionCount) {
+                    throw new IllegalArgumentException("Partition must be between 0 and " + (partitionCount - 1));
+                }
+                selected.add(p);
+            }
+        }
+
+        Set<String> userIds = new HashSet<>(receiptRepository.findDistinctUserIds());
+        userIds.addAll(budgetRepository.findDistinctUserIds());
+        Map<Integer, TreeSet<String>> usersByPartition = new HashMap<>();
+        for (String userId : userIds) {
+            if (userId != null) {
+                usersByPartition.computeIfAbsent(partitionOf(userId), p -> new TreeSet<>()).add(userId);
+            }
+        }
+
+        int threads = Math.min(selected.size(),
+                reconcileThreads > 0 ? reconcileThreads : Runtime.getRuntime().availableProcessors());
+        long started = System.currentTimeMillis();
+        ReconcileStats total = new ReconcileStats();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<ReconcileStats>> futures = new ArrayList<>();
+            for (int partition : selected) {
+                List<String> users = new ArrayList<>(usersByPartition.getOrDefault(partition, new TreeSet<>()));
+                futures.add(executor.submit(() -> reconcilePartition(partition, users, dryRun)));
+            }
+            for (Future<ReconcileStats> future : futures) {
+                try {
+                    total.add(future.get());
+                } catch (ExecutionException e) {
+                    logger.error("Budget reconciliation partition failed", e);
+                    total.failedPartitions++;
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        long elapsed = System.currentTimeMillis() - started;
+        logger.info("Reconciled {} users in {} partitions: {} budgets repaired, {} created, {} conflicts in {} ms",
+                total.usersChecked, selected.size(), total.budgetsRepaired, total.budgetsCreated,
+                total.conflicts, elapsed);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("partitions", selected);
+        result.put("partitionCount", partitionCount);
+        result.put("dryRun", dryRun);
+        result.put("usersChecked", total.usersChecked);
+        result.put("usersFailed", total.usersFailed);
+        result.put("budgetsRepaired", total.budgetsRepaired);
+        result.put("budgetsCreated", total.budgetsCreated);
+        result.put("monthsSkipped", total.monthsSkipped);
+        result.put("conflicts", total.conflicts);
+        result.put("failedPartitions", total.failedPartitions);
+        result.put("threads", threads);
+        result.put("elapsedMs", elapsed);
+        return result;
+    }
+
+    public void resetCheckpoints() {
+        mongoTemplate.remove(new Query(Criteria.where("_id").regex("^budget-reconcile:")), CHECKPOINT_COLLECTION);
+    }
+
+    private ReconcileStats reconcilePartition(int partition, List<String> users, boolean dryRun) {
+        // The checkpoint is tied to the partition count, since changing it reshuffles users
+        String checkpointId = "budget-reconcile:" + partitionCount + ":" + partition;
+        Document checkpoint = dryRun ? null
+                : mongoTemplate.findById(checkpointId, Document.class, CHECKPOINT_COLLECTION);
+        String resumeAfter = checkpoint != null ? checkpoint.getString("lastUserId") : null;
+        if (resumeAfter != null) {
+            logger.info("Resuming budget reconciliation partition {} after user {}", partition, resumeAfter);
+        }
+
+        ReconcileStats stats = new ReconcileStats();
+        List<Budget> pending = new ArrayList<>();
+        Map<String, Budget> observed = new HashMap<>();
+        int sinceFlush = 0;
+
+        for (String userId : users) {
+            if (resumeAfter != null && userId.compareTo(resumeAfter) <= 0) {
+                continue;
+            }
+            try {
+                reconcileUser(userId, dryRun, pending, observed, stats);
+            } catch (Exception e) {
+                stats.usersFailed++;
+                logger.error("Failed to reconcile budgets for user: {}", userId, e);
+            }
+            stats.usersChecked++;
+
+            if (++sinceFlush >= batchSize || pending.size() >= batchSize) {
+                flush(pending, observed, dryRun, stats);
+                if (!dryRun) {
+                    mongoTemplate.upsert(new Query(Criteria.where("_id").is(checkpointId)),
+                            new Update().set("lastUserId", userId).set("updatedAt", LocalDateTime.now()),
+                            CHECKPOINT_COLLECTION);
+                }
+                sinceFlush = 0;
+            }
+        }
+
+        flush(pending, observed, dryRun, stats);
+        if (!dryRun) {
+            mongoTemplate.remove(new Query(Criteria.where("_id").is(checkpointId)), CHECKPOINT_COLLECTION);
+        }
+        logger.info("Budget reconciliation partition {} done: {} users, {} budgets repaired",
+                partition, stats.usersChecked, stats.budgetsRepaired);
+        return stats;
+    }
+
+    private void reconcileUser(String userId, boolean dryRun, List<Budget> pending,
+            Map<String, Budget> observed, ReconcileStats stats) {
+        // Archived months no longer have their receipts in the collection, and
+        // months with very recent receipts may still have an expense in flight
+        Set<String> skippedMonths = new HashSet<>();
+        for (ReceiptArchive archive : receiptArchiveRepository.findByUserId(userId)) {
+            skippedMonths.add(archive.getMonthYear());
+        }
+        Instant busySince = Instant.now().minusSeconds(graceMinutes * 60L);
+
+        Map<String, Map<String, Document>> expectedByMonth = new HashMap<>();
+        for (Document row : receiptRepository.aggregateMonthlyCategorySpend(userId, ZoneId.systemDefault().getId())) {
+            Document key = row.get("_id", Document.class);
+            String month = key.getString("month");
+            if (month == null) {
+                continue;
+            }
+            Date lastScan = row.getDate("lastScan");
+            if (lastScan != null && lastScan.toInstant().isAfter(busySince)) {
+                skippedMonths.add(month);
+            }
+            // $toLower only folds ASCII, so re-key with the Java rule and merge groups that collapse together
+            expectedByMonth.computeIfAbsent(month, m -> new HashMap<>()).merge(
+                    BudgetCategory.normalizeName(key.getString("category")), row, (first, second) -> first
+                            .append("spent", ((Number) first.get("spent")).doubleValue()
+                                    + ((Number) second.get("spent")).doubleValue())
+                            .append("count", ((Number) first.get("count")).intValue()
+                                    + ((Number) second.get("count")).intValue()));
+        }
+
+        Map<String, Budget> budgetsByMonth = new HashMap<>();
+        for (Budget budget : budgetRepository.findByUserId(userId)) {
+            budgetsByMonth.put(budget.getMonthYear(), budget);
+        }
+
+        Set<String> months = new TreeSet<>(expectedByMonth.keySet());
+        months.addAll(budgetsByMonth.keySet());
+        for (String month : months) {
+            if (skippedMonths.contains(month)) {
+                stats.monthsSkipped++;
+                continue;
+            }
+            Map<String, Document> expected = expectedByMonth.getOrDefault(month, Map.of());
+            Budget budget = budgetsByMonth.get(month);
+            if (budget == null) {
+                if (expected.isEmpty()) {
+                    continue;
+                }
+                if (dryRun) {
+                    stats.budgetsRepaired++;
+                    continue;
+                }
+                budget = budgetService.loadUserBudget(userId, month);
+                stats.budgetsCreated++;
+            }
+
+            Budget before = budget.copy();
+            if (applyExpected(budget, expected)) {
+                observed.put(budget.getId(), before);
+                pending.add(budget);
+            }
+        }
+    }
+
+    // Overwrites category spend with the receipt totals; returns true if anything changed
+    private boolean applyExpected(Budget budget, Map<String, Document> expected) {
+        boolean changed = false;
+        Set<String> matched = new HashSet<>();
+        for (BudgetCategory category : budget.getCategories()) {
+            String key = category.getKey();
+            // Only the first of any case-variant duplicates receives the receipts
+            Document row = matched.add(key) ? expected.get(key) : null;
+            double spent = row != null ? ((Number) row.get("spent")).doubleValue() : 0;
+            int count = row != null ? ((Number) row.get("count")).intValue() : 0;
+            if (Math.abs(category.getSpentAmount() - spent) > TOLERANCE || category.getTransactions() != count) {
+                category.setSpentAmount(spent);
+                category.setTransactions(count);
+                changed = true;
+            }
+        }
+
+        for (Map.Entry<String, Document> entry : expected.entrySet()) {
+            if (matched.contains(entry.getKey())) {
+                continue;
+            }
+            // Same allocation addExpenseToBudget gives a category it has not seen before
+            Document row = entry.getValue();
+            BudgetCategory category = new BudgetCategory(row.getString("name"), budget.getTotalBudget() * 0.05);
+            category.setSpentAmount(((Number) row.get("spent")).doubleValue());
+            category.setTransactions(((Number) row.get("count")).intValue());
+            budget.addCategory(category);
+            changed = true;
+        }
+
+        double before = budget.getTotalSpent();
+        budget.updateTotalSpent();
+        return changed || Math.abs(budget.getTotalSpent() - before) > TOLERANCE;
+    }
+
+    private void flush(List<Budget> pending, Map<String, Budget> observed, boolean dryRun,
+            ReconcileStats stats) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (dryRun) {
+            stats.budgetsRepaired += pending.size();
+        } else {
+            int modified = budgetRepository.bulkReplaceSpend(pending, observed);
+            stats.budgetsRepaired += modified;
+            // Budgets whose spend, total or categories moved since they were read are left for the next run
+            stats.conflicts += pending.size() - modified;
+            for (Budget budget : pending) {
+                budgetCacheService.evict(budget.getUserId(), budget.getMonthYear());
+            }
+        }
+        pending.clear();
+        observed.clear();
+    }
+
+    private static class ReconcileStats {
+        long usersChecked;
+        long usersFailed;
+        long budgetsRepaired;
+        long budgetsCreated;
+        long monthsSkipped;
+        long conflicts;
+        long failedPartitions;
+
+        void add(ReconcileStats other) {
+            usersChecked += other.usersChecked;
+            usersFailed += other.usersFailed;
+            budgetsRepaired += other.budgetsRepaired;
+            budgetsCreated += other.budgetsCreated;
+            monthsSkipped += other.monthsSkipped;
+            conflicts += other.conflicts;
+            failedPartitions += other.failedPartitions;
+        }
+    }
+}
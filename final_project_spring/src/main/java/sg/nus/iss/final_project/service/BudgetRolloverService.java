@@ -0,0 +1,159 @@
+package sg.nus.iss.final_project.service;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import sg.nus.iss.final_project.model.Budget;
+import sg.nus.iss.final_project.model.BudgetCategory;
+import sg.nus.iss.final_project.repo.BudgetRepository;
+import sg.nus.iss.final_project.repo.JobLockRepository;
+
+/**
+ * Creates next month's budgets ahead of the month boundary so the first
+ * requests of the month do not all insert at once. Every user with a budget in
+ * the current month gets one for the next month with the same total and
+ * category allocations and nothing spent. Budgets that already exist are left
+ * alone, so the job can be rerun safely.
+ */
+@Service
+public class BudgetRolloverService {
+    private static final Logger logger = LoggerFactory.getLogger(BudgetRolloverService.class);
+
+    private static final String LOCK_NAME = "budget-rollover";
+    private static final Duration LOCK_LEASE = Duration.ofMinutes(10);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private BudgetRepository budgetRepository;
+
+    @Autowired
+    private JobLockRepository jobLockRepository;
+
+    @Value("${budgets.rollover.enabled:true}")
+    private boolean rolloverEnabled;
+
+    @Value("${budgets.rollover.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${budgets.rollover.max-writes-per-second:1000}")
+    private int maxWritesPerSecond;
+
+    // Runs on the last day of the month, ahead of the boundary
+    @Scheduled(cron = "${budgets.rollover.cron:0 0 1 L * *}")
+    public void scheduledRollover() {
+        if (!rolloverEnabled) {
+            return;
+        }
+        try {
+            Map<String, Object> result = rollover(YearMonth.now().plusMonths(1));
+            logger.info("Scheduled budget rollover finished: {}", result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Scheduled budget rollover was interrupted");
+        } catch (Exception e) {
+            logger.error("Scheduled budget rollover failed", e);
+        }
+    }
+
+    /**
+     * Creates budgets for the target month from the month before it. Returns
+     * null when a rollover is already running, on this node or another.
+     */
+    public Map<String, Object> rollover(YearMonth target) throws InterruptedException {
+        String lockToken = jobLockRepository.tryAcquire(LOCK_NAME, LOCK_LEASE);
+        if (lockToken == null) {
+            logger.info("Budget rollover to {} is already running", target);
+            return null;
+        }
+
+        String sourceMonth = target.minusMonths(1).toString();
+        String targetMonth = target.toString();
+        long started = System.currentTimeMillis();
+        int scanned = 0;
+        int created = 0;
+        int chunks = 0;
+        boolean lockLost = false;
+
+        try {
+            Query query = new Query(Criteria.where("monthYear").is(sourceMonth));
+            query.cursorBatchSize(chunkSize);
+            try (Stream<Budget> budgets = mongoTemplate.stream(query, Budget.class, "budgets")) {
+                Iterator<Budget> iterator = budgets.iterator();
+                List<Budget> chunk = new ArrayList<>(chunkSize);
+                while (iterator.hasNext()) {
+                    chunk.add(carryOver(iterator.next(), targetMonth));
+                    scanned++;
+                    if (chunk.size() >= chunkSize || !iterator.hasNext()) {
+                        long chunkStarted = System.currentTimeMillis();
+                        created += budgetRepository.bulkInsertIfAbsent(chunk);
+                        chunks++;
+                        throttle(chunk.size(), chunkStarted);
+                        chunk.clear();
+
+                        if (!jobLockRepository.extend(LOCK_NAME, lockToken, LOCK_LEASE)) {
+                            // Inserts skip budgets that exist, so the node that took over repeats nothing
+                            logger.warn("Lost the budget rollover lock after {} budgets, stopping", scanned);
+                            lockLost = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        } finally {
+            jobLockRepository.release(LOCK_NAME, lockToken);
+        }
+
+        long elapsed = System.currentTimeMillis() - started;
+        logger.info("Rolled {} budgets from {} to {}: {} created in {} chunks, {} ms",
+                scanned, sourceMonth, targetMonth, created, chunks, elapsed);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("sourceMonth", sourceMonth);
+        result.put("targetMonth", targetMonth);
+        result.put("scanned", scanned);
+        result.put("created", created);
+        result.put("alreadyPresent", scanned - created);
+        result.put("chunks", chunks);
+        result.put("lockLost", lockLost);
+        result.put("elapsedMs", elapsed);
+        return result;
+    }
+
+    private Budget carryOver(Budget source, String targetMonth) {
+        Budget budget = new Budget(source.getUserId(), targetMonth, source.getTotalBudget());
+        for (BudgetCategory category : source.getCategories()) {
+            budget.addCategory(new BudgetCategory(category.getCategory(), category.getBudgetAmount()));
+        }
+        return budget;
+    }
+
+    // Spaces chunks out so the write rate stays under max-writes-per-second
+    private void throttle(int writes, long chunkStarted) throws InterruptedException {
+        if (maxWritesPerSecond <= 0) {
+            return;
+        }
+        long minimumMs = writes * 1000L / maxWritesPerSecond;
+        long remaining = minimumMs - (System.currentTimeMillis() - chunkStarted);
+        if (remaining > 0) {
+            Thread.sleep(remaining);
+        }
+    }
+}
@@ -2,13 +2,17 @@
 package sg.nus.iss.final_project.service;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import sg.nus.iss.final_project.model.Budget;
@@ -18,9 +22,24 @@ import sg.nus.iss.final_project.repo.BudgetRepository;
 @Service
 public class BudgetService {
 
+    private static final Logger logger = LoggerFactory.getLogger(BudgetService.class);
+
     @Autowired
     private BudgetRepository budgetRepository;
 
+    @Autowired
+    private BudgetCacheService budgetCacheService;
+
+    @Autowired
+    private BudgetForecastService budgetForecastService;
+
+    @Autowired
+    private BudgetAlertService budgetAlertService;
+
+    private static final int MAX_CAS_ATTEMPTS = 5;
+    private static final double DEFAULT_TOTAL_BUDGET = 1500.0;
+    private static final int MAX_RANGE_MONTHS = 36;
+
     private static final Map<String, Integer> DEFAULT_CATEGORY_PERCENTAGES = new HashMap<>();
 
     static {
@@ -35,22 +54,35 @@ public class BudgetService {
     }
 
 
+    /**
+     * Cached read for display; writes below go through loadUserBudget instead.
+     * The forecast is attached when the budget is loaded and cached with it;
+     * the background forecast update evicts the entry once it has written.
+     * Callers get a copy since the cached budget is shared with other requests.
+     */
     public Budget getUserBudget(String userId, String monthYear) {
-        if (monthYear == null || monthYear.isEmpty()) {
-            monthYear = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM"));
-        }
+        String month = resolveMonth(monthYear);
+        return budgetCacheService.get(userId, month, () -> {
+            Budget budget = loadUserBudget(userId, month);
+            budgetForecastService.attachForecast(budget);
+            return budget;
+        }).copy();
+    }
 
-        Optional<Budget> existingBudget = budgetRepository.findByUserIdAndMonthYear(userId, monthYear);
+    // Uncached read-or-create for callers that go on to modify the budget
+    public Budget loadUserBudget(String userId, String monthYear) {
+        return budgetRepository.findOrCreate(createDefaultBudget(userId, resolveMonth(monthYear)));
+    }
 
-        if (existingBudget.isPresent()) {
-            return existingBudget.get();
-        } else {
-            return createDefaultBudget(userId, monthYear);
+    private String resolveMonth(String monthYear) {
+        if (monthYear == null || monthYear.isEmpty()) {
+            return LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM"));
         }
+        return monthYear;
     }
 
     private Budget createDefaultBudget(String userId, String monthYear) {
-        double defaultTotalBudget = 1500.0;
+        double defaultTotalBudget = DEFAULT_TOTAL_BUDGET;
         Budget budget = new Budget(userId, monthYear, defaultTotalBudget);
 
         DEFAULT_CATEGORY_PERCENTAGES.forEach((categoryName, percentage) -> {
@@ -58,72 +90,199 @@ public class BudgetService {
             BudgetCategory category = new BudgetCategory(categoryName, categoryBudget);
             budget.addCategory(category);
         });
-        return budgetRepository.save(budget);
+        return budget;
+    }
+
+    /**
+     * Budgets for every month from fromMonth to toMonth inclusive, read with one
+     * range query. Months without a budget get an unsaved default (id is null),
+     * so reading a range never creates documents.
+     */
+    public List<Budget> getBudgetRange(String userId, String fromMonth, String toMonth) {
+        YearMonth from = YearMonth.parse(fromMonth);
+        YearMonth to = YearMonth.parse(toMonth);
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        if (from.plusMonths(MAX_RANGE_MONTHS - 1).isBefore(to)) {
+            throw new IllegalArgumentException("Range is limited to " + MAX_RANGE_MONTHS + " months");
+        }
+
+        Map<String, Budget> existing = new HashMap<>();
+        for (Budget budget : budgetRepository.findByUserIdAndMonthRange(userId, from.toString(), to.toString())) {
+            existing.put(budget.getMonthYear(), budget);
+        }
+
+        List<Budget> budgets = new ArrayList<>();
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            Budget budget = existing.get(month.toString());
+            budgets.add(budget != null ? budget : createDefaultBudget(userId, month.toString()));
+        }
+        budgetForecastService.attachForecasts(budgets);
+        return budgets;
     }
 
     public Budget saveBudget(Budget budget) {
         budget.updateTotalSpent();
-        return budgetRepository.save(budget);
+        Budget saved = budgetRepository.save(budget);
+        budgetCacheService.evict(saved.getUserId(), saved.getMonthYear());
+        return saved;
     }
 
     public Budget removeExpenseFromBudget(String userId, String monthYear, String categoryName, double amount) {
-        Budget budget = getUserBudget(userId, monthYear);
+        return removeExpenseFromBudget(userId, monthYear, categoryName, amount, null);
+    }
 
-        BudgetCategory category = budget.findCategoryByName(categoryName);
-        if (category != null) {
-            category.subtractExpense(amount);
-        }
-        budget.updateTotalSpent();
-        return budgetRepository.save(budget);
+    // day is the purchase date, used by the forecast; null means today
+    public Budget removeExpenseFromBudget(String userId, String monthYear, String categoryName, double amount,
+            LocalDate day) {
+        Budget updated = subtractExpense(userId, monthYear, categoryName, amount);
+        budgetForecastService.removeExpense(userId, updated.getMonthYear(), categoryName, amount, day);
+        budgetCacheService.evict(userId, updated.getMonthYear());
+        return updated;
     }
 
-    public Budget updateTotalBudget(String userId, String monthYear, double newBudgetAmount) {
-        Budget budget = getUserBudget(userId, monthYear);
-        budget.setTotalBudget(newBudgetAmount);
+    private Budget subtractExpense(String userId, String monthYear, String categoryName, double amount) {
+        Budget updated = budgetRepository.decrementCategoryExpense(userId, monthYear, categoryName, amount);
+        if (updated != null) {
+            return updated;
+        }
 
-        double originalTotal = budget.getTotalBudget();
+        // The category is missing or would drop below zero, so clamp it like
+        // BudgetCategory.subtractExpense, retrying if another writer got in first
+        for (int attempt = 0; attempt < MAX_CAS_ATTEMPTS; attempt++) {
+            Budget budget = loadUserBudget(userId, monthYear);
+            BudgetCategory category = budget.findCategoryByName(categoryName);
+            if (category == null) {
+                return budget;
+            }
+            updated = budgetRepository.replaceCategorySpend(userId, budget.getMonthYear(), category,
+                    Math.max(0, category.getSpentAmount() - amount),
+                    Math.max(0, category.getTransactions() - 1));
+            if (updated != null) {
+                return updated;
+            }
+        }
+        throw new IllegalStateException("Budget for " + userId + " " + monthYear + " is under heavy contention");
+    }
 
-        for (BudgetCategory category : budget.getCategories()) {
-            double originalPercentage = category.getBudgetAmount() / originalTotal * 100;
-            category.setBudgetAmount(newBudgetAmount * (originalPercentage / 100));
+    // Scaled on the server so expenses recorded while the edit runs are kept
+    public Budget updateTotalBudget(String userId, String monthYear, double newBudgetAmount) {
+        Budget budget = loadUserBudget(userId, monthYear);
+        Budget saved = budgetRepository.scaleTotalBudget(userId, budget.getMonthYear(), newBudgetAmount);
+        if (saved == null) {
+            throw new IllegalStateException("Budget for " + userId + " " + monthYear
+                    + " was removed during the update");
         }
-        return budgetRepository.save(budget);
+        budgetCacheService.evict(userId, saved.getMonthYear());
+        return saved;
     }
 
     public Budget updateCategoryBudget(String userId, String monthYear, String categoryName, double newAmount) {
-        Budget budget = getUserBudget(userId, monthYear);
-
-        BudgetCategory category = budget.findCategoryByName(categoryName);
-        if (category != null) {
-            category.setBudgetAmount(newAmount);
-        } else {
-            budget.addCategory(new BudgetCategory(categoryName, newAmount));
+        Budget budget = loadUserBudget(userId, monthYear);
+        for (int attempt = 0; attempt < MAX_CAS_ATTEMPTS; attempt++) {
+            Budget saved = budgetRepository.setCategoryBudget(userId, budget.getMonthYear(), categoryName,
+                    newAmount);
+            if (saved == null) {
+                saved = budgetRepository.pushCategoryWithExpense(userId, budget.getMonthYear(),
+                        new BudgetCategory(categoryName, newAmount));
+            }
+            if (saved != null) {
+                budgetCacheService.evict(userId, saved.getMonthYear());
+                return saved;
+            }
         }
-
-        return budgetRepository.save(budget);
+        throw new IllegalStateException("Budget for " + userId + " " + monthYear + " is under heavy contention");
     }
 
+    /**
+     * Adds an expense with atomic single-document updates. The common case, an existing
+     * budget and category, is a single findAndModify.
+     */
     public Budget addExpenseToBudget(String userId, String monthYear, String categoryName, double amount) {
-        Budget budget = getUserBudget(userId, monthYear);
+        return addExpenseToBudget(userId, monthYear, categoryName, amount, null);
+    }
+
+    // day is the purchase date, used by the forecast; null means today
+    public Budget addExpenseToBudget(String userId, String monthYear, String categoryName, double amount,
+            LocalDate day) {
+        Budget updated = applyExpense(userId, monthYear, categoryName, amount);
+        budgetAlertService.evaluate(updated, categoryName, amount);
+        // Off the request path; the returned budget carries no projection
+        budgetForecastService.recordExpense(userId, updated.getMonthYear(), categoryName, amount, day);
+        budgetCacheService.evict(userId, updated.getMonthYear());
+        return updated;
+    }
+
+    private Budget applyExpense(String userId, String monthYear, String categoryName, double amount) {
+        Budget updated = budgetRepository.incrementCategoryExpense(userId, monthYear, categoryName, amount);
+        if (updated != null) {
+            return updated;
+        }
+
+        Budget budget = loadUserBudget(userId, monthYear);
+        for (int attempt = 0; attempt < MAX_CAS_ATTEMPTS; attempt++) {
+            updated = budgetRepository.incrementCategoryExpense(userId, budget.getMonthYear(), categoryName, amount);
+            if (updated != null) {
+                return updated;
+            }
 
-        BudgetCategory category = budget.findCategoryByName(categoryName);
-        if (category != null) {
-            category.addExpense(amount);
-        } else {
             double categoryBudget = budget.getTotalBudget() * 0.05;
             BudgetCategory newCategory = new BudgetCategory(categoryName, categoryBudget);
             newCategory.addExpense(amount);
-            budget.addCategory(newCategory);
+            updated = budgetRepository.pushCategoryWithExpense(userId, budget.getMonthYear(), newCategory);
+            if (updated != null) {
+                return updated;
+            }
         }
-        budget.updateTotalSpent();
-        return budgetRepository.save(budget);
+        throw new IllegalStateException("Budget for " + userId + " " + monthYear + " is under heavy contention");
+    }
+
+    /**
+     * Budgets over their total for the month, most overspent first. Served by
+     * month_overspent_idx, so no budget documents outside the result are read.
+     */
+    public List<Budget> getOverspentBudgets(String monthYear) {
+        if (monthYear == null || monthYear.isEmpty()) {
+            monthYear = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM"));
+        }
+        return budgetRepository.findOverspentBudgets(monthYear);
+    }
+
+    @Scheduled(cron = "${budgets.overspent-report.cron:0 0 8 * * *}")
+    public void reportOverspentBudgets() {
+        String monthYear = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM"));
+        long backfilled = budgetRepository.backfillOverspent(monthYear);
+        if (backfilled > 0) {
+            logger.info("Backfilled overspent flag on {} budgets for {}", backfilled, monthYear);
+        }
+
+        List<Budget> overspent = budgetRepository.findOverspentBudgets(monthYear);
+        logger.info("{} users are over budget for {}", overspent.size(), monthYear);
+        for (Budget budget : overspent) {
+            logger.info("Overspent: user {} spent {} of {} ({}%)", budget.getUserId(), budget.getTotalSpent(),
+                    budget.getTotalBudget(), Math.round(budget.getOverspendRatio() * 100));
+        }
+    }
+
+    public int migrateCategoryKeys() {
+        int updated = budgetRepository.backfillCategoryKeys(500);
+        logger.info("Added category keys to {} budgets", updated);
+        return updated;
     }
 
     public List<Budget> getAllUserBudgets(String userId) {
-        return budgetRepository.findByUserId(userId);
+        List<Budget> budgets = budgetRepository.findByUserId(userId);
+        budgetForecastService.attachForecasts(budgets);
+        return budgets;
     }
 
     public void deleteBudget(String budgetId) {
+        Budget budget = budgetRepository.findById(budgetId);
         budgetRepository.deleteById(budgetId);
+        if (budget != null) {
+            budgetForecastService.deleteForecast(budget.getUserId(), budget.getMonthYear());
+            budgetCacheService.evict(budget.getUserId(), budget.getMonthYear());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,237 @@
+package sg.nus.iss.final_project.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import sg.nus.iss.final_project.model.Campaign;
+import sg.nus.iss.final_project.model.CampaignSegment;
+import sg.nus.iss.final_project.repo.CampaignRepository;
+import sg.nus.iss.final_project.repo.JobLockRepository;
+import sg.nus.iss.final_project.repo.PointTransactionRepository;
+
+/**
+ * Credits bonus points to every user in a campaign's segment. The segment's
+ * user ids are streamed from an aggregation cursor in ascending order and
+ * credited in chunks through the points ledger, which appends a chunk with one
+ * bulk write and credits each user at most once per campaign. After every
+ * chunk the campaign records the last user id, so pausing, a restart or a
+ * crash only means continuing after that id; rerunning a chunk is harmless.
+ * A lease lock per campaign keeps two nodes from running the same campaign.
+ */
+@Service
+public class CampaignService {
+    private static final Logger logger = LoggerFactory.getLogger(CampaignService.class);
+
+    private static final Duration LOCK_LEASE = Duration.ofMinutes(5);
+
+    @Autowired
+    private CampaignRepository campaignRepository;
+
+    @Autowired
+    private ReceiptArchiveService receiptArchiveService;
+
+    @Autowired
+    private PointsLedgerService pointsLedgerService;
+
+    @Autowired
+    private JobLockRepository jobLockRepository;
+
+    @Value("${campaigns.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${campaigns.max-credits-per-second:1000}")
+    private int maxCreditsPerSecond;
+
+    @Value("${campaigns.threads:2}")
+    private int threads;
+
+    private ExecutorService runners;
+    // Campaigns running on this node
+    private final Set<String> active = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        runners = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "campaign-runner");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Interrupted runs stay RUNNING and are resumed from their last chunk
+        runners.shutdownNow();
+    }
+
+    public Campaign create(Campaign request) {
+        if (request.getName() == null || request.getName().isBlank()) {
+            throw new IllegalArgumentException("Campaign name is required");
+        }
+        if (request.getPoints() <= 0) {
+            throw new IllegalArgumentException("Campaign points must be positive");
+        }
+        CampaignSegment segment = request.getSegment() != null ? request.getSegment() : new CampaignSegment();
+        if (segment.getFrom() != null && segment.getTo() != null && segment.getTo().isBefore(segment.getFrom())) {
+            throw new IllegalArgumentException("Segment 'to' must not be before 'from'");
+        }
+
+        Campaign campaign = new Campaign();
+        campaign.setName(request.getName().trim());
+        campaign.setDescription(request.getDescription());
+        campaign.setPoints(request.getPoints());
+        campaign.setSegment(segment);
+        campaign.setStatus(Campaign.CREATED);
+        campaign.setCreatedAt(LocalDateTime.now());
+        campaign.setUpdatedAt(campaign.getCreatedAt());
+        return campaignRepository.save(campaign);
+    }
+
+    public Campaign getCampaign(String id) {
+        return campaignRepository.findById(id);
+    }
+
+    public List<Campaign> getCampaigns() {
+        return campaignRepository.findAll();
+    }
+
+    /**
+     * Starts a new campaign or resumes a paused or failed one in the
+     * background. Returns null if there is no such campaign and throws
+     * IllegalStateException if it cannot be started from its current status.
+     */
+    public Campaign start(String id) {
+        Campaign campaign = campaignRepository.findById(id);
+        if (campaign == null) {
+            return null;
+        }
+        if (!campaignRepository.transition(id, List.of(Campaign.CREATED, Campaign.PAUSED, Campaign.FAILED),
+                Campaign.RUNNING)) {
+            throw new IllegalStateException("Campaign is " + campaignRepository.findById(id).getStatus());
+        }
+        submit(id);
+        return campaignRepository.findById(id);
+    }
+
+    // The running chunk finishes first; the campaign stops before the next one
+    public Campaign pause(String id) {
+        Campaign campaign = campaignRepository.findById(id);
+        if (campaign == null) {
+            return null;
+        }
+        if (!campaignRepository.transition(id, List.of(Campaign.RUNNING), Campaign.PAUSED)) {
+            throw new IllegalStateException("Campaign is " + campaign.getStatus());
+        }
+        return campaignRepository.findById(id);
+    }
+
+    // Picks up campaigns left RUNNING by a node that stopped; the lock keeps live runs from starting twice
+    @Scheduled(fixedDelayString = "${campaigns.resume-interval-ms:60000}")
+    public void resumeStalled() {
+        for (Campaign campaign : campaignRepository.findByStatus(Campaign.RUNNING)) {
+            if (!active.contains(campaign.getId())) {
+                submit(campaign.getId());
+            }
+        }
+    }
+
+    private void submit(String id) {
+        if (active.add(id)) {
+            runners.submit(() -> {
+                try {
+                    run(id);
+                } finally {
+                    active.remove(id);
+                }
+            });
+        }
+    }
+
+    private void run(String id) {
+        String lockName = "campaign:" + id;
+        String lockToken = jobLockRepository.tryAcquire(lockName, LOCK_LEASE);
+        if (lockToken == null) {
+            logger.debug("Campaign {} is already running", id);
+            return;
+        }
+        try {
+            Campaign campaign = campaignRepository.findById(id);
+            if (campaign == null || !Campaign.RUNNING.equals(campaign.getStatus())) {
+                return;
+            }
+            logger.info("Running campaign {} ({} points) after user {}", id, campaign.getPoints(),
+                    campaign.getLastUserId());
+            String description = campaign.getDescription() != null ? campaign.getDescription()
+                    : "Bonus points from " + campaign.getName();
+
+            try (Stream<String> userIds = receiptArchiveService.streamSegmentUserIds(campaign.getSegment(),
+                    campaign.getLastUserId(), chunkSize)) {
+                Iterator<String> iterator = userIds.iterator();
+                List<String> chunk = new ArrayList<>(chunkSize);
+                while (iterator.hasNext()) {
+                    chunk.add(iterator.next());
+                    if (chunk.size() < chunkSize && iterator.hasNext()) {
+                        continue;
+                    }
+                    long chunkStarted = System.currentTimeMillis();
+                    PointsLedgerService.BatchResult result = pointsLedgerService.creditBatch(chunk,
+                            campaign.getPoints(), PointTransactionRepository.CAMPAIGN_SOURCE, id, description);
+                    campaignRepository.recordProgress(id, chunk.get(chunk.size() - 1), chunk.size(),
+                            result.getCredited(), result.getSkipped(), result.getFailed());
+                    throttle(chunk.size(), chunkStarted);
+                    chunk.clear();
+
+                    if (!jobLockRepository.extend(lockName, lockToken, LOCK_LEASE)) {
+                        // Another node took the campaign over after the lease ran out; it carries on from the progress
+                        logger.warn("Lost the lock of campaign {}, leaving it to the node that holds it", id);
+                        return;
+                    }
+                    Campaign current = campaignRepository.findById(id);
+                    if (current == null || !Campaign.RUNNING.equals(current.getStatus())) {
+                        logger.info("Campaign {} stopped as {}", id, current != null ? current.getStatus() : "deleted");
+                        return;
+                    }
+                }
+            }
+            campaignRepository.transition(id, List.of(Campaign.RUNNING), Campaign.COMPLETED);
+            logger.info("Campaign {} completed: {}", id, campaignRepository.findById(id));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.info("Campaign {} was interrupted and will be resumed", id);
+        } catch (Exception e) {
+            logger.error("Campaign {} failed", id, e);
+            campaignRepository.markFailed(id, e.getMessage());
+        } finally {
+            jobLockRepository.release(lockName, lockToken);
+        }
+    }
+
+    // Spaces chunks out so credits stay under max-credits-per-second
+    private void throttle(int credits, long chunkStarted) throws InterruptedException {
+        if (maxCreditsPerSecond <= 0) {
+            return;
+        }
+        long minimumMs = credits * 1000L / maxCreditsPerSecond;
+        long remaining = minimumMs - (System.currentTimeMillis() - chunkStarted);
+        if (remaining > 0) {
+            Thread.sleep(remaining);
+        }
+    }
+}
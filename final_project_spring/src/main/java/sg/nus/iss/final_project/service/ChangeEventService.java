@@ -0,0 +1,262 @@
+package sg.nus.iss.final_project.service;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.FullDocumentBeforeChange;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.client.model.changestream.UpdateDescription;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import sg.nus.iss.final_project.model.Budget;
+import sg.nus.iss.final_project.model.Receipt;
+import sg.nus.iss.final_project.model.Reward;
+import sg.nus.iss.final_project.model.UserPoints;
+import sg.nus.iss.final_project.repo.ReceiptRepository;
+
+/**
+ * Pushes receipt, points and budget changes to connected clients over SSE.
+ *
+ * One change stream is opened per collection and events are routed to the
+ * emitters registered for the document's userId, so the number of streams
+ * does not grow with the number of clients. Deletes carry no full document;
+ * they are routed only when the collection has pre-images enabled
+ * (changeStreamPreAndPostImages). Reward changes are not pushed; they only
+ * mark the reward catalog snapshot stale. Time-series collections do not
+ * support change streams, so receipts are not pushed in timeseries storage
+ * mode.
+ */
+@Service
+public class ChangeEventService {
+    private static final Logger logger = LoggerFactory.getLogger(ChangeEventService.class);
+
+    private static final long EMITTER_TIMEOUT_MS = 30 * 60 * 1000L;
+    private static final long MAX_BACKOFF_MS = 60_000L;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ReceiptRepository receiptRepository;
+
+    @Autowired
+    private BudgetCacheService budgetCacheService;
+
+    @Autowired
+    private RewardCatalogService rewardCatalogService;
+
+    @Value("${push.change-streams.enabled:true}")
+    private boolean changeStreamsEnabled;
+
+    private final Map<String, List<SseEmitter>> emittersByUser = new ConcurrentHashMap<>();
+    private final Map<String, MongoChangeStreamCursor<ChangeStreamDocument<Document>>> cursors = new ConcurrentHashMap<>();
+    private ExecutorService watchers;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        if (!changeStreamsEnabled) {
+            logger.info("Change stream push is disabled");
+            return;
+        }
+        running = true;
+        watchers = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "change-stream-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (receiptRepository.isTimeSeriesMode()) {
+            logger.warn("Receipts are stored in a time-series collection, which has no change streams; "
+                    + "receipt events will not be pushed");
+        } else {
+            watchers.submit(() -> watch(receiptRepository.collectionName(), "receipt", Receipt.class));
+        }
+        watchers.submit(() -> watch("userPoints", "points", UserPoints.class));
+        watchers.submit(() -> watch("budgets", "budget", Budget.class));
+        watchers.submit(() -> watch("rewards", "reward", Reward.class));
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        cursors.values().forEach(cursor -> {
+            try {
+                cursor.close();
+            } catch (Exception e) {
+                logger.debug("Error closing change stream cursor", e);
+            }
+        });
+        if (watchers != null) {
+            watchers.shutdownNow();
+        }
+        emittersByUser.values().forEach(emitters -> emitters.forEach(SseEmitter::complete));
+    }
+
+    public SseEmitter subscribe(String userId) {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        List<SseEmitter> emitters = emittersByUser.computeIfAbsent(userId, id -> new CopyOnWriteArrayList<>());
+        emitters.add(emitter);
+
+        Runnable remove = () -> removeEmitter(userId, emitter);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+
+        try {
+            emitter.send(SseEmitter.event().name("connected").data(Map.of("userId", userId)));
+        } catch (IOException e) {
+            removeEmitter(userId, emitter);
+        }
+        logger.debug("SSE subscriber added for user: {}", userId);
+        return emitter;
+    }
+
+    public void publish(String userId, String eventName, Object data) {
+        List<SseEmitter> emitters = emittersByUser.get(userId);
+        if (emitters == null) {
+            return;
+        }
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(SseEmitter.event().name(eventName).data(data));
+            } catch (Exception e) {
+                removeEmitter(userId, emitter);
+            }
+        }
+    }
+
+    // Keeps idle connections open through proxies that drop silent streams
+    @Scheduled(fixedRate = 25_000)
+    public void heartbeat() {
+        emittersByUser.forEach((userId, emitters) -> {
+            for (SseEmitter emitter : emitters) {
+                try {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                } catch (Exception e) {
+                    removeEmitter(userId, emitter);
+                }
+            }
+        });
+    }
+
+    public int subscriberCount() {
+        return emittersByUser.values().stream().mapToInt(List::size).sum();
+    }
+
+    private static boolean isQuantityOnly(ChangeStreamDocument<Document> change) {
+        UpdateDescription description = change.getUpdateDescription();
+        return change.getOperationType() == OperationType.UPDATE && description != null
+                && description.getUpdatedFields() != null
+                && description.getUpdatedFields().keySet().equals(Set.of("quantity"))
+                && (description.getRemovedFields() == null || description.getRemovedFields().isEmpty());
+    }
+
+    private void removeEmitter(String userId, SseEmitter emitter) {
+        List<SseEmitter> emitters = emittersByUser.get(userId);
+        if (emitters != null) {
+            emitters.remove(emitter);
+            if (emitters.isEmpty()) {
+                emittersByUser.remove(userId, emitters);
+            }
+        }
+    }
+
+    private <T> void watch(String collection, String eventPrefix, Class<T> type) {
+        BsonDocument resumeToken = null;
+        long backoff = 1000L;
+
+        while (running) {
+            ChangeStreamIterable<Document> stream = mongoTemplate.getCollection(collection)
+                    .watch(List.of(Aggregates.match(
+                            Filters.in("operationType", "insert", "update", "replace", "delete"))))
+                    .fullDocument(FullDocument.UPDATE_LOOKUP)
+                    .fullDocumentBeforeChange(FullDocumentBeforeChange.WHEN_AVAILABLE);
+            if (resumeToken != null) {
+                stream = stream.resumeAfter(resumeToken);
+            }
+
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = stream.cursor()) {
+                cursors.put(collection, cursor);
+                logger.info("Watching change stream on collection: {}", collection);
+                backoff = 1000L;
+                while (running && cursor.hasNext()) {
+                    ChangeStreamDocument<Document> change = cursor.next();
+                    resumeToken = change.getResumeToken();
+                    dispatch(change, eventPrefix, type);
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    break;
+                }
+                logger.warn("Change stream on {} failed, retrying in {} ms: {}", collection, backoff, e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            } finally {
+                cursors.remove(collection);
+            }
+        }
+    }
+
+    private <T> void dispatch(ChangeStreamDocument<Document> change, String eventPrefix, Class<T> type) {
+        if (type == Reward.class) {
+            // Rewards have no owner to notify; the catalog snapshot picks up writes from any node,
+            // except the quantity changes of every redemption, which it serves as approximate
+            if (!isQuantityOnly(change)) {
+                rewardCatalogService.markStale();
+            }
+            return;
+        }
+        Document document = change.getFullDocument() != null ? change.getFullDocument()
+                : change.getFullDocumentBeforeChange();
+        if (document == null) {
+            return;
+        }
+        Object userId = document.get("userId");
+        if (userId != null && type == Budget.class && document.get("monthYear") != null) {
+            // Budgets may have been written by another node; drop the local cached copy
+            budgetCacheService.evictLocal(userId.toString(), document.get("monthYear").toString());
+        }
+        if (userId == null || !emittersByUser.containsKey(userId.toString())) {
+            return;
+        }
+
+        String operation = change.getOperationType().getValue();
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("operation", operation);
+        payload.put("id", String.valueOf(document.get("_id")));
+        if (change.getFullDocument() != null) {
+            payload.put("document", mongoTemplate.getConverter().read(type, change.getFullDocument()));
+        }
+        publish(userId.toString(), eventPrefix + "." + operation, payload);
+    }
+}
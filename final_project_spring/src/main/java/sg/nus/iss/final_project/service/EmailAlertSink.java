@@ -0,0 +1,68 @@
+package sg.nus.iss.final_project.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Service;
+
+import sg.nus.iss.final_project.model.BudgetAlert;
+import sg.nus.iss.final_project.model.User;
+import sg.nus.iss.final_project.repo.UserRepository;
+
+/**
+ * Emails budget alerts, one message per user per batch. Users are looked up by
+ * Firebase id, which is the userId used on budgets.
+ */
+@Service
+@ConditionalOnProperty(name = "alerts.email.enabled", havingValue = "true")
+public class EmailAlertSink implements AlertSink {
+    private static final Logger logger = LoggerFactory.getLogger(EmailAlertSink.class);
+
+    @Autowired
+    private JavaMailSender mailSender;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${alerts.email.from:no-reply@localhost}")
+    private String from;
+
+    @Override
+    public String getName() {
+        return "email";
+    }
+
+    @Override
+    public void send(List<BudgetAlert> alerts) throws Exception {
+        Map<String, StringBuilder> bodies = new LinkedHashMap<>();
+        for (BudgetAlert alert : alerts) {
+            bodies.computeIfAbsent(alert.getUserId(), id -> new StringBuilder())
+                    .append(String.format("%s (%s): %.2f of %.2f spent, %d%% of budget reached%n",
+                            alert.getCategory(), alert.getMonthYear(), alert.getSpentAmount(),
+                            alert.getBudgetAmount(), alert.getThreshold()));
+        }
+
+        for (Map.Entry<String, StringBuilder> entry : bodies.entrySet()) {
+            Optional<User> user = userRepository.findByFirebaseId(entry.getKey());
+            if (user.isEmpty() || user.get().getEmail() == null) {
+                logger.debug("No email address for user {}, skipping budget alert email", entry.getKey());
+                continue;
+            }
+            SimpleMailMessage message = new SimpleMailMessage();
+            message.setFrom(from);
+            message.setTo(user.get().getEmail());
+            message.setSubject("Budget alert");
+            message.setText(entry.getValue().toString());
+            mailSender.send(message);
+        }
+    }
+}
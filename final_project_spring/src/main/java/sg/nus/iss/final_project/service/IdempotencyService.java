@@ -0,0 +1,116 @@
+package sg.nus.iss.final_project.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import sg.nus.iss.final_project.model.IdempotencyRecord;
+import sg.nus.iss.final_project.repo.IdempotencyRepository;
+
+@Service
+public class IdempotencyService {
+
+    @Autowired
+    private IdempotencyRepository idempotencyRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${idempotency.lease-seconds:60}")
+    private long leaseSeconds;
+
+    public String scopedKey(String userId, String idempotencyKey) {
+        return (userId != null ? userId : "anonymous") + ":" + idempotencyKey.trim();
+    }
+
+    /**
+     * Fingerprint of a request body; map keys are sorted so the same body
+     * sent with its fields in another order hashes the same.
+     */
+    public String fingerprint(Map<String, Object> body) {
+        try {
+            byte[] json = objectMapper.writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+                    .writeValueAsString(body).getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint the request body", e);
+        }
+    }
+
+    /**
+     * Claims the key for the caller. Returns null when the claim succeeded and the
+     * request should be processed, otherwise the record left by the first request.
+     */
+    public IdempotencyRecord begin(String key, String requestHash) {
+        if (idempotencyRepository.insertIfAbsent(new IdempotencyRecord(key, requestHash, leaseUntil()))) {
+            return null;
+        }
+        IdempotencyRecord existing = idempotencyRepository.findById(key);
+        if (existing == null) {
+            // The earlier record expired between the insert and the read, so claim again
+            return idempotencyRepository.insertIfAbsent(new IdempotencyRecord(key, requestHash, leaseUntil())) ? null
+                    : idempotencyRepository.findById(key);
+        }
+        return existing;
+    }
+
+    // False when the key was first used with a different body; records from before hashing match anything
+    public boolean matchesRequest(IdempotencyRecord record, String requestHash) {
+        return record.getRequestHash() == null || Objects.equals(record.getRequestHash(), requestHash);
+    }
+
+    /**
+     * Takes over a record left by an earlier attempt that failed after saving
+     * its receipt, or whose lease ran out. Returns the record, whose receiptId
+     * and step flags say what is left to do, or null if it cannot be taken
+     * over because it is completed or another attempt still holds it.
+     */
+    public IdempotencyRecord resume(IdempotencyRecord existing) {
+        if (existing.isCompleted()) {
+            return null;
+        }
+        return idempotencyRepository.takeOver(existing.getId(), LocalDateTime.now(), Duration.ofSeconds(leaseSeconds));
+    }
+
+    public void saved(String key, String receiptId) {
+        idempotencyRepository.markSaved(key, receiptId, leaseUntil());
+    }
+
+    public void budgetApplied(String key) {
+        idempotencyRepository.markStep(key, "budgetApplied", leaseUntil());
+    }
+
+    public void rollupsApplied(String key) {
+        idempotencyRepository.markStep(key, "rollupsApplied", leaseUntil());
+    }
+
+    // The receipt is saved, so a retry must finish it rather than start over
+    public void interrupt(String key) {
+        idempotencyRepository.markInterrupted(key);
+    }
+
+    public void complete(String key, String receiptId, int pointsAwarded, boolean pointsPending) {
+        idempotencyRepository.markCompleted(key, receiptId, pointsAwarded, pointsPending);
+    }
+
+    public void release(String key) {
+        idempotencyRepository.deleteById(key);
+    }
+
+    private LocalDateTime leaseUntil() {
+        return LocalDateTime.now().plusSeconds(leaseSeconds);
+    }
+}
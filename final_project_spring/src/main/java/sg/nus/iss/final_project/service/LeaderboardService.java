@@ -0,0 +1,422 @@
+package sg.nus.iss.final_project.service;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import sg.nus.iss.final_project.Util.RankedSkipList;
+import sg.nus.iss.final_project.model.LeaderboardEntry;
+import sg.nus.iss.final_project.model.LeaderboardScore;
+import sg.nus.iss.final_project.model.PointTransaction;
+import sg.nus.iss.final_project.repo.JobLockRepository;
+import sg.nus.iss.final_project.repo.LeaderboardRepository;
+import sg.nus.iss.final_project.repo.PointTransactionRepository;
+
+/**
+ * All-time and weekly leaderboards of points earned. Every credit to the
+ * points ledger increments the user's score on both boards, so top-N and a
+ * user's rank are answered from a sorted structure instead of sorting
+ * userPoints.
+ *
+ * With leaderboard.redis.enabled the boards are Redis sorted sets shared by
+ * all nodes. Otherwise each node keeps them in a {@link RankedSkipList},
+ * writes its increments to leaderboardScores periodically and reloads the
+ * boards from there, so nodes see each other's credits after a reload.
+ *
+ * Boards that were never stored are rebuilt from the ledger by the scheduled
+ * reload rather than at startup, by one node at a time via the jobLocks
+ * collection; the other nodes load the result on a later reload. A rebuild
+ * counts credits before a cutoff a little in the future and announces it in
+ * leaderboardRebuilds first. Nodes learn it on their next flush and keep
+ * later increments apart. Once the rebuilt boards are stored they drop the
+ * increments before the cutoff, which the ledger already counted, and write
+ * only the later ones on top.
+ *
+ * Refunds of failed redemptions are credits but not earnings, so they are
+ * not scored.
+ */
+@Service
+public class LeaderboardService {
+    private static final Logger logger = LoggerFactory.getLogger(LeaderboardService.class);
+
+    public static final String ALL_TIME = "all";
+    private static final String REDIS_PREFIX = "leaderboard:";
+    private static final int WEEKS_KEPT = 8;
+    private static final String REBUILD_LOCK = "leaderboard-rebuild";
+    // Covers the two ledger aggregations of a rebuild, which cannot extend the lease midway
+    private static final Duration REBUILD_LEASE = Duration.ofMinutes(30);
+
+    @Autowired
+    private LeaderboardRepository leaderboardRepository;
+
+    @Autowired
+    private PointTransactionRepository pointTransactionRepository;
+
+    @Autowired
+    private ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+
+    @Autowired
+    private JobLockRepository jobLockRepository;
+
+    @Value("${leaderboard.redis.enabled:false}")
+    private boolean redisEnabled;
+
+    @Value("${leaderboard.max-size:100}")
+    private int maxSize;
+
+    @Value("${leaderboard.flush-interval-ms:10000}")
+    private long flushIntervalMs;
+
+    private volatile RankedSkipList allTime = new RankedSkipList();
+    private volatile RankedSkipList weekly = new RankedSkipList();
+    private volatile String weekBoard = weekBoard(LocalDate.now());
+
+    // Increments not yet written to leaderboardScores, per board; guarded by itself
+    private final Map<String, Map<String, Long>> pending = new HashMap<>();
+    // While a rebuild is announced, increments for credits at or after its cutoff; guarded by pending
+    private final Map<String, Map<String, Long>> pendingAfterCutoff = new HashMap<>();
+    private LocalDateTime rebuildCutoff;
+
+    @PostConstruct
+    public void init() {
+        if (redis() != null) {
+            logger.info("Leaderboards are kept in Redis");
+            return;
+        }
+        try {
+            if (leaderboardRepository.hasBoard(ALL_TIME)) {
+                reload();
+            }
+        } catch (Exception e) {
+            // Scores are still counted from now on and written on the next flush
+            logger.error("Failed to load leaderboards, starting empty", e);
+        }
+    }
+
+    public static String weekBoard(LocalDate date) {
+        return String.format("week:%d-W%02d", date.get(IsoFields.WEEK_BASED_YEAR),
+                date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+    }
+
+    // Called for every credit to the ledger
+    public void recordEarned(PointTransaction event) {
+        long points = event.getPoints();
+        if (points <= 0 || !PointTransaction.EARNED.equals(event.getTransactionType())
+                || PointTransaction.REWARD_REFUND.equals(event.getSource())) {
+            return;
+        }
+        String userId = event.getUserId();
+        String week = currentWeekBoard();
+        StringRedisTemplate redis = redis();
+        if (redis != null) {
+            try {
+                redis.opsForZSet().incrementScore(REDIS_PREFIX + ALL_TIME, userId, points);
+                redis.opsForZSet().incrementScore(REDIS_PREFIX + week, userId, points);
+                redis.expire(REDIS_PREFIX + week, Duration.ofDays(7L * WEEKS_KEPT));
+            } catch (Exception e) {
+                logger.warn("Failed to update leaderboard for {} in Redis: {}", userId, e.getMessage());
+            }
+            return;
+        }
+        // Under the same lock as a reload, so an increment lands either in the loaded board or in pending
+        synchronized (pending) {
+            allTime.increment(userId, points);
+            weekly.increment(userId, points);
+            boolean afterCutoff = rebuildCutoff != null && event.getTransactionDate() != null
+                    && !event.getTransactionDate().isBefore(rebuildCutoff);
+            Map<String, Map<String, Long>> target = afterCutoff ? pendingAfterCutoff : pending;
+            target.computeIfAbsent(ALL_TIME, b -> new HashMap<>()).merge(userId, points, Long::sum);
+            target.computeIfAbsent(week, b -> new HashMap<>()).merge(userId, points, Long::sum);
+        }
+    }
+
+    public List<LeaderboardEntry> getTop(boolean weeklyBoard, int limit) {
+        int n = Math.max(1, Math.min(limit, maxSize));
+        String board = weeklyBoard ? currentWeekBoard() : ALL_TIME;
+        List<LeaderboardEntry> entries = new ArrayList<>(n);
+        StringRedisTemplate redis = redis();
+        if (redis != null) {
+            Set<ZSetOperations.TypedTuple<String>> top = redis.opsForZSet()
+                    .reverseRangeWithScores(REDIS_PREFIX + board, 0, n - 1);
+            if (top != null) {
+                for (ZSetOperations.TypedTuple<String> tuple : top) {
+                    long points = tuple.getScore() != null ? tuple.getScore().longValue() : 0;
+                    entries.add(new LeaderboardEntry(tuple.getValue(), points, entries.size() + 1));
+                }
+            }
+            return entries;
+        }
+        for (Map.Entry<String, Long> entry : (weeklyBoard ? weekly : allTime).top(n)) {
+            entries.add(new LeaderboardEntry(entry.getKey(), entry.getValue(), entries.size() + 1));
+        }
+        return entries;
+    }
+
+    public LeaderboardEntry getUserEntry(String userId, boolean weeklyBoard) {
+        String board = weeklyBoard ? currentWeekBoard() : ALL_TIME;
+        StringRedisTemplate redis = redis();
+        if (redis != null) {
+            Long rank = redis.opsForZSet().reverseRank(REDIS_PREFIX + board, userId);
+            Double score = redis.opsForZSet().score(REDIS_PREFIX + board, userId);
+            return new LeaderboardEntry(userId, score != null ? score.longValue() : 0,
+                    rank != null ? rank.intValue() + 1 : 0);
+        }
+        RankedSkipList list = weeklyBoard ? weekly : allTime;
+        Long score = list.score(userId);
+        return new LeaderboardEntry(userId, score != null ? score : 0, list.rank(userId));
+    }
+
+    @Scheduled(fixedDelayString = "${leaderboard.flush-interval-ms:10000}")
+    public synchronized void flush() {
+        if (redis() != null) {
+            return;
+        }
+        Document rebuild;
+        try {
+            rebuild = leaderboardRepository.findRebuild();
+        } catch (Exception e) {
+            // Without knowing whether a rebuild is running, increments could be counted twice
+            logger.warn("Failed to read the leaderboard rebuild state, not flushing: {}", e.getMessage());
+            return;
+        }
+        Map<String, Map<String, Long>> batch;
+        synchronized (pending) {
+            followRebuild(rebuild);
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new HashMap<>(pending);
+            pending.clear();
+        }
+        for (Map.Entry<String, Map<String, Long>> board : batch.entrySet()) {
+            try {
+                leaderboardRepository.incrementScores(board.getKey(), board.getValue());
+            } catch (Exception e) {
+                logger.warn("Failed to write leaderboard {}, keeping {} scores for the next flush: {}",
+                        board.getKey(), board.getValue().size(), e.getMessage());
+                synchronized (pending) {
+                    Map<String, Long> retry = pending.computeIfAbsent(board.getKey(), b -> new HashMap<>());
+                    board.getValue().forEach((userId, points) -> retry.merge(userId, points, Long::sum));
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the announced rebuild to the pending increments; the caller
+     * holds the pending lock. While it runs, increments at or after its cutoff
+     * are kept apart. Once it is done, those before the cutoff are dropped,
+     * since the rebuilt boards count them, and the later ones become pending.
+     * With no rebuild running everything is pending again.
+     */
+    private void followRebuild(Document rebuild) {
+        LocalDateTime cutoff = rebuild != null && rebuild.getDate("cutoff") != null
+                ? LocalDateTime.ofInstant(rebuild.getDate("cutoff").toInstant(), ZoneId.systemDefault())
+                : null;
+        boolean done = rebuild != null && rebuild.getBoolean("done", false);
+        if (cutoff != null && !done) {
+            rebuildCutoff = cutoff;
+            return;
+        }
+        if (cutoff != null && cutoff.equals(rebuildCutoff)) {
+            pending.clear();
+        }
+        pendingAfterCutoff.forEach((board, scores) -> {
+            Map<String, Long> target = pending.computeIfAbsent(board, b -> new HashMap<>());
+            scores.forEach((userId, points) -> target.merge(userId, points, Long::sum));
+        });
+        pendingAfterCutoff.clear();
+        rebuildCutoff = null;
+    }
+
+    // Picks up credits made on other nodes and drops weekly boards that are no longer shown
+    @Scheduled(fixedDelayString = "${leaderboard.reload-interval-ms:300000}")
+    public void scheduledReload() {
+        if (redis() != null) {
+            return;
+        }
+        try {
+            if (!leaderboardRepository.hasBoard(ALL_TIME) && rebuild() != null) {
+                return;
+            }
+            reload();
+            leaderboardRepository.deleteWeeklyBoardsBefore(weekBoard(LocalDate.now().minusWeeks(WEEKS_KEPT)));
+        } catch (Exception e) {
+            logger.warn("Failed to reload leaderboards: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Recomputes both boards from the points ledger and replaces the stored
+     * ones, e.g. after the first deployment or to repair drift. Returns null
+     * without doing anything while a rebuild is running, on this node or another.
+     */
+    public Map<String, Object> rebuild() {
+        String lockToken = jobLockRepository.tryAcquire(REBUILD_LOCK, REBUILD_LEASE);
+        if (lockToken == null) {
+            return null;
+        }
+        try {
+            return redis() != null ? rebuildInRedis() : rebuildBoards();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Leaderboard rebuild was interrupted", e);
+        } finally {
+            jobLockRepository.release(REBUILD_LOCK, lockToken);
+        }
+    }
+
+    private Map<String, Object> rebuildInRedis() {
+        String week = weekBoard(LocalDate.now());
+        Map<String, Long> allTimeScores = pointTransactionRepository.sumEarnedByUser(null, null);
+        Map<String, Long> weeklyScores = pointTransactionRepository.sumEarnedByUser(
+                LocalDate.now().with(DayOfWeek.MONDAY).atStartOfDay(), null);
+        StringRedisTemplate redis = redis();
+        replaceInRedis(redis, REDIS_PREFIX + ALL_TIME, allTimeScores);
+        replaceInRedis(redis, REDIS_PREFIX + week, weeklyScores);
+        redis.expire(REDIS_PREFIX + week, Duration.ofDays(7L * WEEKS_KEPT));
+        return rebuildResult(allTimeScores, weeklyScores, week);
+    }
+
+    /**
+     * Counts credits before a cutoff two flush intervals ahead, so every node
+     * has seen the announcement and keeps later increments apart before any
+     * of them are made, and replaces the stored boards. Increments this node
+     * made at or after the cutoff are applied on top of the new boards.
+     */
+    private Map<String, Object> rebuildBoards() throws InterruptedException {
+        LocalDateTime cutoff = LocalDateTime.now().plus(Duration.ofMillis(2 * flushIntervalMs))
+                .truncatedTo(ChronoUnit.SECONDS);
+        leaderboardRepository.startRebuild(cutoff);
+        synchronized (pending) {
+            rebuildCutoff = cutoff;
+        }
+        boolean finished = false;
+        try {
+            Thread.sleep(Math.max(0, Duration.between(LocalDateTime.now(), cutoff).toMillis()));
+            LocalDate day = cutoff.toLocalDate();
+            String week = weekBoard(day);
+            Map<String, Long> allTimeScores = pointTransactionRepository.sumEarnedByUser(null, cutoff);
+            Map<String, Long> weeklyScores = pointTransactionRepository.sumEarnedByUser(
+                    day.with(DayOfWeek.MONDAY).atStartOfDay(), cutoff);
+
+            leaderboardRepository.replaceBoard(ALL_TIME, allTimeScores);
+            leaderboardRepository.replaceBoard(week, weeklyScores);
+            leaderboardRepository.finishRebuild();
+            finished = true;
+            synchronized (pending) {
+                followRebuild(leaderboardRepository.findRebuild());
+                RankedSkipList rebuiltAllTime = toList(allTimeScores);
+                RankedSkipList rebuiltWeekly = toList(weeklyScores);
+                pending.getOrDefault(ALL_TIME, Map.of()).forEach(rebuiltAllTime::increment);
+                pending.getOrDefault(week, Map.of()).forEach(rebuiltWeekly::increment);
+                allTime = rebuiltAllTime;
+                weekly = rebuiltWeekly;
+                weekBoard = week;
+            }
+            return rebuildResult(allTimeScores, weeklyScores, week);
+        } finally {
+            if (!finished) {
+                // Nodes write the increments they held back on their next flush
+                leaderboardRepository.abortRebuild();
+                synchronized (pending) {
+                    followRebuild(null);
+                }
+            }
+        }
+    }
+
+    private Map<String, Object> rebuildResult(Map<String, Long> allTimeScores, Map<String, Long> weeklyScores,
+            String week) {
+        logger.info("Rebuilt leaderboards: {} users all time, {} this week", allTimeScores.size(),
+                weeklyScores.size());
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("allTimeUsers", allTimeScores.size());
+        result.put("weeklyUsers", weeklyScores.size());
+        result.put("week", week);
+        return result;
+    }
+
+    private synchronized void reload() {
+        flush();
+        String week = weekBoard(LocalDate.now());
+        RankedSkipList loadedAllTime = load(ALL_TIME);
+        RankedSkipList loadedWeekly = load(week);
+        // Credits recorded while loading were not flushed yet and are missing from the loaded boards
+        synchronized (pending) {
+            for (Map<String, Map<String, Long>> unflushed : List.of(pending, pendingAfterCutoff)) {
+                unflushed.getOrDefault(ALL_TIME, Map.of()).forEach(loadedAllTime::increment);
+                unflushed.getOrDefault(week, Map.of()).forEach(loadedWeekly::increment);
+            }
+            allTime = loadedAllTime;
+            weekly = loadedWeekly;
+            weekBoard = week;
+        }
+    }
+
+    private RankedSkipList load(String board) {
+        RankedSkipList list = new RankedSkipList();
+        try (Stream<LeaderboardScore> scores = leaderboardRepository.streamBoard(board)) {
+            scores.forEach(score -> list.set(score.getUserId(), score.getScore()));
+        }
+        return list;
+    }
+
+    // Starts an empty weekly board when the week changes
+    private String currentWeekBoard() {
+        String week = weekBoard(LocalDate.now());
+        if (!week.equals(weekBoard)) {
+            synchronized (pending) {
+                if (!week.equals(weekBoard)) {
+                    weekly = new RankedSkipList();
+                    weekBoard = week;
+                }
+            }
+        }
+        return week;
+    }
+
+    private void replaceInRedis(StringRedisTemplate redis, String key, Map<String, Long> scores) {
+        redis.delete(key);
+        if (scores.isEmpty()) {
+            return;
+        }
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+        scores.forEach((userId, points) -> tuples.add(ZSetOperations.TypedTuple.of(userId, points.doubleValue())));
+        redis.opsForZSet().add(key, tuples);
+    }
+
+    private RankedSkipList toList(Map<String, Long> scores) {
+        RankedSkipList list = new RankedSkipList();
+        scores.forEach(list::set);
+        return list;
+    }
+
+    private StringRedisTemplate redis() {
+        return redisEnabled ? redisTemplateProvider.getIfAvailable() : null;
+    }
+}
@@ -27,9 +27,18 @@ import com.google.cloud.vision.v1.ImageAnnotatorClient;
 import com.google.cloud.vision.v1.ImageAnnotatorSettings;
 import com.google.protobuf.ByteString;
 
+import sg.nus.iss.final_project.Util.DateRecognizer;
+
 @Service
 public class OcrService {
 
+    private static final Pattern DATE_LINE_PATTERN = Pattern
+            .compile("(?i)\\b(date|date of purchase|txn date)\\s*:?\\s*(\\d{1,2}[/.-]\\d{1,2}[/.-]\\d{2,4})");
+    private static final Pattern DAY_FIRST_DATE_PATTERN = Pattern
+            .compile("(?<!\\d)(\\d{1,2}[/.-]\\d{1,2}[/.-]\\d{2,4})(?!\\d)");
+    private static final Pattern YEAR_FIRST_DATE_PATTERN = Pattern
+            .compile("(?<!\\d)(\\d{4}[/.-]\\d{1,2}[/.-]\\d{1,2})(?!\\d)");
+
     @Autowired
     private ImageAnnotatorSettings imageAnnotatorSettings;
 
@@ -231,27 +240,29 @@ public class OcrService {
             return "Unknown Date";
         }
 
-        Pattern dateLinePattern = Pattern
-                .compile("(?i)\\b(date|date of purchase|txn date)\\s*:?\\s*(\\d{1,2}[/.-]\\d{1,2}[/.-]\\d{2,4})");
-        Matcher dateLineMatcher = dateLinePattern.matcher(text);
-        if (dateLineMatcher.find()) {
-            return dateLineMatcher.group(2);
+        // Candidates are checked with DateRecognizer so that phone numbers and
+        // invoice fragments shaped like dates (e.g. 45/67/89) are skipped
+        Matcher dateLineMatcher = DATE_LINE_PATTERN.matcher(text);
+        while (dateLineMatcher.find()) {
+            if (DateRecognizer.isDate(dateLineMatcher.group(2))) {
+                return dateLineMatcher.group(2);
+            }
         }
 
         // Look for common date formats
-        Pattern pattern = Pattern.compile("(\\d{1,2}[/.-]\\d{1,2}[/.-]\\d{2,4})");
-        Matcher matcher = pattern.matcher(text);
-
-        if (matcher.find()) {
-            return matcher.group(1);
+        Matcher matcher = DAY_FIRST_DATE_PATTERN.matcher(text);
+        while (matcher.find()) {
+            if (DateRecognizer.isDate(matcher.group(1))) {
+                return matcher.group(1);
+            }
         }
 
         // Try another common format (yyyy-mm-dd)
-        Pattern pattern2 = Pattern.compile("(\\d{4}[/.-]\\d{1,2}[/.-]\\d{1,2})");
-        Matcher matcher2 = pattern2.matcher(text);
-
-        if (matcher2.find()) {
-            return matcher2.group(1);
+        Matcher matcher2 = YEAR_FIRST_DATE_PATTERN.matcher(text);
+        while (matcher2.find()) {
+            if (DateRecognizer.isDate(matcher2.group(1))) {
+                return matcher2.group(1);
+            }
         }
 
         return "Unknown Date";
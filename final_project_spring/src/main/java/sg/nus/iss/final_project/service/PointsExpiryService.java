@@ -0,0 +1,276 @@
+package sg.nus.iss.final_project.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import sg.nus.iss.final_project.model.PointTransaction;
+import sg.nus.iss.final_project.repo.JobLockRepository;
+import sg.nus.iss.final_project.repo.PointTransactionRepository;
+
+/**
+ * Expires points whose lots have passed their expiry date. Lots carry a hash
+ * bucket of their user, and the buckets are split into contiguous ranges,
+ * one per partition. On every tick a node takes the partitions it can lock
+ * through jobLocks, in random order so the nodes spread over them, and walks
+ * each partition's lots in order of expiry from a checkpoint, expiring the
+ * users of every page through one batched ledger write. A run reads at most
+ * points.expiry.max-lots-per-run lots on a node; what is left is picked up
+ * by the next tick.
+ *
+ * Expiring a user is idempotent, since it only removes expired points that
+ * are still available, so a page is simply read again after a crash. For the
+ * same reason a checkpoint written under a different points.expiry.months is
+ * dropped and the partition is walked again from its first lot, so lots
+ * stamped under the new setting cannot end up behind the old position.
+ */
+@Service
+public class PointsExpiryService {
+    private static final Logger logger = LoggerFactory.getLogger(PointsExpiryService.class);
+
+    private static final String CHECKPOINT_COLLECTION = "migrationCheckpoints";
+    private static final Duration LOCK_LEASE = Duration.ofMinutes(5);
+
+    @Autowired
+    private PointTransactionRepository pointTransactionRepository;
+
+    @Autowired
+    private PointsLedgerService pointsLedgerService;
+
+    @Autowired
+    private JobLockRepository jobLockRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${points.expiry.months:12}")
+    private int expiryMonths;
+
+    @Value("${points.expiry.partitions:8}")
+    private int partitionCount;
+
+    @Value("${points.expiry.batch-size:200}")
+    private int batchSize;
+
+    @Value("${points.expiry.max-lots-per-run:5000}")
+    private int maxLotsPerRun;
+
+    // Totals since this node started
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong partitionsSwept = new AtomicLong();
+    private final AtomicLong lotsScanned = new AtomicLong();
+    private final AtomicLong usersExpired = new AtomicLong();
+    private final AtomicLong pointsExpired = new AtomicLong();
+    private final AtomicLong usersFailed = new AtomicLong();
+    private volatile Map<String, Object> lastRun = Map.of();
+
+    @Scheduled(fixedDelayString = "${points.expiry.sweep-interval-ms:300000}")
+    public void scheduledSweep() {
+        if (expiryMonths <= 0) {
+            return;
+        }
+        try {
+            sweep();
+        } catch (Exception e) {
+            logger.error("Points expiry sweep failed", e);
+        }
+    }
+
+    public synchronized Map<String, Object> sweep() {
+        long started = System.currentTimeMillis();
+        LocalDateTime asOf = LocalDateTime.now();
+        int partitions = partitions();
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order);
+
+        SweepStats total = new SweepStats();
+        for (int partition : order) {
+            int budget = maxLotsPerRun - (int) total.lotsScanned;
+            if (budget <= 0) {
+                break;
+            }
+            String lockName = "points-expiry:" + partition;
+            String lockToken = jobLockRepository.tryAcquire(lockName, LOCK_LEASE);
+            if (lockToken == null) {
+                continue;
+            }
+            try {
+                total.add(sweepPartition(partition, partitions, asOf, budget, lockName, lockToken));
+                total.partitions++;
+            } catch (Exception e) {
+                logger.error("Points expiry partition {} failed", partition, e);
+            } finally {
+                jobLockRepository.release(lockName, lockToken);
+            }
+        }
+
+        long elapsed = System.currentTimeMillis() - started;
+        runs.incrementAndGet();
+        partitionsSwept.addAndGet(total.partitions);
+        lotsScanned.addAndGet(total.lotsScanned);
+        usersExpired.addAndGet(total.usersExpired);
+        pointsExpired.addAndGet(total.pointsExpired);
+        usersFailed.addAndGet(total.usersFailed);
+        if (total.usersExpired > 0 || total.usersFailed > 0) {
+            logger.info("Expired {} points of {} users from {} lots in {} partitions, {} users failed in {} ms",
+                    total.pointsExpired, total.usersExpired, total.lotsScanned, total.partitions,
+                    total.usersFailed, elapsed);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("asOf", asOf);
+        result.put("partitions", total.partitions);
+        result.put("lotsScanned", total.lotsScanned);
+        result.put("usersExpired", total.usersExpired);
+        result.put("pointsExpired", total.pointsExpired);
+        result.put("usersFailed", total.usersFailed);
+        result.put("budgetExhausted", total.lotsScanned >= maxLotsPerRun);
+        result.put("elapsedMs", elapsed);
+        lastRun = result;
+        return result;
+    }
+
+    // Totals of this node, the last run and how far each partition's checkpoint trails now
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("enabled", expiryMonths > 0);
+        metrics.put("runs", runs.get());
+        metrics.put("partitionsSwept", partitionsSwept.get());
+        metrics.put("lotsScanned", lotsScanned.get());
+        metrics.put("usersExpired", usersExpired.get());
+        metrics.put("pointsExpired", pointsExpired.get());
+        metrics.put("usersFailed", usersFailed.get());
+        metrics.put("lastRun", lastRun);
+
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, Object> lagSeconds = new HashMap<>();
+        String prefix = checkpointPrefix(partitions());
+        Query query = new Query(Criteria.where("_id").regex("^" + prefix));
+        for (Document checkpoint : mongoTemplate.find(query, Document.class, CHECKPOINT_COLLECTION)) {
+            LocalDateTime sweptUntil = toLocalDateTime(checkpoint.getDate("sweptUntil"));
+            if (sweptUntil != null) {
+                lagSeconds.put(checkpoint.getString("_id").substring(prefix.length()),
+                        Math.max(0, Duration.between(sweptUntil, now).toSeconds()));
+            }
+        }
+        metrics.put("partitionLagSeconds", lagSeconds);
+        return metrics;
+    }
+
+    private SweepStats sweepPartition(int partition, int partitions, LocalDateTime asOf, int budget,
+            String lockName, String lockToken) {
+        int bucketFrom = partition * PointTransactionRepository.EXPIRY_BUCKETS / partitions;
+        int bucketTo = (partition + 1) * PointTransactionRepository.EXPIRY_BUCKETS / partitions;
+        // The checkpoint is tied to the partition count, since changing it reshuffles the bucket ranges
+        String checkpointId = checkpointPrefix(partitions) + partition;
+        Document checkpoint = mongoTemplate.findById(checkpointId, Document.class, CHECKPOINT_COLLECTION);
+        if (checkpoint != null && checkpoint.getInteger("expiryMonths", 0) != expiryMonths) {
+            logger.info("Points expiry settings changed, sweeping partition {} from the start", partition);
+            checkpoint = null;
+        }
+        LocalDateTime afterExpiresAt = checkpoint != null ? toLocalDateTime(checkpoint.getDate("lastExpiresAt"))
+                : null;
+        String afterId = checkpoint != null ? checkpoint.getString("lastLotId") : null;
+
+        SweepStats stats = new SweepStats();
+        while (stats.lotsScanned < budget) {
+            int limit = (int) Math.min(batchSize, budget - stats.lotsScanned);
+            List<PointTransaction> lots = pointTransactionRepository.findExpiringLots(bucketFrom, bucketTo,
+                    afterExpiresAt, afterId, asOf, limit);
+            if (lots.isEmpty()) {
+                saveCheckpoint(checkpointId, afterExpiresAt, afterId, asOf);
+                break;
+            }
+            stats.lotsScanned += lots.size();
+
+            Set<String> userIds = new LinkedHashSet<>();
+            for (PointTransaction lot : lots) {
+                userIds.add(lot.getUserId());
+            }
+            PointsLedgerService.BatchResult result = pointsLedgerService.expireBatch(new ArrayList<>(userIds), asOf);
+            stats.usersExpired += result.getCredited();
+            stats.pointsExpired += result.getPoints();
+            stats.usersFailed += result.getFailed();
+            if (result.getFailed() > 0) {
+                // Keep the checkpoint before this page so the failed users are tried again next run
+                break;
+            }
+
+            PointTransaction last = lots.get(lots.size() - 1);
+            afterExpiresAt = last.getExpiresAt();
+            afterId = last.getId();
+            // Caught up when the page is short; otherwise only lots up to the last one are done
+            boolean caughtUp = lots.size() < limit;
+            saveCheckpoint(checkpointId, afterExpiresAt, afterId, caughtUp ? asOf : afterExpiresAt);
+            if (caughtUp) {
+                break;
+            }
+            if (!jobLockRepository.extend(lockName, lockToken, LOCK_LEASE)) {
+                throw new IllegalStateException("Lost the points expiry lock of partition " + partition);
+            }
+        }
+        return stats;
+    }
+
+    private void saveCheckpoint(String checkpointId, LocalDateTime lastExpiresAt, String lastLotId,
+            LocalDateTime sweptUntil) {
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(checkpointId)),
+                new Update().set("lastExpiresAt", lastExpiresAt).set("lastLotId", lastLotId)
+                        .set("sweptUntil", sweptUntil).set("expiryMonths", expiryMonths)
+                        .set("updatedAt", LocalDateTime.now()),
+                CHECKPOINT_COLLECTION);
+    }
+
+    private int partitions() {
+        return Math.max(1, Math.min(partitionCount, PointTransactionRepository.EXPIRY_BUCKETS));
+    }
+
+    private static String checkpointPrefix(int partitions) {
+        return "points-expiry:" + partitions + ":";
+    }
+
+    private static LocalDateTime toLocalDateTime(Date date) {
+        return date != null ? LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault()) : null;
+    }
+
+    private static class SweepStats {
+        long partitions;
+        long lotsScanned;
+        long usersExpired;
+        long pointsExpired;
+        long usersFailed;
+
+        void add(SweepStats other) {
+            partitions += other.partitions;
+            lotsScanned += other.lotsScanned;
+            usersExpired += other.usersExpired;
+            pointsExpired += other.pointsExpired;
+            usersFailed += other.usersFailed;
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package sg.nus.iss.final_project.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import sg.nus.iss.final_project.model.PointTransaction;
+import sg.nus.iss.final_project.model.UserPoints;
+import sg.nus.iss.final_project.repo.JobLockRepository;
+import sg.nus.iss.final_project.repo.PendingCreditRepository;
+import sg.nus.iss.final_project.repo.PointTransactionRepository;
+import sg.nus.iss.final_project.repo.UserPointsRepository;
+
+/**
+ * Keeps points as an append-only ledger in pointTransactions. Every event of a
+ * user has the next sequence number, and the unique index on (userId,
+ * sequence) lets only one of two concurrent writers append it; the other
+ * re-reads and tries again, so a debit is always checked against the balance
+ * it is appended after. The userPoints document is a snapshot of the balance,
+ * refreshed every few events, and a balance is read as that snapshot plus the
+ * events after it.
+ *
+ * With points.expiry.months set, every credit is a lot that expires that many
+ * months after it was earned. Spending uses up the lots that expire first, so
+ * the points of a user that have expired by some time are the points of the
+ * lots expired by then minus everything spent or expired so far; expiring
+ * them appends an EXPIRED event. Points earned before expiry was turned on
+ * never expire and are treated as spent last.
+ */
+@Service
+public class PointsLedgerService {
+    private static final Logger logger = LoggerFactory.getLogger(PointsLedgerService.class);
+
+    public static final String OPENING_BALANCE = "OPENING_BALANCE";
+    public static final String EXPIRY = "EXPIRY";
+
+    private static final int MAX_APPEND_ATTEMPTS = 10;
+    private static final String CREDIT_RETRY_LOCK = "points-credit-retry";
+    private static final Duration CREDIT_RETRY_LEASE = Duration.ofMinutes(5);
+    private static final int CREDIT_RETRY_BATCH = 100;
+
+    @Autowired
+    private PointTransactionRepository pointTransactionRepository;
+
+    @Autowired
+    private UserPointsRepository userPointsRepository;
+
+    @Autowired
+    private LeaderboardService leaderboardService;
+
+    @Autowired
+    private PendingCreditRepository pendingCreditRepository;
+
+    @Autowired
+    private JobLockRepository jobLockRepository;
+
+    @Value("${points.ledger.snapshot-every:50}")
+    private int snapshotEvery;
+
+    @Value("${points.expiry.months:12}")
+    private int expiryMonths;
+
+    @Value("${points.ledger.credit-retry.max-attempts:10}")
+    private int creditRetryMaxAttempts;
+
+    public UserPoints getBalance(String userId) {
+        return load(userId);
+    }
+
+    // Empty when the user has neither a snapshot nor any ledger events
+    public Optional<UserPoints> findBalance(String userId) {
+        UserPoints balance = load(userId);
+        return balance.getId() == null && balance.getSequence() == 0 ? Optional.empty() : Optional.of(balance);
+    }
+
+    public PointTransaction credit(String userId, int points, String source, String referenceId,
+            String description) {
+        return append(new PointTransaction(userId, points, PointTransaction.EARNED, source, referenceId,
+                description), false, false);
+    }
+
+    // Like credit, but returns null without appending if the user already has a credit with this source and reference
+    public PointTransaction creditOnce(String userId, int points, String source, String referenceId,
+            String description) {
+        return append(new PointTransaction(userId, points, PointTransaction.EARNED, source, referenceId,
+                description), false, true);
+    }
+
+    /**
+     * Like creditOnce, but a ledger that cannot take the credit now, e.g.
+     * because it stayed contended for every attempt, does not fail the caller:
+     * the credit is stored in pendingCredits for retryPendingCredits, and the
+     * event it will become is returned without an id. Only throws if the
+     * credit could not be stored either.
+     */
+    public PointTransaction creditOnceOrDefer(String userId, int points, String source, String referenceId,
+            String description) {
+        try {
+            return creditOnce(userId, points, source, referenceId, description);
+        } catch (RuntimeException e) {
+            logger.warn("Deferring {} points to {} for {}: {}", points, userId, referenceId, e.getMessage());
+            pendingCreditRepository.defer(userId, points, source, referenceId, description);
+            return new PointTransaction(userId, points, PointTransaction.EARNED, source, referenceId, description);
+        }
+    }
+
+    // Appends credits deferred by creditOnceOrDefer; one node at a time via the jobLocks collection
+    @Scheduled(fixedDelayString = "${points.ledger.credit-retry-interval-ms:30000}")
+    public void retryPendingCredits() {
+        String lockToken = jobLockRepository.tryAcquire(CREDIT_RETRY_LOCK, CREDIT_RETRY_LEASE);
+        if (lockToken == null) {
+            return;
+        }
+        try {
+            for (Document pending : pendingCreditRepository.findDue(new Date(), creditRetryMaxAttempts,
+                    CREDIT_RETRY_BATCH)) {
+                String id = pending.getString("_id");
+                try {
+                    creditOnce(pending.getString("userId"), pending.getInteger("points"),
+                            pending.getString("source"), pending.getString("referenceId"),
+                            pending.getString("description"));
+                    pendingCreditRepository.delete(id);
+                } catch (RuntimeException e) {
+                    int attempts = pending.getInteger("attempts", 0) + 1;
+                    if (attempts >= creditRetryMaxAttempts) {
+                        logger.error("Giving up on deferred credit {} after {} attempts: {}", id, attempts,
+                                e.getMessage());
+                    } else {
+                        logger.warn("Deferred credit {} failed again: {}", id, e.getMessage());
+                    }
+                    // Waits 1, 2, 4... minutes between attempts, at most an hour
+                    long delay = Math.min(Duration.ofMinutes(1L << Math.min(attempts - 1, 6)).toMillis(),
+                            Duration.ofHours(1).toMillis());
+                    pendingCreditRepository.recordFailure(id, new Date(System.currentTimeMillis() + delay));
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Deferred credit retry failed", e);
+        } finally {
+            jobLockRepository.release(CREDIT_RETRY_LOCK, lockToken);
+        }
+    }
+
+    // Returns null, and appends nothing, if the user has fewer points available
+    public PointTransaction debit(String userId, int points, String source, String referenceId,
+            String description) {
+        return append(new PointTransaction(userId, points, PointTransaction.SPENT, source, referenceId,
+                description), true, false);
+    }
+
+    private PointTransaction append(PointTransaction event, boolean requireBalance, boolean once) {
+        String userId = event.getUserId();
+        for (int attempt = 0; attempt < MAX_APPEND_ATTEMPTS; attempt++) {
+            if (once && pointTransactionRepository.existsByUserIdAndSourceAndReferenceId(userId, event.getSource(),
+                    event.getReferenceId())) {
+                return null;
+            }
+            UserPoints balance = load(userId);
+            if (requireBalance && balance.getAvailablePoints() < event.getPoints()) {
+                return null;
+            }
+            try {
+                if (balance.getSequence() == 0 && (balance.getTotalPoints() != 0 || balance.getSpentPoints() != 0)) {
+                    // A balance from before the ledger becomes its first event, so a replay reproduces it
+                    PointTransaction opening = openingFor(balance);
+                    pointTransactionRepository.append(opening);
+                    balance = new UserPoints(userId, 0, 0, 0);
+                    balance.apply(opening);
+                }
+                event.setId(null);
+                event.setSequence(balance.getSequence() + 1);
+                stampExpiry(event);
+                pointTransactionRepository.append(event);
+            } catch (DuplicateKeyException e) {
+                continue;
+            }
+            balance.apply(event);
+            if (event.getSequence() % snapshotEvery == 0) {
+                userPointsRepository.saveSnapshot(balance);
+            }
+            leaderboardService.recordEarned(event);
+            return event;
+        }
+        throw new IllegalStateException("Points ledger of " + userId + " is too busy, please retry");
+    }
+
+    /**
+     * Credits the same points to many users at once, at most once per user for
+     * the given source and reference. The credits are appended with one bulk
+     * write using the last sequence number of each user; users whose sequence
+     * moved on meanwhile, or who still need an OPENING event, go through the
+     * single-user path instead.
+     */
+    public BatchResult creditBatch(List<String> userIds, int points, String source, String referenceId,
+            String description) {
+        BatchResult result = new BatchResult();
+        if (userIds.isEmpty()) {
+            return result;
+        }
+        Set<String> credited = pointTransactionRepository.findUserIdsWithReference(userIds, source, referenceId);
+        Map<String, Long> sequences = pointTransactionRepository.findLastSequences(userIds);
+        Map<String, UserPoints> snapshots = new HashMap<>();
+        for (UserPoints snapshot : userPointsRepository.findByUserIds(userIds)) {
+            snapshots.put(snapshot.getUserId(), snapshot);
+        }
+
+        List<PointTransaction> batch = new ArrayList<>(userIds.size());
+        List<String> singles = new ArrayList<>();
+        for (String userId : userIds) {
+            if (credited.contains(userId)) {
+                result.skipped++;
+                continue;
+            }
+            long sequence = sequences.getOrDefault(userId, 0L);
+            UserPoints snapshot = snapshots.get(userId);
+            if (sequence == 0 && snapshot != null
+                    && (snapshot.getTotalPoints() != 0 || snapshot.getSpentPoints() != 0)) {
+                singles.add(userId);
+                continue;
+            }
+            PointTransaction event = new PointTransaction(userId, points, PointTransaction.EARNED, source,
+                    referenceId, description);
+            event.setSequence(sequence + 1);
+            stampExpiry(event);
+            batch.add(event);
+        }
+
+        Set<PointTransaction> rejected = Collections.newSetFromMap(new IdentityHashMap<>());
+        rejected.addAll(pointTransactionRepository.appendAll(batch));
+        for (PointTransaction event : batch) {
+            if (rejected.contains(event)) {
+                singles.add(event.getUserId());
+                continue;
+            }
+            result.credited++;
+            leaderboardService.recordEarned(event);
+            if (event.getSequence() % snapshotEvery == 0) {
+                userPointsRepository.saveSnapshot(load(event.getUserId()));
+            }
+        }
+
+        for (String userId : singles) {
+            try {
+                if (creditOnce(userId, points, source, referenceId, description) != null) {
+                    result.credited++;
+                } else {
+                    result.skipped++;
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Failed to credit {} points to {} for {}: {}", points, userId, referenceId,
+                        e.getMessage());
+                result.failed++;
+            }
+        }
+        return result;
+    }
+
+    public static class BatchResult {
+        private int credited; // users credited, or users whose points were expired
+        private int skipped; // already credited for the same reference, or nothing to expire
+        private int failed;
+        private long points; // points expired
+
+        public int getCredited() {
+            return credited;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public long getPoints() {
+            return points;
+        }
+    }
+
+    /**
+     * Expires the points of each user that are left in lots expired at or
+     * before asOf. The EXPIRED events are appended with one bulk write; users
+     * whose sequence moved on meanwhile are retried one at a time against
+     * their new balance.
+     */
+    public BatchResult expireBatch(List<String> userIds, LocalDateTime asOf) {
+        BatchResult result = new BatchResult();
+        if (userIds.isEmpty()) {
+            return result;
+        }
+        Map<String, Long> expiredLots = pointTransactionRepository.sumExpiredLots(userIds, asOf);
+        Map<String, UserPoints> balances = loadAll(expiredLots.keySet());
+
+        List<PointTransaction> batch = new ArrayList<>(expiredLots.size());
+        for (String userId : userIds) {
+            UserPoints balance = balances.get(userId);
+            int points = balance != null ? expirable(balance, expiredLots.get(userId)) : 0;
+            if (points <= 0) {
+                result.skipped++;
+                continue;
+            }
+            PointTransaction event = expiryEvent(userId, points, asOf);
+            event.setSequence(balance.getSequence() + 1);
+            batch.add(event);
+        }
+
+        Set<PointTransaction> rejected = Collections.newSetFromMap(new IdentityHashMap<>());
+        rejected.addAll(pointTransactionRepository.appendAll(batch));
+        for (PointTransaction event : batch) {
+            String userId = event.getUserId();
+            try {
+                PointTransaction appended = rejected.contains(event)
+                        ? expire(userId, expiredLots.get(userId), asOf)
+                        : event;
+                if (appended == null) {
+                    result.skipped++;
+                    continue;
+                }
+                result.credited++;
+                result.points += appended.getPoints();
+                if (appended == event && event.getSequence() % snapshotEvery == 0) {
+                    userPointsRepository.saveSnapshot(load(userId));
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Failed to expire points of {}: {}", userId, e.getMessage());
+                result.failed++;
+            }
+        }
+        return result;
+    }
+
+    private PointTransaction expire(String userId, long expiredLots, LocalDateTime asOf) {
+        for (int attempt = 0; attempt < MAX_APPEND_ATTEMPTS; attempt++) {
+            UserPoints balance = load(userId);
+            int points = expirable(balance, expiredLots);
+            if (points <= 0) {
+                return null;
+            }
+            PointTransaction event = expiryEvent(userId, points, asOf);
+            event.setSequence(balance.getSequence() + 1);
+            try {
+                pointTransactionRepository.append(event);
+            } catch (DuplicateKeyException e) {
+                continue;
+            }
+            balance.apply(event);
+            if (event.getSequence() % snapshotEvery == 0) {
+                userPointsRepository.saveSnapshot(balance);
+            }
+            return event;
+        }
+        throw new IllegalStateException("Points ledger of " + userId + " is too busy, please retry");
+    }
+
+    // Expired lots not yet covered by spending or earlier expiry, never more than is available
+    private static int expirable(UserPoints balance, long expiredLots) {
+        long uncovered = expiredLots - balance.getSpentPoints() - balance.getExpiredPoints();
+        return (int) Math.max(0, Math.min(uncovered, balance.getAvailablePoints()));
+    }
+
+    private static PointTransaction expiryEvent(String userId, int points, LocalDateTime asOf) {
+        return new PointTransaction(userId, points, PointTransaction.EXPIRED, EXPIRY, asOf.toLocalDate().toString(),
+                "Points expired");
+    }
+
+    private void stampExpiry(PointTransaction event) {
+        if (expiryMonths <= 0 || !(PointTransaction.EARNED.equals(event.getTransactionType())
+                || PointTransaction.OPENING.equals(event.getTransactionType()))) {
+            return;
+        }
+        event.setExpiresAt(event.getTransactionDate().plusMonths(expiryMonths));
+        event.setExpiryBucket(PointTransactionRepository.expiryBucket(event.getUserId()));
+    }
+
+    private PointTransaction openingFor(UserPoints legacy) {
+        int spent = legacy.getSpentPoints();
+        PointTransaction opening = new PointTransaction(legacy.getUserId(), legacy.getAvailablePoints() + spent,
+                PointTransaction.OPENING, OPENING_BALANCE, legacy.getUserId(), "Balance carried over to the ledger");
+        opening.setOpeningSpent(spent);
+        opening.setSequence(1L);
+        stampExpiry(opening);
+        return opening;
+    }
+
+    private UserPoints load(String userId) {
+        UserPoints snapshot = userPointsRepository.findByUserId(userId).orElse(null);
+        return fold(userId, snapshot,
+                pointTransactionRepository.findByUserIdAfterSequence(userId, snapshotSequence(snapshot)));
+    }
+
+    // Balances of many users with one read of their snapshots and one of the events after them
+    private Map<String, UserPoints> loadAll(Collection<String> userIds) {
+        Map<String, UserPoints> snapshots = new HashMap<>();
+        for (UserPoints snapshot : userPointsRepository.findByUserIds(userIds)) {
+            snapshots.put(snapshot.getUserId(), snapshot);
+        }
+        Map<String, Long> from = new HashMap<>();
+        for (String userId : userIds) {
+            from.put(userId, snapshotSequence(snapshots.get(userId)));
+        }
+        Map<String, List<PointTransaction>> tails = new HashMap<>();
+        for (PointTransaction event : pointTransactionRepository.findByUserIdsAfterSequences(from)) {
+            tails.computeIfAbsent(event.getUserId(), u -> new ArrayList<>()).add(event);
+        }
+        Map<String, UserPoints> balances = new HashMap<>();
+        for (String userId : userIds) {
+            balances.put(userId, fold(userId, snapshots.get(userId), tails.getOrDefault(userId, List.of())));
+        }
+        return balances;
+    }
+
+    private static long snapshotSequence(UserPoints snapshot) {
+        return snapshot != null && snapshot.getSequence() != null ? snapshot.getSequence() : 0;
+    }
+
+    private UserPoints fold(String userId, UserPoints snapshot, List<PointTransaction> tail) {
+        UserPoints balance = snapshot;
+        if (snapshot == null || (snapshot.getSequence() == null && !tail.isEmpty())) {
+            // With events present the ledger starts at zero; an old balance is in its OPENING event
+            balance = new UserPoints(userId, 0, 0, 0);
+            balance.setSequence(0L);
+        } else if (snapshot.getSequence() == null) {
+            balance.setSequence(0L);
+        }
+        for (PointTransaction event : tail) {
+            balance.apply(event);
+        }
+        return balance;
+    }
+
+    /**
+     * Recomputes the user's balance from the full ledger and stores it as the
+     * snapshot. Returns true if the stored snapshot was different, false if it
+     * was correct or the user has no ledger events.
+     */
+    public boolean rebuild(String userId) {
+        UserPoints balance = new UserPoints(userId, 0, 0, 0);
+        balance.setSequence(0L);
+        try (Stream<PointTransaction> ledger = pointTransactionRepository.streamLedger(userId)) {
+            ledger.forEach(balance::apply);
+        }
+        if (balance.getSequence() == 0) {
+            return false;
+        }
+        UserPoints stored = userPointsRepository.findByUserId(userId).orElse(null);
+        if (stored != null && balance.getSequence().equals(stored.getSequence())
+                && stored.getTotalPoints() == balance.getTotalPoints()
+                && stored.getAvailablePoints() == balance.getAvailablePoints()
+                && stored.getSpentPoints() == balance.getSpentPoints()
+                && stored.getExpiredPoints() == balance.getExpiredPoints()) {
+            return false;
+        }
+        userPointsRepository.saveSnapshot(balance);
+        return true;
+    }
+}
@@ -0,0 +1,150 @@
+package sg.nus.iss.final_project.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import sg.nus.iss.final_project.repo.PointTransactionRepository;
+
+/**
+ * Rebuilds every points snapshot from the ledger. User ids are read once from
+ * a cursor and handed by hash of the id to one bounded queue per thread, so
+ * memory stays flat however many users there are and a slow thread holds the
+ * cursor back rather than letting ids pile up. One user's ledger never
+ * depends on another's. Balances that predate the ledger and have no events
+ * yet are left as they are.
+ */
+@Service
+public class PointsReplayService {
+    private static final Logger logger = LoggerFactory.getLogger(PointsReplayService.class);
+
+    private static final int USER_ID_BATCH = 1000;
+    private static final int QUEUE_CAPACITY = 1000;
+
+    // Compared by reference, so no user id can be mistaken for it
+    private static final String END_OF_USERS = new String("END_OF_USERS");
+
+    @Autowired
+    private PointsLedgerService pointsLedgerService;
+
+    @Autowired
+    private PointTransactionRepository pointTransactionRepository;
+
+    @Value("${points.replay.threads:0}")
+    private int replayThreads;
+
+    public Map<String, Object> replayAll() throws InterruptedException {
+        int threads = Math.max(1, replayThreads > 0 ? replayThreads : Runtime.getRuntime().availableProcessors());
+        List<BlockingQueue<String>> queues = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            queues.add(new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+        }
+
+        long started = System.currentTimeMillis();
+        ReplayStats total = new ReplayStats();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<ReplayStats>> futures = new ArrayList<>();
+            for (BlockingQueue<String> queue : queues) {
+                futures.add(executor.submit(() -> replayGroup(queue)));
+            }
+            try (Stream<String> userIds = pointTransactionRepository.streamReplayUserIds(USER_ID_BATCH)) {
+                Iterator<String> iterator = userIds.iterator();
+                while (iterator.hasNext()) {
+                    String userId = iterator.next();
+                    int group = Math.floorMod(userId.hashCode(), threads);
+                    if (!hand(queues.get(group), futures.get(group), userId)) {
+                        total.usersFailed++;
+                    }
+                }
+            } finally {
+                for (int i = 0; i < threads; i++) {
+                    hand(queues.get(i), futures.get(i), END_OF_USERS);
+                }
+            }
+            for (Future<ReplayStats> future : futures) {
+                try {
+                    total.add(future.get());
+                } catch (ExecutionException e) {
+                    logger.error("Points replay group failed", e);
+                    total.failedGroups++;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long elapsed = System.currentTimeMillis() - started;
+        logger.info("Replayed points of {} users on {} threads: {} snapshots corrected, {} failed in {} ms",
+                total.usersReplayed, threads, total.snapshotsCorrected, total.usersFailed, elapsed);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("usersReplayed", total.usersReplayed);
+        result.put("snapshotsCorrected", total.snapshotsCorrected);
+        result.put("usersFailed", total.usersFailed);
+        result.put("failedGroups", total.failedGroups);
+        result.put("threads", threads);
+        result.put("elapsedMs", elapsed);
+        return result;
+    }
+
+    // Waits for room in the queue, giving up if its thread has stopped and will never drain it
+    private boolean hand(BlockingQueue<String> queue, Future<ReplayStats> worker, String userId)
+            throws InterruptedException {
+        while (!queue.offer(userId, 1, TimeUnit.SECONDS)) {
+            if (worker.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ReplayStats replayGroup(BlockingQueue<String> userIds) throws InterruptedException {
+        ReplayStats stats = new ReplayStats();
+        while (true) {
+            String userId = userIds.take();
+            if (userId == END_OF_USERS) {
+                return stats;
+            }
+            try {
+                if (pointsLedgerService.rebuild(userId)) {
+                    stats.snapshotsCorrected++;
+                }
+                stats.usersReplayed++;
+            } catch (Exception e) {
+                logger.warn("Failed to replay points of user {}: {}", userId, e.getMessage());
+                stats.usersFailed++;
+            }
+        }
+    }
+
+    private static class ReplayStats {
+        long usersReplayed;
+        long snapshotsCorrected;
+        long usersFailed;
+        long failedGroups;
+
+        void add(ReplayStats other) {
+            usersReplayed += other.usersReplayed;
+            snapshotsCorrected += other.snapshotsCorrected;
+            usersFailed += other.usersFailed;
+            failedGroups += other.failedGroups;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package sg.nus.iss.final_project.service;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import sg.nus.iss.final_project.model.BudgetAlert;
+
+/**
+ * Pushes budget alerts to the user's open event streams as "budget.alert".
+ */
+@Service
+@ConditionalOnProperty(name = "alerts.push.enabled", havingValue = "true", matchIfMissing = true)
+public class PushAlertSink implements AlertSink {
+
+    @Autowired
+    private ChangeEventService changeEventService;
+
+    @Override
+    public String getName() {
+        return "push";
+    }
+
+    @Override
+    public void send(List<BudgetAlert> alerts) {
+        for (BudgetAlert alert : alerts) {
+            changeEventService.publish(alert.getUserId(), "budget.alert", alert);
+        }
+    }
+}
@@ -0,0 +1,591 @@
+package sg.nus.iss.final_project.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+
+import jakarta.annotation.PostConstruct;
+import sg.nus.iss.final_project.Util.ReceiptArchiveCodec;
+import sg.nus.iss.final_project.model.CampaignSegment;
+import sg.nus.iss.final_project.model.Receipt;
+import sg.nus.iss.final_project.model.ReceiptArchive;
+import sg.nus.iss.final_project.repo.JobLockRepository;
+import sg.nus.iss.final_project.repo.ReceiptArchiveRepository;
+import sg.nus.iss.final_project.repo.ReceiptRepository;
+
+/**
+ * Moves receipts older than the configured age out of MongoDB into one
+ * compressed columnar file per user-month, and reads them back when a query
+ * reaches into the archived range.
+ *
+ * The files are kept in GridFS, so every node reads the same archive and a
+ * restart loses nothing. A month is rewritten as a new file and the catalog
+ * entry is switched to it only if it still points at the file that was read,
+ * so concurrent writers cannot drop each other's receipts; the old file is
+ * removed afterwards. A file that cannot be read is an error for the caller,
+ * never an empty month.
+ */
+@Service
+public class ReceiptArchiveService {
+    private static final Logger logger = LoggerFactory.getLogger(ReceiptArchiveService.class);
+
+    private static final String GRIDFS_PREFIX = "gridfs:";
+    private static final String ARCHIVE_LOCK = "receipt-archive";
+    private static final Duration LOCK_LEASE = Duration.ofMinutes(30);
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+    private static final Comparator<Receipt> NEWEST_FIRST = Comparator.comparing(Receipt::getDateOfPurchase,
+            Comparator.nullsLast(Comparator.reverseOrder()));
+
+    @Autowired
+    private ReceiptRepository receiptRepository;
+
+    @Autowired
+    private ReceiptArchiveRepository receiptArchiveRepository;
+
+    @Autowired
+    private JobLockRepository jobLockRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${receipts.archive.enabled:false}")
+    private boolean archiveEnabled;
+
+    @Value("${receipts.archive.bucket:receiptArchive}")
+    private String bucket;
+
+    @Value("${receipts.archive.age-months:3}")
+    private int archiveAgeMonths;
+
+    private GridFsTemplate gridFs;
+
+    @PostConstruct
+    public void init() {
+        gridFs = new GridFsTemplate(mongoTemplate.getMongoDatabaseFactory(), mongoTemplate.getConverter(), bucket);
+    }
+
+    @Scheduled(cron = "${receipts.archive.cron:0 30 3 * * *}")
+    public void scheduledArchive() {
+        if (!archiveEnabled) {
+            return;
+        }
+        logger.info("Starting scheduled receipt archival");
+        Map<String, Object> result = archiveOldReceipts();
+        logger.info("Scheduled receipt archival finished: {}", result);
+    }
+
+    public LocalDateTime archiveCutoff() {
+        return YearMonth.now().minusMonths(archiveAgeMonths).atDay(1).atStartOfDay();
+    }
+
+    // One node archives at a time via the jobLocks collection
+    public Map<String, Object> archiveOldReceipts() {
+        LocalDateTime cutoff = archiveCutoff();
+        Map<String, Object> result = new HashMap<>();
+        result.put("cutoff", cutoff.toString());
+        String lockToken = jobLockRepository.tryAcquire(ARCHIVE_LOCK, LOCK_LEASE);
+        if (lockToken == null) {
+            result.put("skipped", "Archival is already running");
+            return result;
+        }
+        int usersArchived = 0;
+        int monthsArchived = 0;
+        int receiptsArchived = 0;
+        int failures = 0;
+        int migrated = 0;
+        try {
+            for (ReceiptArchive archive : receiptArchiveRepository.findNeedingMigration(GRIDFS_PREFIX)) {
+                try {
+                    migrateArchive(archive);
+                    migrated++;
+                } catch (Exception e) {
+                    failures++;
+                    logger.error("Failed to move receipt archive {} to GridFS", archive.getLocation(), e);
+                }
+            }
+
+            for (String userId : receiptRepository.findDistinctUserIds()) {
+                if (userId == null) {
+                    continue;
+                }
+                try {
+                    int[] counts = archiveUser(userId, cutoff);
+                    if (counts[1] > 0) {
+                        usersArchived++;
+                        monthsArchived += counts[0];
+                        receiptsArchived += counts[1];
+                    }
+                } catch (Exception e) {
+                    failures++;
+                    logger.error("Failed to archive receipts for user: {}", userId, e);
+                }
+                jobLockRepository.extend(ARCHIVE_LOCK, lockToken, LOCK_LEASE);
+            }
+        } finally {
+            jobLockRepository.release(ARCHIVE_LOCK, lockToken);
+        }
+
+        result.put("archivesMigrated", migrated);
+        result.put("usersArchived", usersArchived);
+        result.put("monthsArchived", monthsArchived);
+        result.put("receiptsArchived", receiptsArchived);
+        result.put("failures", failures);
+        return result;
+    }
+
+    /**
+     * Archives one user's receipts before the cutoff. Each month file is written
+     * and cataloged before its receipts are deleted, so a failure part way
+     * through leaves the receipts readable from MongoDB and a rerun merges
+     * them into the existing file by id.
+     *
+     * @return number of months and receipts archived
+     */
+    public int[] archiveUser(String userId, LocalDateTime cutoff) {
+        Map<YearMonth, List<Receipt>> byMonth = new TreeMap<>();
+        for (Receipt receipt : receiptRepository.findByUserIdAndDateBefore(userId, cutoff)) {
+            byMonth.computeIfAbsent(YearMonth.from(receipt.getDateOfPurchase()), m -> new ArrayList<>())
+                    .add(receipt);
+        }
+
+        int receiptsArchived = 0;
+        for (Map.Entry<YearMonth, List<Receipt>> entry : byMonth.entrySet()) {
+            String monthYear = entry.getKey().toString();
+            List<Receipt> live = entry.getValue();
+
+            ReceiptArchive archive = null;
+            for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS && archive == null; attempt++) {
+                ReceiptArchive previous = receiptArchiveRepository.findById(userId + ":" + monthYear);
+                Map<String, Receipt> merged = new LinkedHashMap<>();
+                if (previous != null) {
+                    for (Receipt receipt : readArchiveOrThrow(previous)) {
+                        merged.put(receipt.getId(), receipt);
+                    }
+                }
+                for (Receipt receipt : live) {
+                    merged.put(receipt.getId(), receipt);
+                }
+                archive = writeMonth(userId, monthYear, previous, merged.values());
+            }
+            if (archive == null) {
+                throw new IllegalStateException("Receipt archive of " + userId + " for " + monthYear
+                        + " kept changing while it was written");
+            }
+
+            receiptRepository.deleteByIds(userId, live.stream().map(Receipt::getId).toList());
+            receiptsArchived += live.size();
+            logger.info("Archived {} receipts for user {} month {} to {}", live.size(), userId, monthYear,
+                    archive.getLocation());
+        }
+        return new int[] { byMonth.size(), receiptsArchived };
+    }
+
+    public List<Receipt> readMonth(String userId, String monthYear) {
+        ReceiptArchive archive = receiptArchiveRepository.findById(userId + ":" + monthYear);
+        if (archive == null) {
+            return new ArrayList<>();
+        }
+        return readArchiveOrThrow(archive);
+    }
+
+    public List<Receipt> findArchivedByUserId(String userId) {
+        List<Receipt> receipts = new ArrayList<>();
+        for (ReceiptArchive archive : receiptArchiveRepository.findByUserId(userId)) {
+            receipts.addAll(readArchiveOrThrow(archive));
+        }
+        return receipts;
+    }
+
+    public List<Receipt> findArchivedByUserIdAndDateRange(String userId, LocalDateTime from, LocalDateTime to) {
+        List<Receipt> receipts = new ArrayList<>();
+        List<ReceiptArchive> archives = receiptArchiveRepository.findByUserIdAndMonthRange(userId,
+                YearMonth.from(from).toString(), YearMonth.from(to).toString());
+        for (ReceiptArchive archive : archives) {
+            for (Receipt receipt : readArchiveOrThrow(archive)) {
+                LocalDateTime date = receipt.getDateOfPurchase();
+                if (!date.isBefore(from) && date.isBefore(to)) {
+                    receipts.add(receipt);
+                }
+            }
+        }
+        return receipts;
+    }
+
+    /**
+     * All receipts for a user, live and archived.
+     */
+    public List<Receipt> findAllByUserId(String userId) {
+        List<Receipt> receipts = new ArrayList<>(receiptRepository.findByUserId(userId));
+        receipts.addAll(findArchivedByUserId(userId));
+        return receipts;
+    }
+
+    /**
+     * Receipts in [from, to), only opening archive files when the range starts
+     * before the archival cutoff.
+     */
+    public List<Receipt> findByUserIdAndDateRange(String userId, LocalDateTime from, LocalDateTime to) {
+        List<Receipt> receipts = new ArrayList<>(receiptRepository.findByUserIdAndDateRange(userId, from, to));
+        if (from.isBefore(archiveCutoff())) {
+            receipts.addAll(findArchivedByUserIdAndDateRange(userId, from, to));
+        }
+        return receipts;
+    }
+
+    // A live receipt, or one read back from its archived month
+    public Receipt findById(String receiptId) {
+        Receipt receipt = receiptRepository.findById(receiptId);
+        if (receipt != null) {
+            return receipt;
+        }
+        ReceiptArchive archive = receiptArchiveRepository.findByReceiptId(receiptId);
+        if (archive == null) {
+            return null;
+        }
+        for (Receipt archived : readArchiveOrThrow(archive)) {
+            if (receiptId.equals(archived.getId())) {
+                return archived;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Deletes a live or archived receipt and returns it, or null if there is
+     * none. An archived receipt is removed by rewriting its month without it.
+     */
+    public Receipt deleteReceipt(String receiptId) {
+        Receipt receipt = receiptRepository.findById(receiptId);
+        if (receipt != null) {
+            receiptRepository.deleteById(receiptId);
+            return receipt;
+        }
+        for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS; attempt++) {
+            ReceiptArchive archive = receiptArchiveRepository.findByReceiptId(receiptId);
+            if (archive == null) {
+                return null;
+            }
+            Receipt deleted = null;
+            List<Receipt> remaining = new ArrayList<>();
+            for (Receipt archived : readArchiveOrThrow(archive)) {
+                if (receiptId.equals(archived.getId())) {
+                    deleted = archived;
+                } else {
+                    remaining.add(archived);
+                }
+            }
+            if (deleted == null) {
+                return null;
+            }
+            if (writeMonth(archive.getUserId(), archive.getMonthYear(), archive, remaining) != null) {
+                logger.info("Deleted archived receipt {} from {}", receiptId, archive.getId());
+                return deleted;
+            }
+        }
+        throw new IllegalStateException("Receipt archive holding " + receiptId + " kept changing while it was written");
+    }
+
+    /**
+     * The user's receipts newest first. Only live receipts are read unless
+     * from reaches back past the archival cutoff, so the usual call never
+     * opens an archive file.
+     */
+    public List<Receipt> findRecentByUserId(String userId, LocalDateTime from) {
+        List<Receipt> receipts = receiptRepository.findRecentByUserId(userId);
+        if (from == null) {
+            return receipts;
+        }
+        receipts.removeIf(receipt -> receipt.getDateOfPurchase() != null
+                && receipt.getDateOfPurchase().isBefore(from));
+        LocalDateTime cutoff = archiveCutoff();
+        if (from.isBefore(cutoff)) {
+            receipts.addAll(findArchivedByUserIdAndDateRange(userId, from, cutoff));
+            receipts.sort(NEWEST_FIRST);
+        }
+        return receipts;
+    }
+
+    /**
+     * Searches live receipts first, in their usual ranking, followed by
+     * archived receipts whose merchant or items contain one of the words,
+     * newest first. Archived months are only read when the page runs past
+     * the live results or includeArchived is set; otherwise the total counts
+     * live matches and archivedReceipts gives, from the catalog, how many
+     * archived receipts a wider search would look through.
+     */
+    public Map<String, Object> searchByUserId(String userId, String terms, int page, int size,
+            boolean includeArchived) {
+        long liveTotal = receiptRepository.countSearchByUserId(userId, terms);
+        long offset = (long) page * size;
+        List<Receipt> results = new ArrayList<>();
+        if (offset < liveTotal) {
+            results.addAll(receiptRepository.searchByUserId(userId, terms, page, size));
+        }
+        Map<String, Object> response = new HashMap<>();
+        if (!includeArchived && offset + size <= liveTotal) {
+            response.put("results", results);
+            response.put("total", liveTotal);
+            response.put("archivedSearched", false);
+            response.put("archivedReceipts", receiptArchiveRepository.countReceiptsByUserId(userId));
+            return response;
+        }
+        List<Receipt> archived = searchArchived(userId, terms);
+        if (results.size() < size) {
+            int from = (int) Math.max(0, offset - liveTotal);
+            int to = Math.min(archived.size(), from + size - results.size());
+            if (from < to) {
+                results.addAll(archived.subList(from, to));
+            }
+        }
+        response.put("results", results);
+        response.put("total", liveTotal + archived.size());
+        response.put("archivedSearched", true);
+        return response;
+    }
+
+    /**
+     * Streams the distinct ids of users with a live or archived receipt in
+     * the segment, in ascending order and starting after afterUserId when it
+     * is set. Archived months are only consulted when the segment reaches
+     * back past the archival cutoff. The caller must close the stream.
+     */
+    public Stream<String> streamSegmentUserIds(CampaignSegment segment, String afterUserId, int batchSize) {
+        Stream<String> live = receiptRepository.streamSegmentUserIds(segment, afterUserId, batchSize);
+        LocalDateTime cutoff = archiveCutoff();
+        if (segment.getFrom() != null && !segment.getFrom().atStartOfDay().isBefore(cutoff)) {
+            return live;
+        }
+        String fromMonth = segment.getFrom() != null ? YearMonth.from(segment.getFrom()).toString() : null;
+        String toMonth = segment.getTo() != null ? YearMonth.from(segment.getTo()).toString() : null;
+        Stream<String> archived = receiptArchiveRepository.streamUserIds(fromMonth, toMonth, afterUserId, batchSize)
+                .filter(userId -> hasArchivedMatch(userId, segment, fromMonth, toMonth));
+        return mergeAscending(live, archived);
+    }
+
+    private boolean hasArchivedMatch(String userId, CampaignSegment segment, String fromMonth, String toMonth) {
+        List<ReceiptArchive> archives = receiptArchiveRepository.findByUserIdAndMonthRange(userId,
+                fromMonth != null ? fromMonth : "0000-01", toMonth != null ? toMonth : "9999-12");
+        for (ReceiptArchive archive : archives) {
+            for (Receipt receipt : readArchiveOrThrow(archive)) {
+                if (segment.matches(receipt)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private List<Receipt> searchArchived(String userId, String terms) {
+        List<String> words = new ArrayList<>();
+        for (String word : terms.trim().toLowerCase(Locale.ROOT).split("\\s+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        List<Receipt> matches = new ArrayList<>();
+        for (Receipt receipt : findArchivedByUserId(userId)) {
+            if (containsAny(receipt, words)) {
+                matches.add(receipt);
+            }
+        }
+        matches.sort(NEWEST_FIRST);
+        return matches;
+    }
+
+    private static boolean containsAny(Receipt receipt, List<String> words) {
+        StringBuilder text = new StringBuilder();
+        if (receipt.getMerchantName() != null) {
+            text.append(receipt.getMerchantName()).append('\n');
+        }
+        if (receipt.getItems() != null) {
+            for (String item : receipt.getItems()) {
+                text.append(item).append('\n');
+            }
+        }
+        String haystack = text.toString().toLowerCase(Locale.ROOT);
+        for (String word : words) {
+            if (haystack.contains(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Merges two ascending streams of ids into one without duplicates, closing both with it
+    private static Stream<String> mergeAscending(Stream<String> first, Stream<String> second) {
+        Iterator<String> a = first.iterator();
+        Iterator<String> b = second.iterator();
+        Iterator<String> merged = new Iterator<>() {
+            private String nextA = a.hasNext() ? a.next() : null;
+            private String nextB = b.hasNext() ? b.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return nextA != null || nextB != null;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String next;
+                if (nextB == null || (nextA != null && nextA.compareTo(nextB) <= 0)) {
+                    next = nextA;
+                } else {
+                    next = nextB;
+                }
+                if (next.equals(nextA)) {
+                    nextA = a.hasNext() ? a.next() : null;
+                }
+                if (next.equals(nextB)) {
+                    nextB = b.hasNext() ? b.next() : null;
+                }
+                return next;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    try {
+                        first.close();
+                    } finally {
+                        second.close();
+                    }
+                });
+    }
+
+    /**
+     * Writes the receipts as a new file and points the catalog entry at it,
+     * removing the month when there are none left. Returns null, and leaves
+     * everything as it was, if the entry no longer points at previous.
+     */
+    private ReceiptArchive writeMonth(String userId, String monthYear, ReceiptArchive previous,
+            Collection<Receipt> receipts) {
+        String previousLocation = previous != null ? previous.getLocation() : null;
+        if (receipts.isEmpty()) {
+            if (previous != null && !receiptArchiveRepository.deleteIfLocation(previous.getId(), previousLocation)) {
+                return null;
+            }
+            deleteFile(previousLocation);
+            return previous;
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            ReceiptArchiveCodec.write(userId, new ArrayList<>(receipts), buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Document metadata = new Document("userId", userId).append("monthYear", monthYear);
+        ObjectId fileId = gridFs.store(new ByteArrayInputStream(buffer.toByteArray()), fileName(userId, monthYear),
+                "application/gzip", metadata);
+
+        ReceiptArchive archive = new ReceiptArchive(userId, monthYear, GRIDFS_PREFIX + fileId.toHexString());
+        archive.setReceiptIds(receipts.stream().map(Receipt::getId).toList());
+        archive.setReceiptCount(receipts.size());
+        archive.setTotalExpense(receipts.stream().mapToDouble(Receipt::getTotalExpense).sum());
+        archive.setSizeBytes(buffer.size());
+        if (!receiptArchiveRepository.saveIfLocation(archive, previousLocation)) {
+            deleteFile(archive.getLocation());
+            return null;
+        }
+        deleteFile(previousLocation);
+        return archive;
+    }
+
+    // Moves an archive from node-local disk into GridFS and lists its receipt ids in the catalog
+    private void migrateArchive(ReceiptArchive archive) {
+        List<Receipt> receipts = readArchiveOrThrow(archive);
+        if (writeMonth(archive.getUserId(), archive.getMonthYear(), archive, receipts) == null) {
+            logger.info("Receipt archive {} changed while it was migrated, leaving it to the next run",
+                    archive.getId());
+        }
+    }
+
+    private List<Receipt> readArchiveOrThrow(ReceiptArchive archive) {
+        String location = archive.getLocation();
+        try (InputStream in = openArchive(location)) {
+            return ReceiptArchiveCodec.read(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Receipt archive " + archive.getId() + " at " + location
+                    + " could not be read", e);
+        }
+    }
+
+    private InputStream openArchive(String location) throws IOException {
+        if (!location.startsWith(GRIDFS_PREFIX)) {
+            // Written to local disk before archives moved to GridFS; readable until migrated
+            return Files.newInputStream(Paths.get(location));
+        }
+        GridFSFile file = gridFs.findOne(new Query(Criteria.where("_id")
+                .is(new ObjectId(location.substring(GRIDFS_PREFIX.length())))));
+        if (file == null) {
+            throw new FileNotFoundException(location);
+        }
+        return gridFs.getResource(file).getInputStream();
+    }
+
+    private void deleteFile(String location) {
+        if (location == null) {
+            return;
+        }
+        try {
+            if (location.startsWith(GRIDFS_PREFIX)) {
+                gridFs.delete(new Query(Criteria.where("_id")
+                        .is(new ObjectId(location.substring(GRIDFS_PREFIX.length())))));
+            } else {
+                Files.deleteIfExists(Paths.get(location));
+            }
+        } catch (Exception e) {
+            // Nothing points at the file any more; it is only wasted space
+            logger.warn("Failed to delete replaced receipt archive {}: {}", location, e.getMessage());
+        }
+    }
+
+    // Base64url is reversible, so two user ids can never share a name
+    private static String fileName(String userId, String monthYear) {
+        String encodedUserId = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(userId.getBytes(StandardCharsets.UTF_8));
+        return encodedUserId + "/" + monthYear + ".rcol.gz";
+    }
+}
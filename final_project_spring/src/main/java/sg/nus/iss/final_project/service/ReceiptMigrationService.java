@@ -0,0 +1,124 @@
+package sg.nus.iss.final_project.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import sg.nus.iss.final_project.repo.ReceiptRepository;
+
+/**
+ * Copies the regular receipts collection into the time-series collection in
+ * _id order. Progress is checkpointed after every batch so an interrupted run
+ * picks up where it stopped. Each run finishes by recording the location of
+ * every copied receipt, which single-receipt reads in time-series mode need.
+ */
+@Service
+public class ReceiptMigrationService {
+    private static final Logger logger = LoggerFactory.getLogger(ReceiptMigrationService.class);
+
+    private static final String CHECKPOINT_COLLECTION = "migrationCheckpoints";
+    private static final String CHECKPOINT_ID = "receipts-timeseries";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ReceiptRepository receiptRepository;
+
+    public Map<String, Object> migrateToTimeSeries(int batchSize) {
+        receiptRepository.ensureTimeSeriesCollection();
+
+        Document checkpoint = mongoTemplate.findById(CHECKPOINT_ID, Document.class, CHECKPOINT_COLLECTION);
+        Object lastId = checkpoint != null ? checkpoint.get("lastId") : null;
+        boolean resuming = lastId != null;
+        long copied = 0;
+        long skipped = 0;
+
+        while (true) {
+            Query query = new Query(lastId != null ? Criteria.where("_id").gt(lastId) : new Criteria())
+                    .with(Sort.by(Sort.Direction.ASC, "_id"))
+                    .limit(batchSize);
+            List<Document> batch = mongoTemplate.find(query, Document.class, ReceiptRepository.STANDARD_COLLECTION);
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            // A crash between the insert and the checkpoint write can leave the
+            // first batch of a resumed run partially copied already
+            Set<Object> alreadyCopied = resuming ? findCopiedIds(batch) : Set.of();
+            resuming = false;
+
+            List<Document> toInsert = new ArrayList<>();
+            for (Document receipt : batch) {
+                if (alreadyCopied.contains(receipt.get("_id"))) {
+                    continue;
+                }
+                if (receipt.get("dateOfPurchase") == null) {
+                    if (receipt.get("scanDate") == null) {
+                        skipped++;
+                        logger.warn("Skipping receipt without a timestamp: {}", receipt.get("_id"));
+                        continue;
+                    }
+                    receipt.put("dateOfPurchase", receipt.get("scanDate"));
+                }
+                toInsert.add(receipt);
+            }
+
+            if (!toInsert.isEmpty()) {
+                mongoTemplate.getCollection(ReceiptRepository.TIME_SERIES_COLLECTION).insertMany(toInsert);
+                copied += toInsert.size();
+            }
+
+            lastId = batch.get(batch.size() - 1).get("_id");
+            mongoTemplate.upsert(new Query(Criteria.where("_id").is(CHECKPOINT_ID)),
+                    new Update().set("lastId", lastId)
+                            .inc("copied", toInsert.size())
+                            .set("updatedAt", LocalDateTime.now()),
+                    CHECKPOINT_COLLECTION);
+            logger.info("Migrated {} receipts to time-series collection, last id {}", copied, lastId);
+        }
+
+        // Receipts copied before locations were recorded, and the ones copied above
+        long locations = receiptRepository.backfillLocations();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("copied", copied);
+        result.put("locations", locations);
+        result.put("skipped", skipped);
+        result.put("sourceCount", mongoTemplate.getCollection(ReceiptRepository.STANDARD_COLLECTION)
+                .countDocuments());
+        result.put("targetCount", mongoTemplate.getCollection(ReceiptRepository.TIME_SERIES_COLLECTION)
+                .countDocuments());
+        return result;
+    }
+
+    public void resetCheckpoint() {
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(CHECKPOINT_ID)), CHECKPOINT_COLLECTION);
+    }
+
+    private Set<Object> findCopiedIds(List<Document> batch) {
+        List<Object> ids = batch.stream().map(d -> d.get("_id")).toList();
+        Query query = new Query(Criteria.where("_id").in(ids));
+        query.fields().include("_id");
+        Set<Object> copiedIds = new HashSet<>();
+        for (Document doc : mongoTemplate.find(query, Document.class, ReceiptRepository.TIME_SERIES_COLLECTION)) {
+            copiedIds.add(doc.get("_id"));
+        }
+        return copiedIds;
+    }
+}
@@ -0,0 +1,287 @@
+package sg.nus.iss.final_project.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import sg.nus.iss.final_project.model.RedemptionCode;
+import sg.nus.iss.final_project.model.Reward;
+import sg.nus.iss.final_project.repo.JobLockRepository;
+import sg.nus.iss.final_project.repo.RedemptionCodeRepository;
+import sg.nus.iss.final_project.repo.RewardRepository;
+
+/**
+ * Pools of redemption codes per reward. Codes are generated ahead of time or
+ * imported from partner CSV files into redemptionCodes, where a unique index
+ * keeps every code distinct, and a redemption claims one with a single
+ * findAndModify. A refill job tops up generated pools that fall below the low
+ * watermark; pools of partner codes are only reported, since new codes have
+ * to come from the partner.
+ */
+@Service
+public class RedemptionCodeService {
+    private static final Logger logger = LoggerFactory.getLogger(RedemptionCodeService.class);
+
+    private static final String PREFIX = "PW-";
+    // No 0/O or 1/I, so codes read out or typed by hand are not mistaken
+    private static final char[] ALPHABET = "23456789ABCDEFGHJKLMNPQRSTUVWXYZ".toCharArray();
+    private static final Pattern IMPORTED_CODE = Pattern.compile("[A-Za-z0-9][A-Za-z0-9_-]{3,63}");
+    private static final int INSERT_CHUNK = 1000;
+    private static final int MAX_GENERATE_ROUNDS = 5;
+    private static final String REFILL_LOCK = "redemption-code-refill";
+    private static final Duration REFILL_LEASE = Duration.ofMinutes(5);
+
+    private final SecureRandom random = new SecureRandom();
+
+    @Autowired
+    private RedemptionCodeRepository redemptionCodeRepository;
+
+    @Autowired
+    private RewardRepository rewardRepository;
+
+    @Autowired
+    private RewardCatalogService rewardCatalogService;
+
+    @Autowired
+    private JobLockRepository jobLockRepository;
+
+    @Value("${rewards.codes.length:10}")
+    private int codeLength;
+
+    @Value("${rewards.codes.low-watermark:100}")
+    private int lowWatermark;
+
+    @Value("${rewards.codes.refill-target:1000}")
+    private int refillTarget;
+
+    /**
+     * Claims a code of the reward for the user. An empty generated pool is
+     * topped up on the spot, so only a reward that relies on partner codes
+     * can run out; then null is returned.
+     */
+    public RedemptionCode claim(Reward reward, String userId) {
+        RedemptionCode code = redemptionCodeRepository.claim(reward.getId(), userId);
+        if (code != null) {
+            return code;
+        }
+        if (reward.isPartnerCodes()) {
+            logger.warn("Reward {} has no partner codes left", reward.getId());
+            return null;
+        }
+        // The refill job fell behind; a small batch covers this and the next few redemptions
+        logger.warn("Code pool of reward {} was empty, generating codes during redemption", reward.getId());
+        generate(reward.getId(), Math.max(1, Math.min(lowWatermark, refillTarget)));
+        return redemptionCodeRepository.claim(reward.getId(), userId);
+    }
+
+    // Returns a claimed code to the pool, e.g. when the points debit failed
+    public void release(RedemptionCode code) {
+        if (code != null) {
+            redemptionCodeRepository.release(code.getId());
+        }
+    }
+
+    /**
+     * Adds count new codes to the reward's pool. Codes that collide with an
+     * existing one are rejected by the unique index and generated again.
+     */
+    public Map<String, Object> generate(String rewardId, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Count must be positive");
+        }
+        if (!rewardRepository.existsById(rewardId)) {
+            throw new IllegalArgumentException("Reward not found");
+        }
+        String batchId = "gen-" + UUID.randomUUID();
+        int added = 0;
+        int collisions = 0;
+        int roundsWithCollisions = 0;
+        while (added < count && roundsWithCollisions < MAX_GENERATE_ROUNDS) {
+            int size = Math.min(INSERT_CHUNK, count - added);
+            List<RedemptionCode> chunk = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                chunk.add(new RedemptionCode(newCode(), rewardId, RedemptionCode.GENERATED, batchId));
+            }
+            int rejected = redemptionCodeRepository.insertAll(chunk);
+            added += size - rejected;
+            collisions += rejected;
+            if (rejected > 0) {
+                roundsWithCollisions++;
+            }
+        }
+        if (added < count) {
+            logger.warn("Generated only {} of {} codes for reward {} after {} collisions, consider longer codes",
+                    added, count, rewardId, collisions);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("batchId", batchId);
+        result.put("generated", added);
+        result.put("collisions", collisions);
+        return result;
+    }
+
+    /**
+     * Imports partner codes from a CSV file whose first column is the code;
+     * a header row and blank lines are skipped. Codes already in any pool are
+     * counted as duplicates and not imported again, so a file can be
+     * re-uploaded after a partial failure.
+     */
+    public Map<String, Object> importCsv(String rewardId, InputStream csv) throws IOException {
+        Reward reward = rewardRepository.findById(rewardId);
+        if (reward == null) {
+            throw new IllegalArgumentException("Reward not found");
+        }
+        String batchId = "import-" + UUID.randomUUID();
+        int imported = 0;
+        int duplicates = 0;
+        int invalid = 0;
+        Set<String> chunk = new LinkedHashSet<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8))) {
+            String line;
+            boolean first = true;
+            while ((line = reader.readLine()) != null) {
+                if (first && line.startsWith("\uFEFF")) {
+                    line = line.substring(1); // byte order mark written by spreadsheet exports
+                }
+                String code = firstColumn(line);
+                if (first) {
+                    first = false;
+                    if ("code".equalsIgnoreCase(code)) {
+                        continue;
+                    }
+                }
+                if (code.isEmpty()) {
+                    continue;
+                }
+                if (!IMPORTED_CODE.matcher(code).matches()) {
+                    invalid++;
+                    continue;
+                }
+                if (!chunk.add(code)) {
+                    duplicates++;
+                    continue;
+                }
+                if (chunk.size() >= INSERT_CHUNK) {
+                    int rejected = insertImported(rewardId, batchId, chunk);
+                    imported += chunk.size() - rejected;
+                    duplicates += rejected;
+                    chunk.clear();
+                }
+            }
+        }
+        int rejected = insertImported(rewardId, batchId, chunk);
+        imported += chunk.size() - rejected;
+        duplicates += rejected;
+
+        if (!reward.isPartnerCodes()) {
+            // Pools a partner stocks are not topped up with generated codes
+            rewardRepository.markPartnerCodes(rewardId);
+            rewardCatalogService.refresh();
+        }
+        logger.info("Imported {} codes for reward {} in batch {} ({} duplicates, {} invalid)", imported, rewardId,
+                batchId, duplicates, invalid);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("batchId", batchId);
+        result.put("imported", imported);
+        result.put("duplicates", duplicates);
+        result.put("invalid", invalid);
+        return result;
+    }
+
+    public Map<String, Object> getPoolStats(String rewardId) {
+        Map<String, Long> counts = redemptionCodeRepository.countByStatus(rewardId);
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("available", counts.getOrDefault(RedemptionCode.AVAILABLE, 0L));
+        stats.put("claimed", counts.getOrDefault(RedemptionCode.CLAIMED, 0L));
+        stats.put("lowWatermark", lowWatermark);
+        return stats;
+    }
+
+    // Tops up generated pools below the low watermark; one node at a time via the jobLocks collection
+    @Scheduled(fixedDelayString = "${rewards.codes.refill-interval-ms:60000}")
+    public void refill() {
+        String lockToken = jobLockRepository.tryAcquire(REFILL_LOCK, REFILL_LEASE);
+        if (lockToken == null) {
+            return;
+        }
+        try {
+            List<Reward> rewards = new ArrayList<>();
+            for (Reward reward : rewardCatalogService.getAvailable()) {
+                if (reward.usesRedemptionCodes()) {
+                    rewards.add(reward);
+                }
+            }
+            if (rewards.isEmpty()) {
+                return;
+            }
+            List<String> rewardIds = new ArrayList<>(rewards.size());
+            rewards.forEach(reward -> rewardIds.add(reward.getId()));
+            Map<String, Long> available = redemptionCodeRepository.countAvailableByReward(rewardIds);
+
+            for (Reward reward : rewards) {
+                long left = available.getOrDefault(reward.getId(), 0L);
+                if (left >= lowWatermark) {
+                    continue;
+                }
+                if (reward.isPartnerCodes()) {
+                    logger.warn("Reward {} has {} partner codes left, below the low watermark of {}",
+                            reward.getId(), left, lowWatermark);
+                    continue;
+                }
+                generate(reward.getId(), (int) (Math.max(refillTarget, lowWatermark) - left));
+                jobLockRepository.extend(REFILL_LOCK, lockToken, REFILL_LEASE);
+            }
+        } catch (Exception e) {
+            logger.error("Redemption code refill failed", e);
+        } finally {
+            jobLockRepository.release(REFILL_LOCK, lockToken);
+        }
+    }
+
+    private int insertImported(String rewardId, String batchId, Set<String> codes) {
+        List<RedemptionCode> batch = new ArrayList<>(codes.size());
+        for (String code : codes) {
+            batch.add(new RedemptionCode(code, rewardId, RedemptionCode.IMPORTED, batchId));
+        }
+        return redemptionCodeRepository.insertAll(batch);
+    }
+
+    private String newCode() {
+        char[] code = new char[Math.max(6, codeLength)];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        }
+        return PREFIX + new String(code);
+    }
+
+    private static String firstColumn(String line) {
+        int comma = line.indexOf(',');
+        String column = (comma >= 0 ? line.substring(0, comma) : line).trim();
+        if (column.length() >= 2 && column.startsWith("\"") && column.endsWith("\"")) {
+            column = column.substring(1, column.length() - 1).trim();
+        }
+        return column;
+    }
+}
@@ -0,0 +1,156 @@
+package sg.nus.iss.final_project.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import sg.nus.iss.final_project.model.Reward;
+import sg.nus.iss.final_project.repo.RewardRepository;
+
+/**
+ * In-process snapshot of the reward catalog for the read endpoints. The
+ * available rewards are kept sorted by points cost next to a primitive array
+ * of the costs, so the rewards a balance can afford are a prefix found with
+ * one binary search, and they are grouped by category.
+ *
+ * The snapshot is immutable and replaced as a whole. Admin writes rebuild it
+ * immediately; a reward selling out or coming back into stock, and changes
+ * reported by the rewards change stream, only mark it stale, and a stale
+ * snapshot is rebuilt on the next refresh tick. Units taken by redemptions do
+ * not, so the quantities served are approximate, lagging by at most the
+ * periodic rebuild, which also bounds staleness when change streams are
+ * unavailable.
+ *
+ * Returned rewards are shared between requests and must not be modified.
+ */
+@Service
+public class RewardCatalogService {
+    private static final Logger logger = LoggerFactory.getLogger(RewardCatalogService.class);
+
+    @Autowired
+    private RewardRepository rewardRepository;
+
+    @Value("${rewards.catalog.max-age-ms:60000}")
+    private long maxAgeMillis;
+
+    private volatile Catalog catalog = Catalog.build(List.of());
+    private volatile boolean stale = true;
+    private volatile long builtAt;
+
+    private static final class Catalog {
+        final Map<String, Reward> byId;
+        final List<Reward> available; // sorted by pointsCost
+        final int[] costs; // costs[i] is available.get(i).getPointsCost()
+        final Map<String, List<Reward>> availableByCategory;
+
+        private Catalog(Map<String, Reward> byId, List<Reward> available, int[] costs,
+                Map<String, List<Reward>> availableByCategory) {
+            this.byId = byId;
+            this.available = available;
+            this.costs = costs;
+            this.availableByCategory = availableByCategory;
+        }
+
+        static Catalog build(List<Reward> rewards) {
+            Map<String, Reward> byId = new HashMap<>();
+            List<Reward> available = new ArrayList<>();
+            for (Reward reward : rewards) {
+                byId.put(reward.getId(), reward);
+                if (reward.isAvailable()) {
+                    available.add(reward);
+                }
+            }
+            available.sort(Comparator.comparingInt(Reward::getPointsCost));
+
+            int[] costs = new int[available.size()];
+            Map<String, List<Reward>> byCategory = new HashMap<>();
+            for (int i = 0; i < costs.length; i++) {
+                Reward reward = available.get(i);
+                costs[i] = reward.getPointsCost();
+                if (reward.getCategory() != null) {
+                    byCategory.computeIfAbsent(reward.getCategory(), c -> new ArrayList<>()).add(reward);
+                }
+            }
+            byCategory.replaceAll((category, list) -> List.copyOf(list));
+            return new Catalog(Map.copyOf(byId), List.copyOf(available), costs, Map.copyOf(byCategory));
+        }
+
+        // Number of available rewards costing at most the given points
+        int affordableCount(int points) {
+            int low = 0;
+            int high = costs.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (costs[mid] <= points) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            logger.error("Failed to load the reward catalog, retrying on the next refresh", e);
+        }
+    }
+
+    // Available rewards, cheapest first
+    public List<Reward> getAvailable() {
+        return catalog.available;
+    }
+
+    public List<Reward> getAvailableByCategory(String category) {
+        return catalog.availableByCategory.getOrDefault(category, List.of());
+    }
+
+    public List<Reward> getAffordable(int points) {
+        Catalog current = catalog;
+        return current.available.subList(0, current.affordableCount(points));
+    }
+
+    public Optional<Reward> findById(String rewardId) {
+        return Optional.ofNullable(catalog.byId.get(rewardId));
+    }
+
+    public synchronized void refresh() {
+        stale = false;
+        List<Reward> rewards = rewardRepository.findAll();
+        catalog = Catalog.build(rewards);
+        builtAt = System.currentTimeMillis();
+        logger.debug("Reward catalog rebuilt with {} rewards", rewards.size());
+    }
+
+    public void markStale() {
+        stale = true;
+    }
+
+    @Scheduled(fixedDelayString = "${rewards.catalog.refresh-interval-ms:500}")
+    public void refreshIfStale() {
+        if (!stale && System.currentTimeMillis() - builtAt < maxAgeMillis) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (Exception e) {
+            stale = true;
+            logger.warn("Failed to refresh the reward catalog: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package sg.nus.iss.final_project.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import sg.nus.iss.final_project.model.Reward;
+import sg.nus.iss.final_project.model.RewardStock;
+import sg.nus.iss.final_project.repo.RewardRepository;
+import sg.nus.iss.final_project.repo.RewardStockRepository;
+
+/**
+ * Hands out reward units under concurrent redemptions. A unit is taken with a
+ * conditional decrement, so stock never goes below zero, and an update that
+ * matches nothing is how a sold-out reward is detected. Rewards expected to be
+ * hot can have their stock split into stripes; a redemption then starts at a
+ * random stripe and moves on only if that one is empty, so writes are spread
+ * over several documents. For striped rewards the quantity on the reward
+ * itself is only a display value, refreshed periodically from the stripes.
+ * The reward catalog is only marked stale when a reward sells out or becomes
+ * available again; the quantities it serves are approximate.
+ */
+@Service
+public class RewardInventoryService {
+    private static final Logger logger = LoggerFactory.getLogger(RewardInventoryService.class);
+
+    public static final int MAX_STRIPES = 64;
+
+    @Autowired
+    private RewardRepository rewardRepository;
+
+    @Autowired
+    private RewardStockRepository rewardStockRepository;
+
+    @Autowired
+    private RewardCatalogService rewardCatalogService;
+
+    @Value("${rewards.inventory.sold-out-cache-ms:1000}")
+    private long soldOutCacheMillis;
+
+    // Rewards this node saw sell out, so that a burst after the last unit fails without a write
+    private final Map<String, Long> soldOutUntil = new ConcurrentHashMap<>();
+
+    /**
+     * Takes one unit of the reward. Returns the stripe it came from, to pass to
+     * {@link #release} if the redemption fails afterwards, or null if the
+     * reward is sold out.
+     */
+    public Integer reserve(Reward reward) {
+        String rewardId = reward.getId();
+        Long until = soldOutUntil.get(rewardId);
+        if (until != null) {
+            if (System.currentTimeMillis() < until) {
+                return null;
+            }
+            soldOutUntil.remove(rewardId, until);
+        }
+
+        if (!reward.isStriped()) {
+            Reward after = rewardRepository.takeUnit(rewardId);
+            if (after == null) {
+                rememberSoldOut(rewardId);
+                return null;
+            }
+            if (after.getQuantity() == 0 && rewardRepository.markSoldOut(rewardId, true)) {
+                rewardCatalogService.markStale();
+            }
+            return 0;
+        }
+
+        int stripes = reward.getStockStripes();
+        int start = ThreadLocalRandom.current().nextInt(stripes);
+        for (int i = 0; i < stripes; i++) {
+            int stripe = (start + i) % stripes;
+            if (rewardStockRepository.decrement(rewardId, stripe)) {
+                return stripe;
+            }
+        }
+        // A unit released into a stripe already passed is picked up by the next stock sync
+        if (rewardRepository.markSoldOut(rewardId, false)) {
+            rewardCatalogService.markStale();
+        }
+        rememberSoldOut(rewardId);
+        return null;
+    }
+
+    public void release(Reward reward, int stripe) {
+        if (reward.isStriped()) {
+            rewardStockRepository.increment(reward.getId(), stripe);
+        } else {
+            rewardRepository.returnUnit(reward.getId());
+        }
+        if (rewardRepository.clearSoldOut(reward.getId())) {
+            rewardCatalogService.markStale();
+        }
+        soldOutUntil.remove(reward.getId());
+    }
+
+    // Splits the quantity of a newly created striped reward over its stripes
+    public void initStock(Reward reward) {
+        if (reward.isStriped()) {
+            rewardStockRepository.replaceStripes(reward.getId(),
+                    split(reward.getId(), reward.getQuantity(), reward.getStockStripes()));
+        }
+    }
+
+    /**
+     * Adds units to the reward's stock with increments, spread evenly over the
+     * stripes of a striped reward, so redemptions running meanwhile are never
+     * overwritten the way replacing the stock with a quantity read earlier
+     * would.
+     */
+    public Reward addStock(String rewardId, int units) throws Exception {
+        if (units <= 0) {
+            throw new Exception("Units must be positive");
+        }
+        Reward reward = rewardRepository.findById(rewardId);
+        if (reward == null) {
+            throw new Exception("Reward not found");
+        }
+        if (reward.isStriped()) {
+            List<RewardStock> shares = split(rewardId, units, reward.getStockStripes());
+            for (RewardStock share : shares) {
+                if (share.getQuantity() > 0) {
+                    rewardStockRepository.increment(rewardId, share.getStripe(), share.getQuantity());
+                }
+            }
+            // The display quantity follows with the next stock sync
+        } else {
+            rewardRepository.addUnits(rewardId, units);
+        }
+        rewardRepository.clearSoldOut(rewardId);
+        soldOutUntil.remove(rewardId);
+        rewardCatalogService.refresh();
+        logger.info("Added {} units to reward {}", units, rewardId);
+        return rewardRepository.findById(rewardId);
+    }
+
+    /**
+     * Splits the reward's remaining stock into the given number of stripes, or
+     * moves it back onto the reward with 1. The stock is taken out atomically
+     * before it is split, so units redeemed meanwhile are never put back, and
+     * units returned meanwhile are added on. Redemptions running meanwhile can
+     * fail as sold out, so this belongs before a launch rather than during one.
+     */
+    public Reward configureStripes(String rewardId, int stripes) throws Exception {
+        Reward reward = rewardRepository.findById(rewardId);
+        if (reward == null) {
+            throw new Exception("Reward not found");
+        }
+        if (stripes < 1 || stripes > MAX_STRIPES) {
+            throw new Exception("Stripes must be between 1 and " + MAX_STRIPES);
+        }
+        if (!reward.isStriped() && stripes == 1) {
+            return reward;
+        }
+
+        int remaining = reward.isStriped() ? rewardStockRepository.takeAll(rewardId)
+                : rewardRepository.takeAllUnits(rewardId);
+        if (stripes > 1) {
+            rewardStockRepository.removeEmptyStripes(rewardId, stripes);
+            for (RewardStock share : split(rewardId, remaining, stripes)) {
+                rewardStockRepository.add(rewardId, share.getStripe(), share.getQuantity());
+            }
+            Reward before = rewardRepository.setStockStripes(rewardId, stripes, remaining);
+            if (before != null && !before.isStriped() && before.getQuantity() > 0) {
+                // Units returned to the reward after its stock was taken
+                rewardStockRepository.add(rewardId, 0, before.getQuantity());
+            }
+        } else {
+            rewardRepository.setStockStripes(rewardId, 0, remaining);
+            // Units returned to a stripe after the stripes were emptied
+            int returned = rewardStockRepository.takeAll(rewardId);
+            if (returned > 0) {
+                rewardRepository.addUnits(rewardId, returned);
+            }
+            rewardStockRepository.removeEmptyStripes(rewardId, 0);
+        }
+
+        if (remaining > 0) {
+            rewardRepository.clearSoldOut(rewardId);
+        }
+        soldOutUntil.remove(rewardId);
+        rewardCatalogService.refresh();
+        logger.info("Reward {} now has {} units in {} stripes", rewardId, remaining, stripes);
+        return rewardRepository.findById(rewardId);
+    }
+
+    // Copies the striped stock back onto the rewards for display and re-opens any that were marked too early
+    @Scheduled(fixedDelayString = "${rewards.inventory.sync-interval-ms:5000}")
+    public void syncStripedStock() {
+        List<Reward> striped = rewardRepository.findStriped();
+        if (striped.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> totals = rewardStockRepository.sumByRewardId(
+                striped.stream().map(Reward::getId).toList());
+        for (Reward reward : striped) {
+            int remaining = totals.getOrDefault(reward.getId(), 0);
+            if (remaining != reward.getQuantity()) {
+                rewardRepository.updateQuantity(reward.getId(), remaining);
+            }
+            if (remaining > 0 && reward.isSoldOut() && rewardRepository.clearSoldOut(reward.getId())) {
+                rewardCatalogService.markStale();
+            }
+        }
+    }
+
+    private List<RewardStock> split(String rewardId, int quantity, int stripes) {
+        List<RewardStock> stock = new ArrayList<>(stripes);
+        int total = Math.max(0, quantity);
+        for (int i = 0; i < stripes; i++) {
+            stock.add(new RewardStock(rewardId, i, total / stripes + (i < total % stripes ? 1 : 0)));
+        }
+        return stock;
+    }
+
+    private void rememberSoldOut(String rewardId) {
+        soldOutUntil.put(rewardId, System.currentTimeMillis() + soldOutCacheMillis);
+    }
+}
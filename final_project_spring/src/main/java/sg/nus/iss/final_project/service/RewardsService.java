@@ -4,32 +4,30 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import sg.nus.iss.final_project.model.PointTransaction;
 import sg.nus.iss.final_project.model.Receipt;
+import sg.nus.iss.final_project.model.RedemptionCode;
 import sg.nus.iss.final_project.model.Reward;
 import sg.nus.iss.final_project.model.UserPoints;
 import sg.nus.iss.final_project.model.UserReward;
 import sg.nus.iss.final_project.repo.PointTransactionRepository;
 import sg.nus.iss.final_project.repo.ReceiptRepository;
 import sg.nus.iss.final_project.repo.RewardRepository;
-import sg.nus.iss.final_project.repo.UserPointsRepository;
 import sg.nus.iss.final_project.repo.UserRewardRepository;
 
 @Service
 public class RewardsService {
+    private static final Logger logger = LoggerFactory.getLogger(RewardsService.class);
 
     @Autowired
     private RewardRepository rewardRepository;
 
-    @Autowired
-    private UserPointsRepository userPointsRepository;
-
     @Autowired
     private UserRewardRepository userRewardRepository;
 
@@ -39,37 +37,44 @@ public class RewardsService {
     @Autowired
     private ReceiptRepository receiptRepository;
 
+    @Autowired
+    private RewardInventoryService rewardInventoryService;
+
+    @Autowired
+    private PointsLedgerService pointsLedgerService;
+
+    @Autowired
+    private RewardCatalogService rewardCatalogService;
+
+    @Autowired
+    private RedemptionCodeService redemptionCodeService;
+
     private static final int BASE_POINTS_PER_RECEIPT = 0;
     private static final double POINTS_PER_DOLLAR = 1.0;
 
     public List<Reward> getAvailableRewards() {
-        return rewardRepository.findByIsAvailableTrue();
+        return rewardCatalogService.getAvailable();
     }
 
     public List<Reward> getRewardsByCategory(String category) {
-        return rewardRepository.findByCategoryAndIsAvailableTrue(category);
+        return rewardCatalogService.getAvailableByCategory(category);
     }
 
     public List<Reward> getAffordableRewards(String userId) {
-        Optional<UserPoints> userPointsOpt = userPointsRepository.findByUserId(userId);
+        Optional<UserPoints> userPointsOpt = pointsLedgerService.findBalance(userId);
         if (userPointsOpt.isPresent()) {
             int availablePoints = userPointsOpt.get().getAvailablePoints();
-            return rewardRepository.findByPointsCostLessThanEqualAndIsAvailableTrue(availablePoints);
+            return rewardCatalogService.getAffordable(availablePoints);
         }
         return new ArrayList<>();
     }
 
     public Optional<Reward> getRewardById(String rewardId) {
-        Reward reward = rewardRepository.findById(rewardId);
-        return Optional.ofNullable(reward);
+        return rewardCatalogService.findById(rewardId);
     }
 
     public UserPoints getUserPoints(String userId) {
-        return userPointsRepository.findByUserId(userId)
-                .orElseGet(() -> {
-                    UserPoints newUserPoints = new UserPoints(userId, 0, 0, 0);
-                    return userPointsRepository.save(newUserPoints);
-                });
+        return pointsLedgerService.getBalance(userId);
     }
 
     public List<UserReward> getUserRedemptionHistory(String userId) {
@@ -86,7 +91,6 @@ public class RewardsService {
                 userId, fromDate);
     }
 
-    @Transactional
     public PointTransaction awardPointsForReceipt(String receiptId) {
         Receipt receipt = receiptRepository.findById(receiptId);
 
@@ -95,19 +99,22 @@ public class RewardsService {
 
             int points = calculatePointsForReceipt(receipt);
 
-            UserPoints userPoints = getUserPoints(userId);
-            userPoints.addPoints(points);
-            userPointsRepository.save(userPoints);
-
-            PointTransaction transaction = new PointTransaction(
+            // A busy ledger defers the credit rather than failing the receipt submission
+            PointTransaction credited = pointsLedgerService.creditOnceOrDefer(
                     userId,
                     points,
-                    "EARNED",
                     "RECEIPT_SCAN",
                     receiptId,
                     "Points earned from scanning receipt at " + receipt.getMerchantName());
-
-            return pointTransactionRepository.save(transaction);
+            if (credited != null) {
+                return credited;
+            }
+            // Already awarded, e.g. by an earlier attempt of the same submission
+            return pointTransactionRepository.findByReferenceId(receiptId).stream()
+                    .filter(transaction -> userId.equals(transaction.getUserId())
+                            && "RECEIPT_SCAN".equals(transaction.getSource()))
+                    .findFirst()
+                    .orElse(null);
         }
 
         return null;
@@ -120,42 +127,43 @@ public class RewardsService {
         return points;
     }
 
-    @Transactional
     public UserReward redeemReward(String userId, String rewardId) throws Exception {
-        UserPoints userPoints = getUserPoints(userId);
         Reward reward = rewardRepository.findById(rewardId);
 
         if (reward == null) {
             throw new Exception("Reward not found");
         }
 
-        if (!reward.isAvailable() || reward.getQuantity() <= 0) {
+        if (!reward.isAvailable()) {
             throw new Exception("This reward is no longer available");
         }
 
-        if (userPoints.getAvailablePoints() < reward.getPointsCost()) {
-            throw new Exception("Not enough points to redeem this reward");
-        }
-
-        boolean deducted = userPoints.spendPoints(reward.getPointsCost());
-
-        if (!deducted) {
-            throw new Exception("Failed to deduct points");
+        // Stock is taken first because handing a unit back is cheaper than refunding points
+        Integer stripe = rewardInventoryService.reserve(reward);
+        if (stripe == null) {
+            throw new Exception("This reward is no longer available");
         }
 
-        userPointsRepository.save(userPoints);
-
-        reward.setQuantity(reward.getQuantity() - 1);
-
-        if (reward.getQuantity() <= 0) {
-            reward.setAvailable(false);
+        RedemptionCode code = null;
+        if (reward.usesRedemptionCodes()) {
+            code = redemptionCodeService.claim(reward, userId);
+            if (code == null) {
+                rewardInventoryService.release(reward, stripe);
+                throw new Exception("This reward is no longer available");
+            }
         }
 
-        rewardRepository.save(reward);
-
-        String redemptionCode = null;
-        if ("VOUCHER".equals(reward.getCategory())) {
-            redemptionCode = generateRedemptionCode();
+        // The ledger only appends the debit after the balance it was checked against
+        PointTransaction debit = pointsLedgerService.debit(
+                userId,
+                reward.getPointsCost(),
+                "REWARD_REDEMPTION",
+                rewardId,
+                "Points spent on redeeming " + reward.getName());
+        if (debit == null) {
+            redemptionCodeService.release(code);
+            rewardInventoryService.release(reward, stripe);
+            throw new Exception("Not enough points to redeem this reward");
         }
 
         UserReward userReward = new UserReward(
@@ -165,8 +173,8 @@ public class RewardsService {
                 reward.getPointsCost(),
                 "PENDING");
 
-        if (redemptionCode != null) {
-            userReward.setRedemptionCode(redemptionCode);
+        if (code != null) {
+            userReward.setRedemptionCode(code.getCode());
             userReward.setStatus("FULFILLED");
 
             if (reward.getExpiryDate() != null) {
@@ -176,53 +184,55 @@ public class RewardsService {
             }
         }
 
-        UserReward savedUserReward = userRewardRepository.save(userReward);
-
-        PointTransaction transaction = new PointTransaction(
-                userId,
-                reward.getPointsCost(),
-                "SPENT",
-                "REWARD_REDEMPTION",
-                rewardId,
-                "Points spent on redeeming " + reward.getName());
-
-        pointTransactionRepository.save(transaction);
-
-        return savedUserReward;
+        try {
+            return userRewardRepository.save(userReward);
+        } catch (RuntimeException e) {
+            // Nothing records the redemption, so the points, the code and the unit are handed back
+            refundRedemption(reward, stripe, code, debit);
+            throw e;
+        }
     }
 
-    private String generateRedemptionCode() {
-        return "PW-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+    private void refundRedemption(Reward reward, int stripe, RedemptionCode code, PointTransaction debit) {
+        String userId = debit.getUserId();
+        try {
+            pointsLedgerService.creditOnceOrDefer(userId, debit.getPoints(), PointTransaction.REWARD_REFUND, debit.getId(),
+                    "Refund for redeeming " + reward.getName());
+        } catch (RuntimeException e) {
+            logger.error("Could not refund debit {} of {} points to {}", debit.getId(), debit.getPoints(), userId, e);
+        }
+        try {
+            redemptionCodeService.release(code);
+            rewardInventoryService.release(reward, stripe);
+        } catch (RuntimeException e) {
+            logger.error("Could not return the code or unit of reward {} after a failed redemption by {}",
+                    reward.getId(), userId, e);
+        }
     }
 
     public Reward addReward(Reward reward) {
-        return rewardRepository.save(reward);
+        Reward saved = rewardRepository.save(reward);
+        rewardInventoryService.initStock(saved);
+        rewardCatalogService.refresh();
+        return saved;
     }
 
+    // Stock is not edited here; the quantity sent is ignored and units are added through addStock
     public Reward updateReward(String rewardId, Reward updatedReward) throws Exception {
-        Reward existingReward = rewardRepository.findById(rewardId);
+        Reward saved = rewardRepository.updateDetails(rewardId, updatedReward);
 
-        if (existingReward == null) {
+        if (saved == null) {
             throw new Exception("Reward not found");
         }
 
-        existingReward.setName(updatedReward.getName());
-        existingReward.setDescription(updatedReward.getDescription());
-        existingReward.setPointsCost(updatedReward.getPointsCost());
-        existingReward.setImageUrl(updatedReward.getImageUrl());
-        existingReward.setCategory(updatedReward.getCategory());
-        existingReward.setAvailable(updatedReward.isAvailable());
-        existingReward.setQuantity(updatedReward.getQuantity());
-        existingReward.setMerchantName(updatedReward.getMerchantName());
-        existingReward.setTermsConditions(updatedReward.getTermsConditions());
-        existingReward.setExpiryDate(updatedReward.getExpiryDate());
-
-        return rewardRepository.save(existingReward);
+        rewardCatalogService.refresh();
+        return saved;
     }
 
     public void deleteReward(String rewardId) throws Exception {
         if (rewardRepository.existsById(rewardId)) {
             rewardRepository.deleteById(rewardId);
+            rewardCatalogService.refresh();
         } else {
             throw new Exception("Reward not found");
         }
@@ -250,27 +260,19 @@ public class RewardsService {
         return userRewardRepository.save(userReward);
     }
 
-    @Transactional
     public PointTransaction redeemWelcomeBonus(String userId) throws Exception {
-        List<PointTransaction> existingBonuses = pointTransactionRepository.findByUserIdAndSource(userId,
-                "WELCOME_BONUS");
-
-        if (!existingBonuses.isEmpty()) {
-            throw new Exception("Welcome bonus has already been claimed");
-        }
-
-        UserPoints userPoints = getUserPoints(userId);
-        userPoints.addPoints(100);
-        userPointsRepository.save(userPoints);
-
-        PointTransaction transaction = new PointTransaction(
+        // Bonuses have always been recorded with the user id as reference, so this also sees older claims
+        PointTransaction transaction = pointsLedgerService.creditOnce(
                 userId,
                 100,
-                "EARNED",
                 "WELCOME_BONUS",
                 userId,
                 "Welcome bonus for joining PaperWorth!");
 
+        if (transaction == null) {
+            throw new Exception("Welcome bonus has already been claimed");
+        }
+
         UserReward welcomeBonus = new UserReward(
                 userId,
                 "welcome-bonus",
@@ -280,6 +282,6 @@ public class RewardsService {
         welcomeBonus.setRedemptionCode("WELCOME100");
         userRewardRepository.save(welcomeBonus);
 
-        return pointTransactionRepository.save(transaction);
+        return transaction;
     }
 }
\ No newline at end of file
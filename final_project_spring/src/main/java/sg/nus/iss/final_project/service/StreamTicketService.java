@@ -0,0 +1,46 @@
+package sg.nus.iss.final_project.service;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import sg.nus.iss.final_project.repo.StreamTicketRepository;
+
+/**
+ * EventSource cannot send an Authorization header, so a client first trades
+ * its ID token for a ticket over a normal request and opens the SSE stream
+ * with ?ticket=. A ticket works once and only for a few seconds, so unlike
+ * the ID token it is worthless once it shows up in a URL in a log.
+ */
+@Service
+public class StreamTicketService {
+
+    private final SecureRandom random = new SecureRandom();
+
+    @Autowired
+    private StreamTicketRepository streamTicketRepository;
+
+    @Value("${push.stream-ticket.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    public String issue(String uid) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String ticket = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        streamTicketRepository.insert(ticket, uid, Duration.ofSeconds(ttlSeconds));
+        return ticket;
+    }
+
+    // The uid the ticket was issued to, or null if it is not valid
+    public String redeem(String ticket) {
+        return streamTicketRepository.redeem(ticket);
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+}
@@ -0,0 +1,53 @@
+package sg.nus.iss.final_project.service;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import sg.nus.iss.final_project.model.BudgetAlert;
+
+/**
+ * Posts each batch of budget alerts as one JSON array to a configured URL.
+ */
+@Service
+@ConditionalOnProperty(name = "alerts.webhook.url")
+public class WebhookAlertSink implements AlertSink {
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${alerts.webhook.url}")
+    private String url;
+
+    @Override
+    public String getName() {
+        return "webhook";
+    }
+
+    @Override
+    public void send(List<BudgetAlert> alerts) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(alerts)))
+                .build();
+        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() >= 300) {
+            throw new IllegalStateException("Alert webhook returned HTTP " + response.statusCode());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package sg.nus.iss.final_project.Util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class DateRecognizerTests {
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "2024-03-14|2024-03-14T12:00",
+            "2024/03/14|2024-03-14T12:00",
+            "2024.03.14|2024-03-14T12:00",
+            "2024-3-4|2024-03-04T12:00",
+            "14/03/2024|2024-03-14T12:00",
+            "03/14/2024|2024-03-14T12:00",
+            "05/06/2024|2024-06-05T12:00",
+            "14-03-2024|2024-03-14T12:00",
+            "14.03.24|2024-03-14T12:00",
+            "2024-02-29|2024-02-29T12:00",
+            "2000-02-29|2000-02-29T12:00",
+            "2024-03-14T09:30|2024-03-14T09:30",
+            "2024-03-14 09:30:15|2024-03-14T09:30:15",
+            "2024-03-14  09:30:15|2024-03-14T09:30:15",
+            "2024-03-14T09:30:15.5Z|2024-03-14T09:30:15.500",
+            "2024-03-14T09:30:15.123456789|2024-03-14T09:30:15.123456789",
+            "2024-03-14T09:30:15+08:00|2024-03-14T09:30:15",
+            "2024-03-14T09:30:15+0800|2024-03-14T09:30:15",
+            "2024-03-14T09:30-05|2024-03-14T09:30",
+    })
+    void recognizesSupportedShapes(String text, String expected) {
+        assertEquals(LocalDateTime.parse(expected), DateRecognizer.recognize(text));
+    }
+
+    @Test
+    void ignoresSurroundingWhitespace() {
+        assertEquals(LocalDateTime.of(2024, 3, 14, 12, 0), DateRecognizer.recognize("  2024-03-14\t"));
+    }
+
+    @Test
+    void recognizesARangeOfTheText() {
+        assertEquals(LocalDateTime.of(2024, 3, 14, 12, 0), DateRecognizer.recognize("Date: 2024-03-14.", 6, 16));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "", "   ", "abc", "2024", "2024-03", "2024-03-", "2024-03/14", "2024-02-30", "2023-02-29",
+            "1900-02-29", "1899-12-31", "3000-01-01", "2024-13-01", "2024-00-10", "2024-03-00", "2024-03-140",
+            "123-03-14", "14/03/202", "14/03/20245", "2024-03-14X", "2024-03-14T24:00", "2024-03-14T09:60",
+            "2024-03-14T09:30:60", "2024-03-14T9:30", "2024-03-14T09:30:15.", "2024-03-14T09:30Zx",
+            "2024-03-14T09:30+8", "2024-03-14T09:30+08:0"
+    })
+    void rejectsOtherInput(String text) {
+        assertNull(DateRecognizer.recognize(text), text);
+    }
+
+    @Test
+    void rejectsNull() {
+        assertNull(DateRecognizer.recognize(null));
+    }
+
+    @Test
+    void agreesWithDateTimeFormatterOnRandomDates() {
+        DateTimeFormatter[] dayFirst = {
+                DateTimeFormatter.ofPattern("yyyy-MM-dd"),
+                DateTimeFormatter.ofPattern("yyyy/MM/dd"),
+                DateTimeFormatter.ofPattern("dd/MM/yyyy"),
+                DateTimeFormatter.ofPattern("dd-MM-yyyy"),
+                DateTimeFormatter.ofPattern("dd.MM.yy"),
+        };
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            LocalDate date = LocalDate.of(2000, 1, 1).plusDays(random.nextInt(36_500));
+            for (DateTimeFormatter formatter : dayFirst) {
+                String text = date.format(formatter);
+                assertEquals(date.atTime(12, 0), DateRecognizer.recognize(text), text);
+            }
+            LocalDateTime time = date.atTime(random.nextInt(24), random.nextInt(60), random.nextInt(60));
+            String text = time.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+            assertEquals(time, DateRecognizer.recognize(text), text);
+        }
+    }
+}
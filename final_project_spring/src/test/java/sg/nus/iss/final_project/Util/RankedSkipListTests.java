@@ -0,0 +1,89 @@
+package sg.nus.iss.final_project.Util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the skip list against a brute-force ranking of the same scores: a
+ * HashMap sorted by score descending, then key ascending.
+ */
+class RankedSkipListTests {
+
+    private static final Comparator<Map.Entry<String, Long>> RANKING = Comparator
+            .comparing((Map.Entry<String, Long> entry) -> entry.getValue()).reversed()
+            .thenComparing(Map.Entry::getKey);
+
+    @Test
+    void matchesBruteForceOverRandomUpdates() {
+        Random random = new Random(42);
+        RankedSkipList list = new RankedSkipList();
+        Map<String, Long> expected = new HashMap<>();
+
+        for (int i = 0; i < 200_000; i++) {
+            String key = "user-" + random.nextInt(1000);
+            // Few distinct scores, so ties broken by key are common
+            long value = random.nextInt(50) - 10;
+            if (random.nextBoolean()) {
+                long score = expected.merge(key, value, Long::sum);
+                assertEquals(score, list.increment(key, value));
+            } else {
+                list.set(key, value);
+                expected.put(key, value);
+            }
+
+            assertEquals(rankOf(expected, key), list.rank(key), "rank of " + key + " after update " + i);
+            if (i % 10_000 == 0) {
+                assertSameRanking(expected, list);
+            }
+        }
+        assertSameRanking(expected, list);
+    }
+
+    @Test
+    void unknownKeyHasNoRankOrScore() {
+        RankedSkipList list = new RankedSkipList();
+        list.set("a", 5);
+        assertEquals(0, list.rank("b"));
+        assertNull(list.score("b"));
+    }
+
+    @Test
+    void topIsCappedAtSize() {
+        RankedSkipList list = new RankedSkipList();
+        list.set("a", 1);
+        list.set("b", 2);
+        assertEquals(List.of("b", "a"), list.top(10).stream().map(Map.Entry::getKey).toList());
+    }
+
+    private static void assertSameRanking(Map<String, Long> expected, RankedSkipList list) {
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(expected.entrySet());
+        sorted.sort(RANKING);
+        assertEquals(sorted.size(), list.size());
+        assertEquals(sorted, list.top(sorted.size()));
+        for (int i = 0; i < sorted.size(); i++) {
+            String key = sorted.get(i).getKey();
+            assertEquals(i + 1, list.rank(key), "rank of " + key);
+            assertEquals(sorted.get(i).getValue(), list.score(key));
+        }
+    }
+
+    private static int rankOf(Map<String, Long> expected, String key) {
+        long score = expected.get(key);
+        int rank = 1;
+        for (Map.Entry<String, Long> entry : expected.entrySet()) {
+            if (entry.getValue() > score || (entry.getValue() == score && entry.getKey().compareTo(key) < 0)) {
+                rank++;
+            }
+        }
+        return rank;
+    }
+}
@@ -0,0 +1,86 @@
+package sg.nus.iss.final_project.Util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import sg.nus.iss.final_project.model.Receipt;
+
+class ReceiptArchiveCodecTests {
+
+    @Test
+    void roundTripsEveryField() throws IOException {
+        List<Receipt> receipts = new ArrayList<>();
+        receipts.add(receipt("r2", "FairPrice", LocalDateTime.of(2024, 3, 14, 9, 30, 15, 123_000_000), 12.5,
+                "Groceries", "https://img/2", new String[] { "Milk", "Bread" }, LocalDateTime.of(2024, 3, 14, 10, 0)));
+        receipts.add(receipt("r1", "FairPrice", LocalDateTime.of(2024, 3, 1, 12, 0), 3.2, "Groceries", null,
+                null, null));
+        receipts.add(receipt("r3", null, LocalDateTime.of(2024, 3, 31, 23, 59, 59), 0, null, "",
+                new String[0], LocalDateTime.of(2024, 4, 1, 0, 0)));
+        // Longer than the 64KB writeUTF limit, like an inline data URL
+        receipts.add(receipt("r4", "Caf\u00e9 \u2615", LocalDateTime.of(2024, 3, 20, 18, 45), 7.8, "Dining",
+                "data:image/png;base64," + "A".repeat(70_000), new String[] { null, "Latte" }, null));
+
+        List<Receipt> read = ReceiptArchiveCodec.read(new ByteArrayInputStream(write("user-1", receipts)));
+
+        // Receipts come back ordered by purchase date
+        assertEquals(List.of("r1", "r2", "r4", "r3"), read.stream().map(Receipt::getId).toList());
+        for (Receipt actual : read) {
+            Receipt expected = receipts.stream().filter(r -> r.getId().equals(actual.getId())).findFirst().get();
+            assertEquals("user-1", actual.getUserId());
+            assertEquals(expected.getMerchantName(), actual.getMerchantName());
+            assertEquals(expected.getDateOfPurchase(), actual.getDateOfPurchase());
+            assertEquals(expected.getTotalExpense(), actual.getTotalExpense());
+            assertEquals(expected.getCategory(), actual.getCategory());
+            assertEquals(expected.getImageUrl(), actual.getImageUrl());
+            assertArrayEquals(expected.getItems(), actual.getItems());
+            assertEquals(expected.getScanDate(), actual.getScanDate());
+        }
+    }
+
+    @Test
+    void roundTripsAnEmptyMonth() throws IOException {
+        assertTrue(ReceiptArchiveCodec.read(new ByteArrayInputStream(write("user-1", List.of()))).isEmpty());
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(new byte[] { 1, 2, 3, 4, 5 });
+        }
+        assertThrows(IOException.class, () -> ReceiptArchiveCodec.read(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private static byte[] write(String userId, List<Receipt> receipts) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ReceiptArchiveCodec.write(userId, receipts, bytes);
+        return bytes.toByteArray();
+    }
+
+    private static Receipt receipt(String id, String merchant, LocalDateTime purchased, double total,
+            String category, String imageUrl, String[] items, LocalDateTime scanned) {
+        Receipt receipt = new Receipt();
+        receipt.setId(id);
+        receipt.setUserId("user-1");
+        receipt.setMerchantName(merchant);
+        receipt.setDateOfPurchase(purchased);
+        receipt.setTotalExpense(total);
+        receipt.setCategory(category);
+        receipt.setImageUrl(imageUrl);
+        receipt.setItems(items);
+        receipt.setScanDate(scanned);
+        return receipt;
+    }
+}
@@ -0,0 +1,79 @@
+package sg.nus.iss.final_project.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sg.nus.iss.final_project.model.Budget;
+import sg.nus.iss.final_project.model.BudgetCategory;
+
+/**
+ * Adding one expense to a budget by category name: Budget.addExpense, which
+ * looks the category up by normalised key and moves totalSpent by the
+ * amount, against the earlier equalsIgnoreCase scan of the list followed by
+ * re-summing every category. Names arrive in the case and spacing users type.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BudgetCategoryBenchmark {
+
+    @Param({ "8", "50", "200" })
+    private int categories;
+
+    private Budget budget;
+    private String[] names;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        budget = new Budget("user-1", "2024-03", 10_000);
+        List<String> typed = new ArrayList<>();
+        for (int i = 0; i < categories; i++) {
+            String name = "Category " + i;
+            budget.addCategory(new BudgetCategory(name, 100));
+            typed.add(i % 2 == 0 ? name.toUpperCase() : " " + name.toLowerCase() + " ");
+        }
+        names = typed.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public double keyed() {
+        budget.addExpense(nextName(), 1.0);
+        return budget.getTotalSpent();
+    }
+
+    @Benchmark
+    public double scanAndResum() {
+        String name = nextName().trim();
+        BudgetCategory category = budget.getCategories().stream()
+                .filter(c -> c.getCategory().equalsIgnoreCase(name))
+                .findFirst()
+                .orElse(null);
+        category.addExpense(1.0);
+        budget.updateTotalSpent();
+        return budget.getTotalSpent();
+    }
+
+    private String nextName() {
+        String name = names[next];
+        next = (next + 1) % names.length;
+        return name;
+    }
+}
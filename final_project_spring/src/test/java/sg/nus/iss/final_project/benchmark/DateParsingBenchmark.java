@@ -0,0 +1,94 @@
+package sg.nus.iss.final_project.benchmark;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import sg.nus.iss.final_project.Util.DateRecognizer;
+
+/**
+ * DateRecognizer against the parsing it replaced in ReceiptController, which
+ * built a formatter per pattern on every call and moved on to the next one by
+ * catching DateTimeParseException. The inputs mix the shapes receipts and OCR
+ * produce, including one that matches no pattern.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateParsingBenchmark {
+
+    private static final String[] INPUTS = {
+            "14/03/2024",
+            "2024-03-14",
+            "03/14/2024",
+            "14.03.2024",
+            "2024/03/14",
+            "2024-03-14 09:30:15",
+            "2024-03-14T09:30:15",
+            "2024-03-14T09:30:15.123Z",
+            "TOTAL 12.50",
+    };
+
+    private static final String[] DATE_FORMATS = {
+            "dd/MM/yyyy", "MM/dd/yyyy", "yyyy-MM-dd", "dd-MM-yyyy", "MM-dd-yyyy", "yyyy/MM/dd", "dd.MM.yyyy"
+    };
+
+    private static final String[] DATE_TIME_FORMATS = {
+            "dd/MM/yyyy HH:mm:ss", "MM/dd/yyyy HH:mm:ss", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd'T'HH:mm:ss",
+            "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'"
+    };
+
+    @Benchmark
+    @OperationsPerInvocation(9)
+    public void recognizer(Blackhole blackhole) {
+        for (String input : INPUTS) {
+            blackhole.consume(DateRecognizer.recognize(input));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(9)
+    public void formatterPerPattern(Blackhole blackhole) {
+        for (String input : INPUTS) {
+            blackhole.consume(parseWithFormatters(input));
+        }
+    }
+
+    // ReceiptController.parseDate before DateRecognizer, without its logging
+    private static LocalDateTime parseWithFormatters(String dateStr) {
+        for (String format : DATE_FORMATS) {
+            try {
+                DateTimeFormatter formatter = DateTimeFormatter.ofPattern(format);
+                return LocalDate.parse(dateStr, formatter).atTime(12, 0);
+            } catch (DateTimeParseException e) {
+                // next pattern
+            }
+        }
+        for (String format : DATE_TIME_FORMATS) {
+            try {
+                DateTimeFormatter formatter = DateTimeFormatter.ofPattern(format);
+                return LocalDateTime.parse(dateStr, formatter);
+            } catch (DateTimeParseException e) {
+                // next pattern
+            }
+        }
+        return null;
+    }
+}
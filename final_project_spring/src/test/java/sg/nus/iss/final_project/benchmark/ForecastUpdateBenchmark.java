@@ -0,0 +1,95 @@
+package sg.nus.iss.final_project.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sg.nus.iss.final_project.model.CategoryForecast;
+
+/**
+ * Cost of taking one more receipt into a category forecast: the incremental
+ * update of CategoryForecast against recomputing the smoothed daily spend from
+ * every receipt of the month, at different numbers of receipts already in the
+ * month. Receipts mostly land on the current day, with some backdated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForecastUpdateBenchmark {
+
+    private static final double ALPHA = 0.3;
+    private static final int TODAY = 20;
+    private static final int DAYS_IN_MONTH = 31;
+
+    @Param({ "30", "300", "3000" })
+    private int receiptsInMonth;
+
+    private int[] days;
+    private double[] amounts;
+    private CategoryForecast forecast;
+    private int[] nextDays;
+    private double[] nextAmounts;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1);
+        days = new int[receiptsInMonth];
+        amounts = new double[receiptsInMonth];
+        forecast = new CategoryForecast("Groceries");
+        for (int i = 0; i < receiptsInMonth; i++) {
+            days[i] = 1 + (int) ((long) i * TODAY / receiptsInMonth);
+            amounts[i] = 5 + random.nextInt(50);
+            forecast.record(days[i], amounts[i], ALPHA);
+        }
+        nextDays = new int[1024];
+        nextAmounts = new double[1024];
+        for (int i = 0; i < nextDays.length; i++) {
+            nextDays[i] = random.nextInt(10) == 0 ? 1 + random.nextInt(TODAY) : TODAY;
+            nextAmounts[i] = 5 + random.nextInt(50);
+        }
+    }
+
+    @Benchmark
+    public double incremental() {
+        int i = next++ & (nextDays.length - 1);
+        // Recorded and removed again, so the state stays the same size over the run
+        forecast.record(nextDays[i], nextAmounts[i], ALPHA);
+        double remaining = forecast.projectRemaining(TODAY, DAYS_IN_MONTH, ALPHA);
+        forecast.remove(nextDays[i], nextAmounts[i], ALPHA);
+        return remaining;
+    }
+
+    @Benchmark
+    public double rescan() {
+        int i = next++ & (nextDays.length - 1);
+        double[] daily = new double[DAYS_IN_MONTH + 1];
+        for (int r = 0; r < receiptsInMonth; r++) {
+            daily[days[r]] += amounts[r];
+        }
+        daily[nextDays[i]] += nextAmounts[i];
+        // Same estimate as projectRemaining, from the full daily series
+        double decay = 1 - ALPHA;
+        double rate = 0;
+        for (int day = 1; day <= TODAY; day++) {
+            rate = ALPHA * daily[day] + decay * rate;
+        }
+        double dailyRate = rate / (1 - Math.pow(decay, TODAY));
+        return Math.max(0, dailyRate - daily[TODAY]) + dailyRate * (DAYS_IN_MONTH - TODAY);
+    }
+}